@@ -0,0 +1,82 @@
+package ch.epfl.imhof;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionnaire global des clefs d'attributs : chaque clef distincte y reçoit
+ * une fois pour toutes un petit identifiant entier, ce qui permet aux
+ * {@link Attributes ensembles d'attributs} de ne stocker que des entiers
+ * pour leurs clefs et de partager une seule instance de chacune.
+ *
+ * Le dictionnaire ne rétrécit jamais : seules les clefs, dont le vocabulaire
+ * est borné, y sont ajoutées, et jamais les valeurs (noms, adresses, notes,
+ * etc.), dont le nombre croîtrait avec chaque carte lue.
+ *
+ * L'identifiant 0 est réservé à null. Le dictionnaire peut être utilisé
+ * depuis plusieurs fils à la fois ; seuls les ajouts y sont synchronisés.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+final class AttributeDictionary {
+    // Identifiant de null
+    static final int NULL = 0;
+
+    private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+    // Chaînes par identifiant ; le tableau est remplacé lorsqu'il est plein
+    private static volatile String[] strings = new String[1024];
+    private static int count = 1;
+
+    private AttributeDictionary() {
+    }
+
+    /**
+     * @param string
+     *            Chaîne, éventuellement null
+     * @return L'identifiant de la chaîne donnée, qui lui est attribué si elle
+     *         ne figure pas encore dans le dictionnaire.
+     */
+    static int id(String string) {
+        if (string == null)
+            return NULL;
+        Integer id = IDS.get(string);
+        return id != null ? id : add(string);
+    }
+
+    /**
+     * @param string
+     *            Chaîne, éventuellement null
+     * @return L'identifiant de la chaîne donnée, ou -1 si elle ne figure pas
+     *         dans le dictionnaire, sans l'y ajouter.
+     */
+    static int find(String string) {
+        if (string == null)
+            return NULL;
+        Integer id = IDS.get(string);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * @param id
+     *            Identifiant attribué par {@link #id(String)}
+     * @return La chaîne ayant l'identifiant donné.
+     */
+    static String string(int id) {
+        return strings[id];
+    }
+
+    private static synchronized int add(String string) {
+        Integer id = IDS.get(string);
+        if (id != null)
+            return id;
+        String[] table = strings;
+        if (count == table.length)
+            table = Arrays.copyOf(table, 2 * count);
+        table[count] = string;
+        // Publie la chaîne avant son identifiant
+        strings = table;
+        IDS.put(string, count);
+        return count++;
+    }
+}
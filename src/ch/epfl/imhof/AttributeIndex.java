@@ -0,0 +1,110 @@
+package ch.epfl.imhof;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Index secondaire des attributs d'une liste d'entités attribuées : pour
+ * chaque clef et chaque valeur, l'ensemble (sous forme de {@link BitSet})
+ * des positions des entités qui les portent, ainsi que la couche de chaque
+ * entité, déjà convertie en entier. Les filtres par attribut peuvent ainsi
+ * être résolus par des opérations sur des ensembles de bits plutôt qu'en
+ * comparant des chaînes entité par entité.
+ *
+ * Les instances sont non modifiables, les ensembles retournés étant des
+ * copies.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+public final class AttributeIndex {
+    private static final BitSet EMPTY = new BitSet();
+
+    private final int size;
+    // Entités portant chaque clef, resp. chaque valeur de chaque clef
+    private final HashMap<String, BitSet> keys = new HashMap<>();
+    private final HashMap<String, HashMap<String, BitSet>> values = new HashMap<>();
+    private final int[] layers;
+
+    /**
+     * Construit l'index des entités données.
+     * 
+     * @param features
+     *            Entités attribuées, identifiées par leur position dans la
+     *            liste
+     */
+    public AttributeIndex(List<? extends Attributed<?>> features) {
+        this.size = features.size();
+        this.layers = new int[size];
+        for (int i = 0; i < size; i++) {
+            Attributes attributes = features.get(i).attributes();
+            for (int j = 0; j < attributes.size(); j++) {
+                String key = attributes.key(j);
+                keys.computeIfAbsent(key, k -> new BitSet(size)).set(i);
+                values.computeIfAbsent(key, k -> new HashMap<>())
+                        .computeIfAbsent(attributes.value(j),
+                                v -> new BitSet()).set(i);
+            }
+            layers[i] = attributes.get("layer", 0);
+        }
+    }
+
+    /**
+     * @return Le nombre d'entités indexées.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param key
+     *            Nom de l'attribut
+     * @return Les positions des entités possédant l'attribut donné.
+     */
+    public BitSet withKey(String key) {
+        return (BitSet) keys.getOrDefault(key, EMPTY).clone();
+    }
+
+    /**
+     * @param key
+     *            Nom de l'attribut
+     * @param values
+     *            Valeurs de l'attribut
+     * @return Les positions des entités possédant l'attribut donné avec l'une
+     *         des valeurs données.
+     */
+    public BitSet withValue(String key, String... values) {
+        BitSet features = new BitSet(size);
+        HashMap<String, BitSet> keyValues = this.values.get(key);
+        if (keyValues != null)
+            for (String value : values)
+                features.or(keyValues.getOrDefault(value, EMPTY));
+        return features;
+    }
+
+    /**
+     * @param layer
+     *            Numéro de couche
+     * @return Les positions des entités de la couche donnée.
+     */
+    public BitSet onLayer(int layer) {
+        BitSet features = new BitSet(size);
+        for (int i = 0; i < size; i++)
+            if (layers[i] == layer)
+                features.set(i);
+        return features;
+    }
+
+    /**
+     * @param feature
+     *            Position de l'entité
+     * @return La couche de l'entité donnée, 0 si elle n'en précise aucune ou
+     *         si sa couche n'est pas un entier valide.
+     * @throws IndexOutOfBoundsException
+     *             si la position est invalide
+     */
+    public int layer(int feature) {
+        return layers[feature];
+    }
+}
@@ -2,20 +2,32 @@ package ch.epfl.imhof;
 
 /**
  * Représente un ensemble d'attributs et la valeur qui leur est associée.
+ * Les clefs sont stockées sous forme d'identifiants du dictionnaire global des
+ * clefs, triés ; les valeurs, dont le nombre n'est pas borné (noms,
+ * adresses, etc.), sont stockées telles quelles et ne sont jamais gardées
+ * au-delà des ensembles qui les contiennent.
  *
  * @author Ben Lalah Ali 
  * @author Alami Idrissi Ali
  */
 
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 public final class Attributes {
+    // Ensemble vide, partagé
+    private static final Attributes EMPTY = new Attributes(new int[0],
+            new String[0]);
 
-    private final Map<String, String> attributes;
+    // Identifiants des clefs dans le dictionnaire global, croissants, et
+    // valeurs associées dans le même ordre
+    private final int[] keys;
+    private final String[] values;
 
     /**
      * Construit un ensemble d'attributs avec les paires clef/valeur présentes
@@ -25,8 +37,22 @@ public final class Attributes {
      *            : un ensemble d'attributs avec les paires clef/valeur
      */
     public Attributes(Map<String, String> attributes) {
-        this.attributes = Collections
-                .unmodifiableMap(new HashMap<String, String>(attributes));
+        int count = attributes.size();
+        int[] keys = new int[count];
+        String[] values = new String[count];
+        int i = 0;
+        for (Map.Entry<String, String> entry : attributes.entrySet()) {
+            keys[i] = AttributeDictionary.id(entry.getKey());
+            values[i++] = entry.getValue();
+        }
+        this.keys = new int[count];
+        this.values = new String[count];
+        sort(keys, values, count, this.keys, this.values);
+    }
+
+    private Attributes(int[] keys, String[] values) {
+        this.keys = keys;
+        this.values = values;
     }
 
     /**
@@ -34,7 +60,7 @@ public final class Attributes {
      * @return Vrai si et seulement si l'ensemble d'attributs est vide.
      */
     public boolean isEmpty() {
-        return attributes.isEmpty();
+        return keys.length == 0;
     }
 
     /**
@@ -44,7 +70,7 @@ public final class Attributes {
      * @return Vrai si l'ensemble d'attributs contient la clef donnée.
      */
     public boolean contains(String key) {
-        return attributes.containsKey(key);
+        return indexOf(key) >= 0;
     }
 
     /**
@@ -55,7 +81,8 @@ public final class Attributes {
      *         pas.
      */
     public String get(String key) {
-        return attributes.get(key);
+        int index = indexOf(key);
+        return index < 0 ? null : value(index);
     }
 
     /**
@@ -68,7 +95,7 @@ public final class Attributes {
      *         donnée si aucune valeur ne lui est associée.
      */
     public String get(String key, String defaultValue) {
-        String attribute = attributes.get(key);
+        String attribute = get(key);
         return (attribute == null) ? defaultValue : attribute;
     }
 
@@ -83,9 +110,9 @@ public final class Attributes {
      *         pas un entier valide.
      */
     public int get(String key, int defaultValue) {
-        String attribute = attributes.get(key);
-        return ((attribute == null || !isInteger(attribute)) ? defaultValue
-                : Integer.parseInt(attribute));
+        String attribute = get(key);
+        return attribute == null ? defaultValue : parseInt(attribute,
+                defaultValue);
     }
 
     /**
@@ -96,35 +123,207 @@ public final class Attributes {
      *         nom figure dans l'ensemble passé.
      */
     public Attributes keepOnlyKeys(Set<String> keysToKeep) {
-        Map<String, String> map = new HashMap<String, String>();
-        for (Entry<String, String> entry : attributes.entrySet()) {
-            if (keysToKeep.contains(entry.getKey())) {
-                map.put(entry.getKey(), entry.getValue());
+        int[] keptKeys = null;
+        String[] keptValues = null;
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keysToKeep.contains(AttributeDictionary.string(keys[i]))) {
+                if (keptKeys != null) {
+                    keptKeys[count] = keys[i];
+                    keptValues[count] = values[i];
+                }
+                count++;
+            } else if (keptKeys == null) {
+                // Première clef écartée : les précédentes sont recopiées
+                keptKeys = Arrays.copyOf(keys, keys.length - 1);
+                keptValues = Arrays.copyOf(values, values.length - 1);
             }
         }
-        return new Attributes(map);
+        if (keptKeys == null)
+            return this;
+        if (count == 0)
+            return EMPTY;
+        return count == keptKeys.length ? new Attributes(keptKeys, keptValues)
+                : new Attributes(Arrays.copyOf(keptKeys, count),
+                        Arrays.copyOf(keptValues, count));
+    }
+
+    /**
+     * @return Le nombre d'attributs de l'ensemble.
+     */
+    int size() {
+        return keys.length;
+    }
+
+    /**
+     * @param index
+     *            Position de l'attribut, dans l'ordre des identifiants des
+     *            clefs
+     * @return La clef de l'attribut à la position donnée.
+     */
+    String key(int index) {
+        return AttributeDictionary.string(keys[index]);
+    }
+
+    /**
+     * @param index
+     *            Position de l'attribut, dans l'ordre des identifiants des
+     *            clefs
+     * @return La valeur de l'attribut à la position donnée.
+     */
+    String value(int index) {
+        return values[index];
     }
-    
+
+    /**
+     * 
+     * @return Les attributs sous forme de table associative non modifiable,
+     *         qui est une vue de l'ensemble et non une copie.
+     */
+    Map<String, String> asMap() {
+        return new AbstractMap<String, String>() {
+            @Override
+            public int size() {
+                return Attributes.this.size();
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return key instanceof String && contains((String) key);
+            }
+
+            @Override
+            public String get(Object key) {
+                return key instanceof String ? Attributes.this
+                        .get((String) key) : null;
+            }
+
+            @Override
+            public Set<Map.Entry<String, String>> entrySet() {
+                return new AbstractSet<Map.Entry<String, String>>() {
+                    @Override
+                    public int size() {
+                        return Attributes.this.size();
+                    }
+
+                    @Override
+                    public Iterator<Map.Entry<String, String>> iterator() {
+                        return new Iterator<Map.Entry<String, String>>() {
+                            private int index = 0;
+
+                            @Override
+                            public boolean hasNext() {
+                                return index < size();
+                            }
+
+                            @Override
+                            public Map.Entry<String, String> next() {
+                                if (!hasNext())
+                                    throw new NoSuchElementException();
+                                Map.Entry<String, String> entry = new SimpleImmutableEntry<>(
+                                        key(index), value(index));
+                                index++;
+                                return entry;
+                            }
+                        };
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return La position de l'attribut de clef donnée, ou un nombre négatif
+     *         s'il n'existe pas.
+     */
+    private int indexOf(String key) {
+        int id = AttributeDictionary.find(key);
+        if (id < 0)
+            return -1;
+        int low = 0, high = size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = keys[middle];
+            if (middleId < id)
+                low = middle + 1;
+            else if (middleId > id)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -1;
+    }
+
+    /**
+     * Range les count premières paires (clef, valeur) données dans les
+     * tableaux de destination, par identifiant de clef croissant.
+     */
+    private static void sort(int[] keys, String[] values, int count,
+            int[] sortedKeys, String[] sortedValues) {
+        // Identifiant de la clef dans les 32 bits de poids fort, position
+        // de la paire dans les 32 bits de poids faible
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++)
+            order[i] = (long) keys[i] << 32 | i;
+        Arrays.sort(order);
+        for (int i = 0; i < count; i++) {
+            sortedKeys[i] = (int) (order[i] >>> 32);
+            sortedValues[i] = values[(int) order[i]];
+        }
+    }
+
+    /**
+     * @return L'entier décimal représenté par la chaîne donnée, comme le lit
+     *         {@link Integer#parseInt(String)}, ou la valeur par défaut
+     *         donnée si elle n'en représente pas un, sans lever d'exception.
+     */
+    private static int parseInt(String string, int defaultValue) {
+        int length = string.length();
+        if (length == 0)
+            return defaultValue;
+        boolean negative = false;
+        int i = 0;
+        char first = string.charAt(0);
+        if (first == '-' || first == '+') {
+            if (length == 1)
+                return defaultValue;
+            negative = first == '-';
+            i = 1;
+        }
+        // Accumulation en négatif, comme Integer.parseInt, pour que
+        // Integer.MIN_VALUE soit représentable
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int result = 0;
+        for (; i < length; i++) {
+            int digit = Character.digit(string.charAt(i), 10);
+            if (digit < 0 || result < limit / 10)
+                return defaultValue;
+            result *= 10;
+            if (result < limit + digit)
+                return defaultValue;
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
     /**
      * Batisseur de la classe Attributes.
      *
      */
     public static final class Builder {
-        private Map<String, String> attributesBuilder;
+        // Identifiants des clefs ajoutées et valeurs associées, dans
+        // l'ordre d'ajout
+        private int[] keys;
+        private String[] values;
+        private int count;
 
         /**
-         * Ajoute l'association (clef, valeur) donnée à l'ensemble d'attributs
-         * en cours de construction. Si un attribut de même nom avait déjà été
-         * ajouté précédemment à l'ensemble, sa valeur est remplacée par celle
-         * donnée.
-         * 
-         * @param key
-         *            : La clef de l'entrée.
-         * @param value
-         *            : La valeur de l'entrée.
+         * Construit un bâtisseur d'ensemble d'attributs vide.
          */
         public Builder() {
-            attributesBuilder = new HashMap<>();
+            keys = new int[8];
+            values = new String[8];
+            count = 0;
         }
 
         /**
@@ -139,7 +338,19 @@ public final class Attributes {
          *            : Valeur de l'attribut.
          */
         public void put(String key, String value) {
-            attributesBuilder.put(key, value);
+            int keyId = AttributeDictionary.id(key);
+            for (int i = 0; i < count; i++) {
+                if (keys[i] == keyId) {
+                    values[i] = value;
+                    return;
+                }
+            }
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * count);
+                values = Arrays.copyOf(values, 2 * count);
+            }
+            keys[count] = keyId;
+            values[count++] = value;
         }
 
         /**
@@ -150,17 +361,12 @@ public final class Attributes {
          *         clef/valeur ajoutées jusqu'à présent.
          */
         public Attributes build() {
-            return new Attributes(attributesBuilder);
+            if (count == 0)
+                return EMPTY;
+            int[] sortedKeys = new int[count];
+            String[] sortedValues = new String[count];
+            sort(keys, values, count, sortedKeys, sortedValues);
+            return new Attributes(sortedKeys, sortedValues);
         }
     }
-    
-    private boolean isInteger(String numberString) {
-        try {
-            Integer.parseInt(numberString);
-        } catch (NumberFormatException exception) {
-            return false;
-        }
-        return true;
-    }
-
 }
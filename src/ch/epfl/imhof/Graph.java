@@ -1,14 +1,15 @@
 package ch.epfl.imhof;
 
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
 /**
- * Représente un graphe non orienté.
+ * Représente un graphe non orienté. Les nœuds et leurs voisins sont parcourus
+ * dans leur ordre d'insertion.
  *
  * @author Ben Lalah Ali
  * @author Alami Idrissi Ali
@@ -23,10 +24,10 @@ public final class Graph<N> {
      *            : Table d'adjacence du graphe.
      */
     public Graph(Map<N, Set<N>> neighbours) {
-        Map<N, Set<N>> newNeighbours = new HashMap<>();
+        Map<N, Set<N>> newNeighbours = new LinkedHashMap<>();
         for (Entry<N, Set<N>> entry : neighbours.entrySet())
             newNeighbours.put(entry.getKey(), Collections
-                    .unmodifiableSet(new HashSet<N>(entry.getValue())));
+                    .unmodifiableSet(new LinkedHashSet<N>(entry.getValue())));
         this.neighbours = Collections.unmodifiableMap(newNeighbours);
     }
 
@@ -63,7 +64,7 @@ public final class Graph<N> {
         private Map<N, Set<N>> neighboursBuilder;
 
         public Builder() {
-            this.neighboursBuilder = new HashMap<N, Set<N>>();
+            this.neighboursBuilder = new LinkedHashMap<N, Set<N>>();
         }
 
         /**
@@ -75,7 +76,7 @@ public final class Graph<N> {
          */
         public void addNode(N node) {
             if (!neighboursBuilder.containsKey(node))
-                neighboursBuilder.put(node, new HashSet<N>());
+                neighboursBuilder.put(node, new LinkedHashSet<N>());
         }
 
         /**
@@ -2,18 +2,27 @@ package ch.epfl.imhof;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
 import javax.imageio.ImageIO;
 import ch.epfl.imhof.dem.DigitalElevationModel;
 import ch.epfl.imhof.dem.Earth;
 import ch.epfl.imhof.dem.HGTDigitalElevationModel;
+import ch.epfl.imhof.dem.HGTMosaicDigitalElevationModel;
+import ch.epfl.imhof.dem.NormalGrid;
+import ch.epfl.imhof.dem.ReliefCache;
 import ch.epfl.imhof.dem.ReliefShader;
 import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.osm.OSMMap;
 import ch.epfl.imhof.osm.OSMMapReader;
 import ch.epfl.imhof.osm.OSMToGeoTransformer;
 import ch.epfl.imhof.painting.Color;
-import ch.epfl.imhof.painting.Java2DCanvas;
+import ch.epfl.imhof.painting.Compositor;
 import ch.epfl.imhof.painting.Painter;
+import ch.epfl.imhof.painting.TiledRenderer;
 import ch.epfl.imhof.projection.CH1903Projection;
 import ch.epfl.imhof.projection.Projection;
 
@@ -31,7 +40,8 @@ public final class Main {
      * 
      * @param args
      *            Paramètre nécessaire au lancement du programme dans l'ordre
-     *            qui suit: Chemin de la carte - Chemin du fichier HGT -
+     *            qui suit: Chemin de la carte - Chemin du fichier HGT, ou
+     *            d'un répertoire de fichiers HGT -
      *            Longitude du point bas gauche - Latitude du point bas gauche -
      *            Longitude du point haut droit - Latitude du point haut droit -
      *            Resolution de l'image - Chemin du fichier image de sortie
@@ -68,44 +78,118 @@ public final class Main {
         OSMMap osmMap;
 
         // Déclaration d'un modèle numérique du terrain
-        try (DigitalElevationModel hgtModel = new HGTDigitalElevationModel(
-                new File(cheminHGT))) {
+        File hgtFile = new File(cheminHGT);
+        DigitalElevationModel hgtFileModel;
+        double hgtResolution;
+        if (hgtFile.isDirectory()) {
+            HGTMosaicDigitalElevationModel mosaic = new HGTMosaicDigitalElevationModel(
+                    hgtFile);
+            hgtResolution = mosaic.angularResolution();
+            hgtFileModel = mosaic;
+        } else {
+            HGTDigitalElevationModel single = new HGTDigitalElevationModel(
+                    hgtFile);
+            hgtResolution = single.angularResolution();
+            hgtFileModel = single;
+        }
+        try (DigitalElevationModel hgtModel = hgtFileModel) {
 
             // Déclaration du peintre
             Painter swissPainter = SwissPainter.painter();
 
-            // Lecture de la carte
-            osmMap = OSMMapReader.readOSMFile(cheminCarte, true);
-            Map map = new OSMToGeoTransformer(projection).transform(osmMap);
-
-            // Déclaration de la toile
-            Java2DCanvas canvas = new Java2DCanvas(projectedBl, projectedTr,
-                    width, height, resolution, Color.WHITE);
-
-            // Dessin de la carte
-            swissPainter.drawMap(map, canvas);
+            // Lecture de l'instantané de la carte s'il existe, sinon lecture
+            // de la carte réduite à la zone à dessiner
+            String snapshotKey = MapSnapshot.key(cheminCarte, projection, bl,
+                    tr);
+            Path snapshot = MapSnapshot.cacheFile(snapshotKey);
+            Map map;
+            try {
+                map = MapSnapshot.read(snapshot, snapshotKey);
+            } catch (IOException e) {
+                // Un instantané illisible est écarté, et la carte relue
+                System.err.println("Discarding map snapshot: " + e);
+                discard(snapshot);
+                map = null;
+            }
+            if (map == null) {
+                osmMap = OSMMapReader.readOSMFile(cheminCarte, true, bl, tr,
+                        OSMMapReader.Parser.PULL);
+                map = new OSMToGeoTransformer(projection,
+                        ForkJoinPool.commonPool()).transform(osmMap);
+                try {
+                    MapSnapshot.write(map, snapshot, snapshotKey);
+                } catch (IOException e) {
+                    // L'instantané n'est qu'une optimisation
+                    System.err.println("Unable to write map snapshot: " + e);
+                }
+            }
 
-            // Creation d'une image de relief
-            ReliefShader shader = new ReliefShader(projection, hgtModel,
-                    new Vector3(-1, 1, 1));
-            BufferedImage relief = shader.shadedRelief(projectedBl,
-                    projectedTr, width, height, 1.7 * (resolutionPpM / 1000));
+            // Dessin de la carte, par tuiles dessinées en parallèle
+            BufferedImage mapImage = new TiledRenderer(
+                    TiledRenderer.DEFAULT_TILE_SIZE, ForkJoinPool.commonPool())
+                    .render(swissPainter, map, projectedBl, projectedTr, width,
+                            height, resolution, Color.WHITE);
 
-            // Assemblage du relief et de la carte
-            BufferedImage finalImage = new BufferedImage(width, height,
-                    BufferedImage.TYPE_INT_RGB);
-            Color currentColor;
-            for (int x = 0; x < canvas.image().getWidth(); x++) {
-                for (int y = 0; y < canvas.image().getHeight(); y++) {
-                    currentColor = Color.multiply(
-                            Color.rgb(canvas.image().getRGB(x, y)),
-                            Color.rgb(relief.getRGB(x, y)));
-                    finalImage.setRGB(x, y, Color.toJavaColor(currentColor).getRGB());
+            // Lecture du relief depuis le cache s'il s'y trouve, sinon
+            // création d'une image de relief
+            Vector3 light = new Vector3(-1, 1, 1);
+            double radius = 1.7 * (resolutionPpM / 1000);
+            ReliefCache reliefCache = new ReliefCache(
+                    ReliefCache.defaultDirectory());
+            String reliefKey = ReliefCache.key(hgtFile, projection, light,
+                    radius);
+            BufferedImage relief;
+            try {
+                relief = reliefCache.read(reliefKey, projectedBl, projectedTr,
+                        width, height);
+            } catch (IOException e) {
+                // Le cache n'est qu'une optimisation
+                System.err.println("Unable to read relief cache: " + e);
+                relief = null;
+            }
+            if (relief == null) {
+                // Normales précalculées sur la zone, augmentée d'un
+                // échantillon pour couvrir la bordure du flou, puis
+                // interpolées
+                double gridMargin = hgtResolution;
+                DigitalElevationModel normalGrid = new NormalGrid(hgtModel,
+                        new PointGeo(bl.longitude() - gridMargin,
+                                bl.latitude() - gridMargin), new PointGeo(
+                                tr.longitude() + gridMargin, tr.latitude()
+                                        + gridMargin), hgtResolution);
+                ReliefShader shader = new ReliefShader(projection, normalGrid,
+                        light);
+                relief = shader.shadedRelief(projectedBl, projectedTr, width,
+                        height, radius);
+                try {
+                    reliefCache.write(reliefKey, projectedBl, projectedTr,
+                            relief);
+                } catch (IOException e) {
+                    // Le cache n'est qu'une optimisation
+                    System.err.println("Unable to write relief cache: " + e);
                 }
             }
 
+            // Assemblage du relief et de la carte
+            BufferedImage finalImage = Compositor.multiply(mapImage, relief,
+                    ForkJoinPool.commonPool());
+
             // Stockage de la carte dans le fichier de sortie
             ImageIO.write(finalImage, "png", new File(output));
         }
     }
+
+    /**
+     * Supprime le fichier donné s'il existe ; un échec est seulement signalé.
+     *
+     * @param file
+     *            : Fichier à supprimer.
+     */
+    private static void discard(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Unable to delete " + file + ": " + e);
+        }
+    }
 }
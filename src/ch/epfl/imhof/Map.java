@@ -18,6 +18,12 @@ public final class Map{
 
     private final List<Attributed<PolyLine>> polyLines;
     private final List<Attributed<Polygon>> polygons;
+    // Index des attributs, construits à la première demande
+    private AttributeIndex polyLineIndex, polygonIndex;
+    // Carte dont celle-ci est extraite, et positions de ses entités dans
+    // celle-ci (voir subMap), ou null
+    private final Map parent;
+    private final int[] polyLinePositions, polygonPositions;
 
     /**
      * Construit une carte projetée
@@ -32,6 +38,59 @@ public final class Map{
         this.polyLines = Collections
                 .unmodifiableList(new ArrayList<>(polyLines));
         this.polygons = Collections.unmodifiableList(new ArrayList<>(polygons));
+        this.parent = null;
+        this.polyLinePositions = null;
+        this.polygonPositions = null;
+    }
+
+    private Map(Map parent, int[] polyLinePositions, int[] polygonPositions) {
+        List<Attributed<PolyLine>> polyLines = new ArrayList<>(
+                polyLinePositions.length);
+        for (int position : polyLinePositions)
+            polyLines.add(parent.polyLines.get(position));
+        List<Attributed<Polygon>> polygons = new ArrayList<>(
+                polygonPositions.length);
+        for (int position : polygonPositions)
+            polygons.add(parent.polygons.get(position));
+        this.polyLines = Collections.unmodifiableList(polyLines);
+        this.polygons = Collections.unmodifiableList(polygons);
+        this.parent = parent;
+        this.polyLinePositions = polyLinePositions.clone();
+        this.polygonPositions = polygonPositions.clone();
+    }
+
+    /**
+     * Extrait de cette carte une carte qui partage ses index : les index
+     * d'une carte extraite sont ceux de la carte d'origine, et la position
+     * de chacune de ses entités dans ceux-ci est donnée par
+     * {@link #polyLinePosition(int)} et {@link #polygonPosition(int)}.
+     * 
+     * @param polyLinePositions
+     *            : positions, strictement croissantes, des polylignes à
+     *            conserver
+     * @param polygonPositions
+     *            : positions, strictement croissantes, des polygones à
+     *            conserver
+     * @return la carte des entités de celle-ci aux positions données
+     * @throws IllegalArgumentException
+     *             : si les positions ne sont pas strictement croissantes
+     * @throws IndexOutOfBoundsException
+     *             : si une position est invalide
+     */
+    public Map subMap(int[] polyLinePositions, int[] polygonPositions) {
+        if (!isIncreasing(polyLinePositions)
+                || !isIncreasing(polygonPositions))
+            throw new IllegalArgumentException("positions not increasing");
+        if (parent == null)
+            return new Map(this, polyLinePositions, polygonPositions);
+        // La carte extraite partage directement les index de l'originale
+        int[] parentPolyLines = new int[polyLinePositions.length];
+        for (int i = 0; i < parentPolyLines.length; i++)
+            parentPolyLines[i] = this.polyLinePositions[polyLinePositions[i]];
+        int[] parentPolygons = new int[polygonPositions.length];
+        for (int i = 0; i < parentPolygons.length; i++)
+            parentPolygons[i] = this.polygonPositions[polygonPositions[i]];
+        return new Map(parent, parentPolyLines, parentPolygons);
     }
 
     /**
@@ -51,6 +110,64 @@ public final class Map{
         return this.polygons;
     }
 
+    /**
+     * 
+     * @return l'index des attributs des polylignes, construit à la première
+     *         demande : celui de la carte d'origine pour une carte extraite
+     *         par {@link #subMap(int[], int[]) subMap}, celui des
+     *         polylignes de cette carte, dans l'ordre de
+     *         {@link #polyLines()}, sinon
+     */
+    public synchronized AttributeIndex polyLineIndex() {
+        if (parent != null)
+            return parent.polyLineIndex();
+        if (polyLineIndex == null)
+            polyLineIndex = new AttributeIndex(polyLines);
+        return polyLineIndex;
+    }
+
+    /**
+     * 
+     * @return l'index des attributs des polygones, construit à la première
+     *         demande : celui de la carte d'origine pour une carte extraite
+     *         par {@link #subMap(int[], int[]) subMap}, celui des polygones
+     *         de cette carte, dans l'ordre de {@link #polygons()}, sinon
+     */
+    public synchronized AttributeIndex polygonIndex() {
+        if (parent != null)
+            return parent.polygonIndex();
+        if (polygonIndex == null)
+            polygonIndex = new AttributeIndex(polygons);
+        return polygonIndex;
+    }
+
+    /**
+     * 
+     * @param i
+     *            : position d'une polyligne dans {@link #polyLines()}
+     * @return la position de cette polyligne dans {@link #polyLineIndex()}
+     */
+    public int polyLinePosition(int i) {
+        return polyLinePositions == null ? i : polyLinePositions[i];
+    }
+
+    /**
+     * 
+     * @param i
+     *            : position d'un polygone dans {@link #polygons()}
+     * @return la position de ce polygone dans {@link #polygonIndex()}
+     */
+    public int polygonPosition(int i) {
+        return polygonPositions == null ? i : polygonPositions[i];
+    }
+
+    private static boolean isIncreasing(int[] positions) {
+        for (int i = 1; i < positions.length; i++)
+            if (positions[i] <= positions[i - 1])
+                return false;
+        return true;
+    }
+
     /**
      * Bâtisseur de la classe Map
      * 
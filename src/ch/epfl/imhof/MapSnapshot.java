@@ -0,0 +1,366 @@
+package ch.epfl.imhof;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.OpenPolyLine;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.projection.Projection;
+
+/**
+ * Instantané binaire d'une carte projetée, écrit une fois puis relu par
+ * projection en mémoire lors des exécutions suivantes, sans analyser à
+ * nouveau le fichier OSM.
+ *
+ * Le fichier contient, après un en-tête identifiant les données sources, la
+ * table des chaînes, la table des ensembles d'attributs distincts, la
+ * structure des entités (attributs, nature et nombre de points de chaque
+ * ligne), puis les coordonnées projetées de toutes les entités à la suite.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+public final class MapSnapshot {
+
+    /**
+     * Propriété système donnant le répertoire des instantanés.
+     */
+    public static final String CACHE_DIRECTORY_PROPERTY = "imhof.cache";
+
+    private static final int MAGIC = 0x494D4853; // "IMHS"
+    private static final int VERSION = 1;
+    // Version du code qui produit la carte (lecture, filtrage par zone,
+    // transformation), à incrémenter dès qu'il produit une carte différente
+    // à partir des mêmes données
+    private static final int CODE_VERSION = 2;
+
+    private MapSnapshot() {
+    }
+
+    /**
+     * Calcule la clef identifiant une carte projetée à partir de ses données
+     * sources : le fichier OSM (chemin, taille et date de modification), la
+     * projection et la zone lue, ainsi que de la version du code qui la
+     * produit.
+     *
+     * @param fileName
+     *            : Nom du fichier OSM.
+     * @param projection
+     *            : Projection utilisée.
+     * @param bottomLeft
+     *            : Coin bas gauche de la zone lue.
+     * @param topRight
+     *            : Coin haut droit de la zone lue.
+     * @return La clef de la carte.
+     */
+    public static String key(String fileName, Projection projection,
+            PointGeo bottomLeft, PointGeo topRight) {
+        File file = new File(fileName).getAbsoluteFile();
+        return String.join("|", Integer.toString(CODE_VERSION),
+                file.getPath(),
+                Long.toString(file.length()),
+                Long.toString(file.lastModified()), projection.getClass()
+                        .getName(), Double.toString(bottomLeft.longitude()),
+                Double.toString(bottomLeft.latitude()),
+                Double.toString(topRight.longitude()),
+                Double.toString(topRight.latitude()));
+    }
+
+    /**
+     *
+     * @param key
+     *            : Clef de la carte.
+     * @return Le fichier d'instantané associé à la clef donnée, situé dans le
+     *         répertoire donné par la propriété
+     *         {@value #CACHE_DIRECTORY_PROPERTY} ou, à défaut, dans le
+     *         sous-répertoire imhof du répertoire temporaire.
+     */
+    public static Path cacheFile(String key) {
+        String directory = System.getProperty(CACHE_DIRECTORY_PROPERTY);
+        Path root = directory != null ? Paths.get(directory) : Paths.get(
+                System.getProperty("java.io.tmpdir"), "imhof");
+        return root.resolve(digest(key) + ".map");
+    }
+
+    /**
+     * Ecrit l'instantané de la carte donnée. Le fichier est d'abord écrit à
+     * côté de sa destination puis renommé, de sorte qu'un instantané
+     * incomplet n'est jamais lu.
+     *
+     * @param map
+     *            : Carte à écrire.
+     * @param file
+     *            : Fichier de destination.
+     * @param key
+     *            : Clef de la carte.
+     * @throws IOException
+     *             : en cas d'erreur d'écriture.
+     */
+    public static void write(Map map, Path file, String key) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, "snapshot", ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary),
+                            1 << 16))) {
+                writeMap(map, key, output);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Lit l'instantané contenu dans le fichier donné.
+     *
+     * @param file
+     *            : Fichier de l'instantané.
+     * @param key
+     *            : Clef attendue de la carte.
+     * @return La carte, ou null si le fichier n'existe pas ou correspond à
+     *         une autre clef (données sources modifiées).
+     * @throws IOException
+     *             : si le fichier ne peut être lu ou est corrompu.
+     */
+    public static Map read(Path file, String key) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+            if (!key.equals(readString(buffer)))
+                return null;
+            return readMap(buffer);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                | IllegalArgumentException e) {
+            throw new IOException("corrupt map snapshot: " + file, e);
+        }
+    }
+
+    private static void writeMap(Map map, String key, DataOutputStream output)
+            throws IOException {
+        // Ensembles d'attributs distincts et chaînes qui les composent
+        IdentityHashMap<Attributes, Integer> attributesIndex = new IdentityHashMap<>();
+        HashMap<java.util.Map<String, String>, Integer> contentIndex = new HashMap<>();
+        List<Attributes> attributesTable = new ArrayList<>();
+        HashMap<String, Integer> stringIndex = new HashMap<>();
+        List<String> stringTable = new ArrayList<>();
+        List<Attributed<?>> entities = new ArrayList<>(map.polyLines());
+        entities.addAll(map.polygons());
+        for (Attributed<?> entity : entities) {
+            Attributes attributes = entity.attributes();
+            if (attributesIndex.containsKey(attributes))
+                continue;
+            Integer index = contentIndex.get(attributes.asMap());
+            if (index == null) {
+                index = attributesTable.size();
+                attributesTable.add(attributes);
+                contentIndex.put(attributes.asMap(), index);
+                for (java.util.Map.Entry<String, String> entry : attributes
+                        .asMap().entrySet()) {
+                    intern(entry.getKey(), stringIndex, stringTable);
+                    intern(entry.getValue(), stringIndex, stringTable);
+                }
+            }
+            attributesIndex.put(attributes, index);
+        }
+
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        writeString(key, output);
+        output.writeInt(stringTable.size());
+        for (String string : stringTable)
+            writeString(string, output);
+        output.writeInt(attributesTable.size());
+        for (Attributes attributes : attributesTable) {
+            output.writeInt(attributes.asMap().size());
+            for (java.util.Map.Entry<String, String> entry : attributes
+                    .asMap().entrySet()) {
+                output.writeInt(stringIndex.get(entry.getKey()));
+                output.writeInt(stringIndex.get(entry.getValue()));
+            }
+        }
+
+        // Structure des entités
+        output.writeInt(map.polyLines().size());
+        for (Attributed<PolyLine> polyLine : map.polyLines()) {
+            output.writeInt(attributesIndex.get(polyLine.attributes()));
+            output.writeBoolean(polyLine.value().isClosed());
+            output.writeInt(polyLine.value().points().size());
+        }
+        output.writeInt(map.polygons().size());
+        for (Attributed<Polygon> polygon : map.polygons()) {
+            output.writeInt(attributesIndex.get(polygon.attributes()));
+            output.writeInt(polygon.value().holes().size());
+            output.writeInt(polygon.value().shell().points().size());
+            for (ClosedPolyLine hole : polygon.value().holes())
+                output.writeInt(hole.points().size());
+        }
+
+        // Coordonnées, alignées sur 8 octets
+        while (output.size() % Double.BYTES != 0)
+            output.writeByte(0);
+        for (Attributed<PolyLine> polyLine : map.polyLines())
+            writePoints(polyLine.value(), output);
+        for (Attributed<Polygon> polygon : map.polygons()) {
+            writePoints(polygon.value().shell(), output);
+            for (ClosedPolyLine hole : polygon.value().holes())
+                writePoints(hole, output);
+        }
+    }
+
+    private static Map readMap(ByteBuffer buffer) throws IOException {
+        String[] strings = new String[checkCount(buffer.getInt(), buffer)];
+        for (int i = 0; i < strings.length; i++)
+            strings[i] = readString(buffer);
+        Attributes[] attributes = new Attributes[checkCount(buffer.getInt(),
+                buffer)];
+        for (int i = 0; i < attributes.length; i++) {
+            Attributes.Builder builder = new Attributes.Builder();
+            for (int j = checkCount(buffer.getInt(), buffer); j > 0; j--)
+                builder.put(strings[buffer.getInt()], strings[buffer.getInt()]);
+            attributes[i] = builder.build();
+        }
+
+        int polyLineCount = checkCount(buffer.getInt(), buffer);
+        int[] polyLineAttributes = new int[polyLineCount];
+        boolean[] polyLineClosed = new boolean[polyLineCount];
+        int[] polyLineSizes = new int[polyLineCount];
+        for (int i = 0; i < polyLineCount; i++) {
+            polyLineAttributes[i] = buffer.getInt();
+            polyLineClosed[i] = buffer.get() != 0;
+            polyLineSizes[i] = checkCount(buffer.getInt(), buffer);
+        }
+        int polygonCount = checkCount(buffer.getInt(), buffer);
+        int[] polygonAttributes = new int[polygonCount];
+        int[][] ringSizes = new int[polygonCount][];
+        for (int i = 0; i < polygonCount; i++) {
+            polygonAttributes[i] = buffer.getInt();
+            ringSizes[i] = new int[1 + checkCount(buffer.getInt(), buffer)];
+            for (int j = 0; j < ringSizes[i].length; j++)
+                ringSizes[i][j] = checkCount(buffer.getInt(), buffer);
+        }
+
+        buffer.position((buffer.position() + Double.BYTES - 1)
+                & -Double.BYTES);
+        DoubleBuffer coordinates = buffer.slice().asDoubleBuffer();
+        List<Attributed<PolyLine>> polyLines = new ArrayList<>(polyLineCount);
+        for (int i = 0; i < polyLineCount; i++) {
+            List<Point> points = readPoints(coordinates, polyLineSizes[i]);
+            PolyLine polyLine = polyLineClosed[i] ? new ClosedPolyLine(points)
+                    : new OpenPolyLine(points);
+            polyLines.add(new Attributed<>(polyLine,
+                    attributes[polyLineAttributes[i]]));
+        }
+        List<Attributed<Polygon>> polygons = new ArrayList<>(polygonCount);
+        for (int i = 0; i < polygonCount; i++) {
+            ClosedPolyLine shell = new ClosedPolyLine(readPoints(coordinates,
+                    ringSizes[i][0]));
+            List<ClosedPolyLine> holes = new ArrayList<>(
+                    ringSizes[i].length - 1);
+            for (int j = 1; j < ringSizes[i].length; j++)
+                holes.add(new ClosedPolyLine(readPoints(coordinates,
+                        ringSizes[i][j])));
+            polygons.add(new Attributed<>(new Polygon(shell, holes),
+                    attributes[polygonAttributes[i]]));
+        }
+        if (coordinates.hasRemaining())
+            throw new IOException("corrupt map snapshot: trailing data");
+        return new Map(polyLines, polygons);
+    }
+
+    private static void writePoints(PolyLine polyLine, DataOutputStream output)
+            throws IOException {
+        for (Point point : polyLine.points()) {
+            output.writeDouble(point.x());
+            output.writeDouble(point.y());
+        }
+    }
+
+    private static List<Point> readPoints(DoubleBuffer coordinates, int count) {
+        double[] values = new double[2 * count];
+        coordinates.get(values);
+        Point[] points = new Point[count];
+        for (int i = 0; i < count; i++)
+            points[i] = new Point(values[2 * i], values[2 * i + 1]);
+        return Arrays.asList(points);
+    }
+
+    private static void intern(String string, HashMap<String, Integer> index,
+            List<String> table) {
+        if (!index.containsKey(string)) {
+            index.put(string, table.size());
+            table.add(string);
+        }
+    }
+
+    private static void writeString(String string, DataOutputStream output)
+            throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = checkCount(buffer.getInt(), buffer);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Vérifie qu'un nombre d'éléments lu est plausible, afin qu'un fichier
+     * corrompu ne provoque pas d'allocation démesurée.
+     */
+    private static int checkCount(int count, ByteBuffer buffer) {
+        if (count < 0 || count > buffer.remaining())
+            throw new IllegalArgumentException("invalid count: " + count);
+        return count;
+    }
+
+    private static String digest(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(
+                    key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : hash)
+                name.append(String.format("%02x", b));
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 est disponible sur toute plateforme Java
+            throw new Error(e);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ch.epfl.imhof;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Exécution de tâches en parallèle sur un exécuteur donné, notamment le
+ * traitement d'un plan ou d'une image par bandes de lignes.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+public final class Parallel {
+    // Nombre de bandes par fil, pour équilibrer la charge
+    private static final int STRIPES_PER_THREAD = 4;
+    // Nombre de lignes minimum d'une bande
+    private static final int MIN_STRIPE_HEIGHT = 16;
+
+    private Parallel() {
+    }
+
+    /**
+     * @param executor
+     *            : Exécuteur.
+     * @return Le nombre de tâches que l'exécuteur donné traite simultanément,
+     *         ou, s'il est inconnu, le nombre de processeurs disponibles.
+     */
+    public static int parallelism(ExecutorService executor) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        if (executor instanceof ForkJoinPool)
+            return ((ForkJoinPool) executor).getParallelism();
+        if (executor instanceof ThreadPoolExecutor)
+            return Math.max(1, Math.min(processors,
+                    ((ThreadPoolExecutor) executor).getMaximumPoolSize()));
+        return processors;
+    }
+
+    /**
+     * Exécute les tâches données sur l'exécuteur donné et attend leur fin.
+     *
+     * @param executor
+     *            : Exécuteur.
+     * @param tasks
+     *            : Tâches à exécuter.
+     * @return Les résultats des tâches, dans leur ordre.
+     * @throws IllegalStateException
+     *             : si le fil appelant est interrompu, ou si une tâche lève
+     *             une exception qui n'est pas une RuntimeException, dont elle
+     *             est alors la cause.
+     */
+    public static <T> List<T> invokeAll(ExecutorService executor,
+            List<? extends Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : executor.invokeAll(tasks))
+                results.add(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            // Une RuntimeException levée par une tâche est relancée telle
+            // quelle
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        }
+        return results;
+    }
+
+    /**
+     * Traite les lignes 0 à height - 1 par bandes contiguës, en parallèle sur
+     * l'exécuteur donné. Le nombre de bandes dépend du parallélisme de
+     * l'exécuteur, chaque bande comptant au moins {@value #MIN_STRIPE_HEIGHT}
+     * lignes (sauf s'il n'y en a qu'une).
+     *
+     * @param executor
+     *            : Exécuteur.
+     * @param height
+     *            : Nombre de lignes.
+     * @param stripe
+     *            : Traitement d'une bande.
+     * @throws IllegalStateException
+     *             : voir {@link #invokeAll(ExecutorService, List)}.
+     */
+    public static void inStripes(ExecutorService executor, int height,
+            Stripe stripe) {
+        int stripes = Math.max(1, Math.min(STRIPES_PER_THREAD
+                * parallelism(executor), height / MIN_STRIPE_HEIGHT));
+        List<Callable<Void>> tasks = new ArrayList<>(stripes);
+        for (int i = 0; i < stripes; i++) {
+            int firstRow = (int) ((long) height * i / stripes);
+            int lastRow = (int) ((long) height * (i + 1) / stripes);
+            tasks.add(() -> {
+                stripe.run(firstRow, lastRow);
+                return null;
+            });
+        }
+        invokeAll(executor, tasks);
+    }
+
+    /**
+     * Traitement d'une bande de lignes.
+     */
+    public interface Stripe {
+        /**
+         * @param firstRow
+         *            : Première ligne de la bande.
+         * @param lastRow
+         *            : Ligne suivant la dernière ligne de la bande.
+         */
+        void run(int firstRow, int lastRow);
+    }
+}
@@ -21,6 +21,30 @@ public final class Vector3 {
         this.z = z;
     }
     
+    /**
+     * 
+     * @return La coordonnée x du vecteur
+     */
+    public double x() {
+        return x;
+    }
+    
+    /**
+     * 
+     * @return La coordonnée y du vecteur
+     */
+    public double y() {
+        return y;
+    }
+    
+    /**
+     * 
+     * @return La coordonnée z du vecteur
+     */
+    public double z() {
+        return z;
+    }
+    
     /**
      * 
      * @return La norme du vecteur
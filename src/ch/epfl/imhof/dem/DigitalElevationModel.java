@@ -16,4 +16,61 @@ public interface DigitalElevationModel extends AutoCloseable{
      * @return Le vecteur normal à la Terre au point entré en paramètre.
      */
     public Vector3 normalAt(PointGeo point);
+
+    /**
+     * Calcule les vecteurs normaux en une série de points, typiquement une
+     * ligne de pixels, et les stocke composante par composante dans les
+     * tableaux donnés. L'implémentation par défaut appelle
+     * {@link #normalAt(PointGeo)} pour chaque point ; les implémentations
+     * peuvent la redéfinir pour partager le travail entre points voisins.
+     * 
+     * @param longitudes
+     *            Longitudes des points, en radians
+     * @param latitudes
+     *            Latitudes des points, en radians
+     * @param normalX
+     *            Tableau recevant la coordonnée x des normales
+     * @param normalY
+     *            Tableau recevant la coordonnée y des normales
+     * @param normalZ
+     *            Tableau recevant la coordonnée z des normales
+     * @throws IllegalArgumentException
+     *             si les tableaux n'ont pas tous la même longueur, ou si
+     *             {@link #normalAt(PointGeo)} la lève pour l'un des points
+     */
+    public default void normalsAt(double[] longitudes, double[] latitudes,
+            double[] normalX, double[] normalY, double[] normalZ) {
+        int count = longitudes.length;
+        if (latitudes.length != count || normalX.length != count
+                || normalY.length != count || normalZ.length != count)
+            throw new IllegalArgumentException("arrays of different lengths");
+        for (int i = 0; i < count; i++) {
+            Vector3 normal = normalAt(new PointGeo(longitudes[i], latitudes[i]));
+            normalX[i] = normal.x();
+            normalY[i] = normal.y();
+            normalZ[i] = normal.z();
+        }
+    }
+
+    /**
+     * Calcule les altitudes en une série de points, typiquement une ligne de
+     * pixels. L'implémentation par défaut lève une exception : seuls les
+     * modèles connaissant l'altitude du terrain la redéfinissent.
+     * 
+     * @param longitudes
+     *            Longitudes des points, en radians
+     * @param latitudes
+     *            Latitudes des points, en radians
+     * @param elevations
+     *            Tableau recevant l'altitude des points, en mètres
+     * @throws IllegalArgumentException
+     *             si les tableaux n'ont pas tous la même longueur, ou si l'un
+     *             des points n'est pas couvert par le modèle
+     * @throws UnsupportedOperationException
+     *             si le modèle ne connaît pas l'altitude du terrain
+     */
+    public default void elevationsAt(double[] longitudes, double[] latitudes,
+            double[] elevations) {
+        throw new UnsupportedOperationException("elevations not available");
+    }
 }
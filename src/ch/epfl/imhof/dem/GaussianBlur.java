@@ -0,0 +1,243 @@
+package ch.epfl.imhof.dem;
+
+import java.util.concurrent.ExecutorService;
+
+import ch.epfl.imhof.Parallel;
+
+/**
+ * Flou gaussien d'un plan de nombres à virgule flottante, rangé ligne par
+ * ligne. Le flou est séparable : une passe horizontale puis une passe
+ * verticale, chacune traitée par bandes de lignes en parallèle. Pour les
+ * grands rayons, le noyau gaussien est approché par trois flous uniformes
+ * successifs, dont le coût par pixel ne dépend pas du rayon.
+ *
+ * Les bords du plan sont prolongés par leurs valeurs extrêmes ; seuls les
+ * pixels situés à plus de {@link #margin(double)} pixels du bord ont la
+ * valeur d'un flou sur un plan infini.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+final class GaussianBlur {
+    /**
+     * Rayon à partir duquel le flou est approché par des flous uniformes.
+     */
+    static final double BOX_BLUR_MIN_RADIUS = 12;
+
+    // Nombre de flous uniformes approchant le flou gaussien
+    private static final int BOX_PASSES = 3;
+
+    private final double radius;
+    private final ExecutorService executor;
+
+    /**
+     *
+     * @param radius
+     *            Rayon du flou, en pixels (trois écarts-types)
+     * @param executor
+     *            Exécuteur sur lequel traiter les bandes
+     * @throws IllegalArgumentException
+     *             si le rayon est négatif
+     */
+    GaussianBlur(double radius, ExecutorService executor) {
+        if (!(radius >= 0))
+            throw new IllegalArgumentException("invalid radius: " + radius);
+        this.radius = radius;
+        this.executor = executor;
+    }
+
+    /**
+     * @param radius
+     *            Rayon du flou
+     * @return Le nombre de pixels du bord du plan affectés par son
+     *         prolongement.
+     */
+    static int margin(double radius) {
+        if (radius < BOX_BLUR_MIN_RADIUS)
+            return (int) Math.ceil(radius);
+        int margin = 0;
+        for (int size : boxSizes(radius))
+            margin += size / 2;
+        return margin;
+    }
+
+    /**
+     * Floute le plan donné.
+     *
+     * @param plane
+     *            Valeurs du plan, ligne par ligne
+     * @param width
+     *            Largeur du plan
+     * @param height
+     *            Hauteur du plan
+     * @return Un nouveau plan, flouté
+     * @throws IllegalArgumentException
+     *             si la taille du tableau ne correspond pas aux dimensions
+     */
+    float[] apply(float[] plane, int width, int height) {
+        if (plane.length != width * height)
+            throw new IllegalArgumentException("invalid plane size");
+        if (radius == 0)
+            return plane.clone();
+        float[] buffer = new float[plane.length];
+        float[] result = new float[plane.length];
+        if (radius < BOX_BLUR_MIN_RADIUS) {
+            float[] kernel = kernel(radius);
+            inStripes(height, (first, last) -> horizontal(plane, buffer,
+                    width, first, last, kernel));
+            inStripes(height, (first, last) -> vertical(buffer, result,
+                    width, height, first, last, kernel));
+        } else {
+            // Les passes alternent entre les deux tableaux
+            float[] source = plane, target = result;
+            for (int size : boxSizes(radius)) {
+                float[] in = source, out = target;
+                inStripes(height, (first, last) -> horizontalBox(in, out,
+                        width, first, last, size / 2));
+                source = target;
+                target = source == result ? buffer : result;
+            }
+            for (int size : boxSizes(radius)) {
+                float[] in = source, out = target;
+                inStripes(height, (first, last) -> verticalBox(in, out,
+                        width, height, first, last, size / 2));
+                source = target;
+                target = source == result ? buffer : result;
+            }
+            return source;
+        }
+        return result;
+    }
+
+    /**
+     *
+     * @param radius
+     *            Rayon de floutage
+     * @return Le noyau du flou gaussien (unidimensionnel) sous forme d'un
+     *         tableau
+     */
+    static float[] kernel(double radius) {
+        double sigma = radius / 3;
+        int matrixSize = (int) (2 * Math.ceil(radius) + 1);
+        double normal = 0;
+        float[] kernel = new float[matrixSize];
+        for (int i = 0; i < matrixSize; i++) {
+            int x = i - (int) Math.ceil(matrixSize / 2);
+            kernel[i] = (float) Math.exp(-(x * x) / (2 * sigma * sigma));
+            normal += kernel[i];
+        }
+        for (int i = 0; i < matrixSize; i++) {
+            kernel[i] *= (1 / normal);
+        }
+        return kernel;
+    }
+
+    /**
+     * @return Les largeurs (impaires) des flous uniformes successifs dont la
+     *         composition a la même variance que le flou gaussien.
+     */
+    static int[] boxSizes(double radius) {
+        double sigma = radius / 3;
+        double idealWidth = Math.sqrt(12 * sigma * sigma / BOX_PASSES + 1);
+        int lower = (int) Math.floor(idealWidth);
+        if (lower % 2 == 0)
+            lower--;
+        int upper = lower + 2;
+        // Nombre de passes utilisant la largeur inférieure
+        int lowerPasses = (int) Math.round((12 * sigma * sigma - BOX_PASSES
+                * lower * lower - 4 * BOX_PASSES * lower - 3 * BOX_PASSES)
+                / (-4 * lower - 4));
+        int[] sizes = new int[BOX_PASSES];
+        for (int i = 0; i < BOX_PASSES; i++)
+            sizes[i] = i < lowerPasses ? lower : upper;
+        return sizes;
+    }
+
+    private static void horizontal(float[] in, float[] out, int width,
+            int firstRow, int lastRow, float[] kernel) {
+        int half = kernel.length / 2;
+        for (int y = firstRow; y < lastRow; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                float sum = 0;
+                if (x >= half && x + half < width) {
+                    // Pas de prolongement nécessaire loin des bords
+                    int start = row + x - half;
+                    for (int k = 0; k < kernel.length; k++)
+                        sum += kernel[k] * in[start + k];
+                } else {
+                    for (int k = 0; k < kernel.length; k++)
+                        sum += kernel[k]
+                                * in[row + clamp(x + k - half, width)];
+                }
+                out[row + x] = sum;
+            }
+        }
+    }
+
+    private static void vertical(float[] in, float[] out, int width,
+            int height, int firstRow, int lastRow, float[] kernel) {
+        int half = kernel.length / 2;
+        for (int y = firstRow; y < lastRow; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++)
+                out[row + x] = 0;
+            // Parcours des lignes sources dans l'ordre de la mémoire
+            for (int k = 0; k < kernel.length; k++) {
+                int sourceRow = clamp(y + k - half, height) * width;
+                float weight = kernel[k];
+                for (int x = 0; x < width; x++)
+                    out[row + x] += weight * in[sourceRow + x];
+            }
+        }
+    }
+
+    private static void horizontalBox(float[] in, float[] out, int width,
+            int firstRow, int lastRow, int half) {
+        float scale = 1f / (2 * half + 1);
+        for (int y = firstRow; y < lastRow; y++) {
+            int row = y * width;
+            // Somme glissante des valeurs de la fenêtre
+            double sum = 0;
+            for (int i = -half; i <= half; i++)
+                sum += in[row + clamp(i, width)];
+            for (int x = 0; x < width; x++) {
+                out[row + x] = (float) sum * scale;
+                sum += in[row + clamp(x + half + 1, width)]
+                        - in[row + clamp(x - half, width)];
+            }
+        }
+    }
+
+    private static void verticalBox(float[] in, float[] out, int width,
+            int height, int firstRow, int lastRow, int half) {
+        float scale = 1f / (2 * half + 1);
+        // Sommes glissantes des valeurs de la fenêtre, colonne par colonne
+        double[] sums = new double[width];
+        for (int i = firstRow - half; i <= firstRow + half; i++) {
+            int sourceRow = clamp(i, height) * width;
+            for (int x = 0; x < width; x++)
+                sums[x] += in[sourceRow + x];
+        }
+        for (int y = firstRow; y < lastRow; y++) {
+            int row = y * width;
+            int added = clamp(y + half + 1, height) * width;
+            int removed = clamp(y - half, height) * width;
+            for (int x = 0; x < width; x++) {
+                out[row + x] = (float) sums[x] * scale;
+                sums[x] += in[added + x] - in[removed + x];
+            }
+        }
+    }
+
+    private static int clamp(int index, int length) {
+        return index < 0 ? 0 : index >= length ? length - 1 : index;
+    }
+
+    /**
+     * Traite les lignes du plan par bandes, en parallèle.
+     */
+    private void inStripes(int height, Parallel.Stripe stripe) {
+        Parallel.inStripes(executor, height, stripe);
+    }
+}
@@ -1,55 +1,65 @@
 package ch.epfl.imhof.dem;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.ShortBuffer;
-import java.nio.channels.FileChannel.MapMode;
 
 import ch.epfl.imhof.PointGeo;
 import ch.epfl.imhof.Vector3;
 
 /**
- * Représente un modèle numérique du terrain lié à un fichier HGT.
+ * Représente un modèle numérique du terrain lié à un fichier HGT, ou plus
+ * généralement à une grille d'altitudes au format HGT : entiers signés sur 16
+ * bits, gros-boutistes, rangés ligne par ligne du nord au sud. Toutes les
+ * tailles de grille sont acceptées (SRTM3, SRTM1 ou autres), le fichier étant
+ * projeté en mémoire par tranches. Les échantillons manquants (-32768) sont
+ * remplacés par la moyenne des autres échantillons de leur cellule.
  *
  * @author Ben Lalah Ali
  * @author Alami Idrissi Ali
  */
 public final class HGTDigitalElevationModel implements DigitalElevationModel {
-    private final FileInputStream stream;
-    private final long length;
-    private ShortBuffer altitudes;
-    private final int sizeBuffer;
-    private final double longitude, latitude, angularResolution, dimension;
+    private MappedHeights heights;
+    private final int columns, rows;
+    private final double longitude, latitude, angularResolution;
+    // Etendue de la zone couverte, en radians
+    private final double width, height;
 
     /**
      * Construit un modèle numérique du terrain à partir du fichier HGT entré en
      * paramètre.
-     * 
+     *
      * @param file
      *            le fichier HGT contenant le modèle numérique du terrain.
      * @throws IOException
      *             Signale la présence d'une erreur durant la lecture du
-     *             fichier.
+     *             fichier, notamment une FileNotFoundException s'il n'existe
+     *             pas.
      * @throws IllegalArgumentException
-     *             Lève une exception si le fichier HGT n'est pas valide.
+     *             Lève une exception si le nom ou la taille du fichier HGT
+     *             n'est pas valide.
      */
     public HGTDigitalElevationModel(File file) throws IOException {
         String name = file.getName();
 
-        // Calcul de la dimension du fichier
-        length = file.length();
-        dimension = Math.sqrt(length / 2d);
+        // Un fichier absent ou illisible aurait une taille nulle
+        if (!file.isFile())
+            throw new FileNotFoundException(file.getPath());
 
         // Vérifie si le nom est le même du fichier HGT
         if (!name
-                .matches("(N|S)(0[0-9]|[0-8][0-9]|90)(E|W)(0[0-9]{2}|1[0-7][0-9]|180)\\.hgt")
-                || dimension != (int) dimension)
+                .matches("(N|S)(0[0-9]|[0-8][0-9]|90)(E|W)(0[0-9]{2}|1[0-7][0-9]|180)\\.hgt"))
             throw new IllegalArgumentException("invalid file name: " + name);
 
-        sizeBuffer = Math
-                .toIntExact(Math.round((Math.sqrt(file.length() / 2)))) - 1;
-        angularResolution = Math.toRadians(1d / sizeBuffer);
+        // Calcul de la dimension du fichier
+        double dimension = Math.sqrt(file.length() / 2d);
+        if (dimension != (int) dimension || dimension < 2)
+            throw new IllegalArgumentException("invalid file size: "
+                    + file.length());
+
+        columns = rows = (int) dimension;
+        angularResolution = Math.toRadians(1d / (columns - 1));
+        width = height = Math.toRadians(1);
 
         // Extraction de la latitude et de la longitude du nom de fichier
         latitude = Math.toRadians(((name.charAt(0) == 'N') ? 1 : -1)
@@ -57,10 +67,48 @@ public final class HGTDigitalElevationModel implements DigitalElevationModel {
         longitude = Math.toRadians(((name.charAt(3) == 'E') ? 1 : -1)
                 * Integer.parseInt(name.substring(4, 7)));
 
-        // Lecture du fichier HGT grace à un shortBuffer
-        stream = new FileInputStream(file);
-        altitudes = stream.getChannel().map(MapMode.READ_ONLY, 0, length)
-                .asShortBuffer();
+        heights = new MappedHeights(file, columns, rows);
+    }
+
+    /**
+     * Construit un modèle numérique du terrain à partir d'une grille
+     * d'altitudes au format HGT de dimensions quelconques, dont le nom n'est
+     * pas significatif.
+     *
+     * @param file
+     *            le fichier contenant la grille d'altitudes.
+     * @param bottomLeft
+     *            la position de l'échantillon sud-ouest de la grille.
+     * @param columns
+     *            le nombre d'échantillons par ligne.
+     * @param rows
+     *            le nombre de lignes.
+     * @param angularResolution
+     *            l'écart angulaire entre deux échantillons voisins, en
+     *            radians.
+     * @throws IOException
+     *             Signale la présence d'une erreur durant la lecture du
+     *             fichier.
+     * @throws IllegalArgumentException
+     *             Lève une exception si la taille du fichier ne correspond
+     *             pas aux dimensions de la grille, si la grille a moins de
+     *             deux lignes ou colonnes, ou si l'écart angulaire n'est pas
+     *             strictement positif.
+     */
+    public HGTDigitalElevationModel(File file, PointGeo bottomLeft,
+            int columns, int rows, double angularResolution)
+            throws IOException {
+        if (!(angularResolution > 0))
+            throw new IllegalArgumentException("invalid angular resolution: "
+                    + angularResolution);
+        this.columns = columns;
+        this.rows = rows;
+        this.angularResolution = angularResolution;
+        this.longitude = bottomLeft.longitude();
+        this.latitude = bottomLeft.latitude();
+        this.width = (columns - 1) * angularResolution;
+        this.height = (rows - 1) * angularResolution;
+        heights = new MappedHeights(file, columns, rows);
     }
 
     /**
@@ -73,52 +121,191 @@ public final class HGTDigitalElevationModel implements DigitalElevationModel {
         // Longitude et Latitude du point entré en paramètre
         double thisLatitude = point.latitude();
         double thisLongitude = point.longitude();
-
-        // Vérifie si le point appartient à la zone
-        if (!(thisLatitude >= latitude
-                && thisLatitude <= latitude + Math.toRadians(1)
-                && thisLongitude >= longitude && thisLongitude <= longitude
-                + Math.toRadians(1)))
-            throw new IllegalArgumentException("invalid argument: ("
-                    + thisLongitude + "," + thisLatitude + ") ,(" + longitude
-                    + "," + latitude + ")");
+        checkContains(thisLongitude, thisLatitude);
 
         // Extraction des positions du point
-        int x = (int) ((thisLongitude - longitude) / angularResolution);
-        int y = (int) ((thisLatitude - latitude) / angularResolution);
+        int x = column(thisLongitude);
+        int y = row(thisLatitude);
+
+        int southWest = getIndex(x, y), southEast = getIndex(x + 1, y);
+        int northWest = getIndex(x, y + 1), northEast = getIndex(x + 1, y + 1);
+        if (southWest == MappedHeights.VOID || southEast == MappedHeights.VOID
+                || northWest == MappedHeights.VOID
+                || northEast == MappedHeights.VOID) {
+            int[] cell = { southWest, southEast, northWest, northEast };
+            MappedHeights.fillVoids(cell);
+            southWest = cell[0];
+            southEast = cell[1];
+            northWest = cell[2];
+            northEast = cell[3];
+        }
 
-        // Construire le vecteur normale tridimensionnel 
+        // Construire le vecteur normale tridimensionnel
         double s = Earth.RADIUS * angularResolution;
-        return new Vector3(
-                0.5
-
-                        * s
-                        * (getIndex(x, y) - getIndex(x + 1, y)
-                                + getIndex(x, y + 1) - getIndex(x + 1, y + 1)),
-                0.5
-
-                        * s
-                        * (getIndex(x, y) + getIndex(x + 1, y)
-                                - getIndex(x, y + 1) - getIndex(x + 1, y + 1)),
-                s * s);
+        return new Vector3(0.5 * s
+                * (southWest - southEast + northWest - northEast), 0.5 * s
+                * (southWest + southEast - northWest - northEast), s * s);
+    }
+
+    /**
+     * Calcule les normales en réutilisant les échantillons d'un point à
+     * l'autre : tant que les points restent dans la même cellule de la
+     * grille, aucun échantillon n'est relu, et lorsqu'ils passent à la
+     * cellule voisine à l'est, seuls les deux nouveaux échantillons le sont.
+     * Le résultat est identique à celui de {@link #normalAt(PointGeo)}.
+     *
+     * @throws IllegalArgumentException
+     *             Lève une exception si les tableaux n'ont pas tous la même
+     *             longueur, ou si l'un des points ne fait pas partie de la
+     *             zone couverte par le MNT.
+     */
+    @Override
+    public void normalsAt(double[] longitudes, double[] latitudes,
+            double[] normalX, double[] normalY, double[] normalZ) {
+        int count = longitudes.length;
+        if (latitudes.length != count || normalX.length != count
+                || normalY.length != count || normalZ.length != count)
+            throw new IllegalArgumentException("arrays of different lengths");
+
+        double s = Earth.RADIUS * angularResolution;
+        double halfS = 0.5 * s, sSquared = s * s;
+        // Cellule courante, ses quatre échantillons et leurs composantes
+        // horizontales de la normale
+        int cellX = -1, cellY = -1;
+        int southWest = 0, southEast = 0, northWest = 0, northEast = 0;
+        double cellNormalX = 0, cellNormalY = 0;
+        int[] cell = new int[4];
+        for (int i = 0; i < count; i++) {
+            double thisLongitude = longitudes[i], thisLatitude = latitudes[i];
+            checkContains(thisLongitude, thisLatitude);
+
+            int x = column(thisLongitude);
+            int y = row(thisLatitude);
+            if (x != cellX || y != cellY) {
+                if (y == cellY && x == cellX + 1) {
+                    southWest = southEast;
+                    northWest = northEast;
+                } else {
+                    southWest = getIndex(x, y);
+                    northWest = getIndex(x, y + 1);
+                }
+                southEast = getIndex(x + 1, y);
+                northEast = getIndex(x + 1, y + 1);
+                cellX = x;
+                cellY = y;
+
+                cell[0] = southWest;
+                cell[1] = southEast;
+                cell[2] = northWest;
+                cell[3] = northEast;
+                if (southWest == MappedHeights.VOID
+                        || southEast == MappedHeights.VOID
+                        || northWest == MappedHeights.VOID
+                        || northEast == MappedHeights.VOID)
+                    MappedHeights.fillVoids(cell);
+                cellNormalX = halfS * (cell[0] - cell[1] + cell[2] - cell[3]);
+                cellNormalY = halfS * (cell[0] + cell[1] - cell[2] - cell[3]);
+            }
+            normalX[i] = cellNormalX;
+            normalY[i] = cellNormalY;
+            normalZ[i] = sSquared;
+        }
+    }
+
+    /**
+     * Calcule les altitudes par interpolation bilinéaire des quatre
+     * échantillons entourant chaque point, les échantillons manquants étant
+     * remplacés comme pour le calcul des normales.
+     *
+     * @throws IllegalArgumentException
+     *             Lève une exception si les tableaux n'ont pas tous la même
+     *             longueur, ou si l'un des points ne fait pas partie de la
+     *             zone couverte par le MNT.
+     */
+    @Override
+    public void elevationsAt(double[] longitudes, double[] latitudes,
+            double[] elevations) {
+        int count = longitudes.length;
+        if (latitudes.length != count || elevations.length != count)
+            throw new IllegalArgumentException("arrays of different lengths");
+        int[] cell = new int[4];
+        for (int i = 0; i < count; i++) {
+            double thisLongitude = longitudes[i], thisLatitude = latitudes[i];
+            checkContains(thisLongitude, thisLatitude);
+            int x = column(thisLongitude);
+            int y = row(thisLatitude);
+            cell[0] = getIndex(x, y);
+            cell[1] = getIndex(x + 1, y);
+            cell[2] = getIndex(x, y + 1);
+            cell[3] = getIndex(x + 1, y + 1);
+            MappedHeights.fillVoids(cell);
+            elevations[i] = MappedHeights.bilinear(cell,
+                    (thisLongitude - longitude) / angularResolution - x,
+                    (thisLatitude - latitude) / angularResolution - y);
+        }
     }
 
     @Override
     public void close() throws IOException {
-        // TODO Auto-generated method stub
-        altitudes = null;
-        stream.close();
+        // Le fichier est fermé dès sa projection en mémoire
+        heights = null;
+    }
+
+    /**
+     * @return L'écart angulaire entre deux échantillons voisins, en radians.
+     */
+    public double angularResolution() {
+        return angularResolution;
+    }
+
+    /**
+     * @return Les altitudes du fichier. Elles restent lisibles même après la
+     *         fermeture du modèle.
+     */
+    MappedHeights heights() {
+        return heights;
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             Lève une exception si le point donné ne fait pas partie de
+     *             la zone couverte par le MNT.
+     */
+    private void checkContains(double thisLongitude, double thisLatitude) {
+        if (!(thisLatitude >= latitude && thisLatitude <= latitude + height
+                && thisLongitude >= longitude && thisLongitude <= longitude
+                + width))
+            throw new IllegalArgumentException("invalid argument: ("
+                    + thisLongitude + "," + thisLatitude + ") ,(" + longitude
+                    + "," + latitude + ")");
+    }
+
+    /**
+     * @return La colonne de la cellule contenant la longitude donnée.
+     */
+    private int column(double thisLongitude) {
+        return Math.min(columns - 2,
+                (int) ((thisLongitude - longitude) / angularResolution));
+    }
+
+    /**
+     * @return La ligne, depuis le sud, de la cellule contenant la latitude
+     *         donnée.
+     */
+    private int row(double thisLatitude) {
+        return Math.min(rows - 2,
+                (int) ((thisLatitude - latitude) / angularResolution));
     }
 
     /**
-     * 
+     *
      * @param x
      *            Colonne du point dans le tableau des altitudes
      * @param y
-     *            Ligne du point dans le tableau des altitudes
+     *            Ligne du point dans le tableau des altitudes, depuis le sud
      * @return l'element à la position donnée
      */
     private short getIndex(int x, int y) {
-        return altitudes.get((sizeBuffer - y) * (sizeBuffer + 1) + x);
+        return heights.get(x, rows - 1 - y);
     }
 }
@@ -0,0 +1,342 @@
+package ch.epfl.imhof.dem;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.Vector3;
+
+/**
+ * Représente un modèle numérique du terrain formé de tous les fichiers HGT
+ * d'un répertoire, juxtaposés. Les fichiers ne sont projetés en mémoire qu'au
+ * premier accès, et seuls les plus récemment utilisés restent ouverts. Les
+ * zones couvertes par aucun fichier sont considérées comme étant au niveau
+ * de la mer, et les échantillons manquants sont traités comme par
+ * {@link HGTDigitalElevationModel}.
+ *
+ * Les instances peuvent être utilisées depuis plusieurs fils à la fois.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+public final class HGTMosaicDigitalElevationModel implements
+        DigitalElevationModel {
+
+    /**
+     * Nombre maximum par défaut de fichiers ouverts simultanément.
+     */
+    public static final int DEFAULT_MAX_OPEN_TILES = 16;
+
+    private static final Pattern TILE_NAME = Pattern
+            .compile("(N|S)(0[0-9]|[0-8][0-9]|90)(E|W)(0[0-9]{2}|1[0-7][0-9]|180)\\.hgt");
+
+    private final Map<Integer, File> files = new HashMap<>();
+    private final Map<Integer, HGTDigitalElevationModel> openTiles;
+    private final int intervals;
+    private final double angularResolution;
+
+    /**
+     * Construit un modèle numérique du terrain à partir des fichiers HGT du
+     * répertoire donné.
+     *
+     * @param directory
+     *            Répertoire contenant les fichiers HGT.
+     * @param maxOpenTiles
+     *            Nombre maximum de fichiers ouverts simultanément.
+     * @throws IOException
+     *             Signale la présence d'une erreur durant la lecture du
+     *             répertoire.
+     * @throws IllegalArgumentException
+     *             Lève une exception si le nombre maximum de fichiers ouverts
+     *             n'est pas strictement positif, si le répertoire ne contient
+     *             aucun fichier HGT ou si ses fichiers n'ont pas tous la même
+     *             taille.
+     */
+    public HGTMosaicDigitalElevationModel(File directory, int maxOpenTiles)
+            throws IOException {
+        if (maxOpenTiles <= 0)
+            throw new IllegalArgumentException("invalid maximum open tiles: "
+                    + maxOpenTiles);
+        File[] content = directory.listFiles();
+        if (content == null)
+            throw new IOException("unable to list directory: " + directory);
+
+        long length = -1;
+        for (File file : content) {
+            Matcher matcher = TILE_NAME.matcher(file.getName());
+            if (!matcher.matches())
+                continue;
+            if (length == -1)
+                length = file.length();
+            else if (file.length() != length)
+                throw new IllegalArgumentException(
+                        "tiles of different sizes in: " + directory);
+            int latitude = (matcher.group(1).equals("N") ? 1 : -1)
+                    * Integer.parseInt(matcher.group(2));
+            int longitude = (matcher.group(3).equals("E") ? 1 : -1)
+                    * Integer.parseInt(matcher.group(4));
+            files.put(key(latitude, longitude), file);
+        }
+        if (files.isEmpty())
+            throw new IllegalArgumentException("no HGT file in: " + directory);
+
+        double dimension = Math.sqrt(length / 2d);
+        if (dimension != (int) dimension || dimension < 2)
+            throw new IllegalArgumentException("invalid HGT file size: "
+                    + length);
+        intervals = (int) dimension - 1;
+        angularResolution = Math.toRadians(1d / intervals);
+
+        // Fichiers ouverts, du moins au plus récemment utilisé
+        openTiles = new LinkedHashMap<Integer, HGTDigitalElevationModel>(16,
+                0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Integer, HGTDigitalElevationModel> eldest) {
+                if (size() <= maxOpenTiles)
+                    return false;
+                try {
+                    eldest.getValue().close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Construit un modèle numérique du terrain à partir des fichiers HGT du
+     * répertoire donné, dont au plus {@value #DEFAULT_MAX_OPEN_TILES} sont
+     * ouverts simultanément.
+     *
+     * @param directory
+     *            Répertoire contenant les fichiers HGT.
+     * @throws IOException
+     *             Signale la présence d'une erreur durant la lecture du
+     *             répertoire.
+     * @throws IllegalArgumentException
+     *             Lève une exception si le répertoire ne contient aucun
+     *             fichier HGT ou si ses fichiers n'ont pas tous la même
+     *             taille.
+     */
+    public HGTMosaicDigitalElevationModel(File directory) throws IOException {
+        this(directory, DEFAULT_MAX_OPEN_TILES);
+    }
+
+    /**
+     * @throws UncheckedIOException
+     *             Signale la présence d'une erreur durant l'ouverture d'un
+     *             fichier HGT.
+     */
+    @Override
+    public Vector3 normalAt(PointGeo point) {
+        // Position du point dans la grille de tous les échantillons
+        int x = (int) Math.floor(Math.toDegrees(point.longitude()) * intervals);
+        int y = (int) Math.floor(Math.toDegrees(point.latitude()) * intervals);
+
+        // Les fichiers voisins partagent leurs échantillons de bord : les
+        // quatre échantillons entourant le point sont toujours dans le
+        // fichier contenant le coin sud-ouest
+        int tileLongitude = Math.floorDiv(x, intervals);
+        int tileLatitude = Math.floorDiv(y, intervals);
+        x -= tileLongitude * intervals;
+        y -= tileLatitude * intervals;
+
+        double s = Earth.RADIUS * angularResolution;
+        MappedHeights heights = heights(tileLatitude, tileLongitude);
+        if (heights == null)
+            return new Vector3(0, 0, s * s);
+
+        int[] cell = { altitude(heights, x, y), altitude(heights, x + 1, y),
+                altitude(heights, x, y + 1), altitude(heights, x + 1, y + 1) };
+        MappedHeights.fillVoids(cell);
+        return new Vector3(0.5 * s * (cell[0] - cell[1] + cell[2] - cell[3]),
+                0.5 * s * (cell[0] + cell[1] - cell[2] - cell[3]), s * s);
+    }
+
+    /**
+     * Calcule les normales en réutilisant, d'un point au suivant, le fichier
+     * et les échantillons de la cellule courante, comme le fait
+     * {@link HGTDigitalElevationModel#normalsAt(double[], double[], double[], double[], double[])}.
+     * 
+     * @throws UncheckedIOException
+     *             Signale la présence d'une erreur durant l'ouverture d'un
+     *             fichier HGT.
+     */
+    @Override
+    public void normalsAt(double[] longitudes, double[] latitudes,
+            double[] normalX, double[] normalY, double[] normalZ) {
+        int count = longitudes.length;
+        if (latitudes.length != count || normalX.length != count
+                || normalY.length != count || normalZ.length != count)
+            throw new IllegalArgumentException("arrays of different lengths");
+
+        double s = Earth.RADIUS * angularResolution;
+        double halfS = 0.5 * s, sSquared = s * s;
+        // Fichier courant, et cellule courante avec ses quatre échantillons
+        int tileLongitude = 0, tileLatitude = 0;
+        MappedHeights heights = null;
+        boolean tileLoaded = false;
+        int cellX = -1, cellY = -1;
+        int southWest = 0, southEast = 0, northWest = 0, northEast = 0;
+        double cellNormalX = 0, cellNormalY = 0;
+        int[] cell = new int[4];
+        for (int i = 0; i < count; i++) {
+            int x = (int) Math.floor(Math.toDegrees(longitudes[i]) * intervals);
+            int y = (int) Math.floor(Math.toDegrees(latitudes[i]) * intervals);
+            int thisTileLongitude = Math.floorDiv(x, intervals);
+            int thisTileLatitude = Math.floorDiv(y, intervals);
+            x -= thisTileLongitude * intervals;
+            y -= thisTileLatitude * intervals;
+
+            if (!tileLoaded || thisTileLongitude != tileLongitude
+                    || thisTileLatitude != tileLatitude) {
+                tileLongitude = thisTileLongitude;
+                tileLatitude = thisTileLatitude;
+                heights = heights(tileLatitude, tileLongitude);
+                tileLoaded = true;
+                cellX = -1;
+                cellY = -1;
+            }
+            if (heights == null) {
+                normalX[i] = 0;
+                normalY[i] = 0;
+            } else {
+                if (x != cellX || y != cellY) {
+                    if (y == cellY && x == cellX + 1) {
+                        southWest = southEast;
+                        northWest = northEast;
+                    } else {
+                        southWest = altitude(heights, x, y);
+                        northWest = altitude(heights, x, y + 1);
+                    }
+                    southEast = altitude(heights, x + 1, y);
+                    northEast = altitude(heights, x + 1, y + 1);
+                    cellX = x;
+                    cellY = y;
+
+                    cell[0] = southWest;
+                    cell[1] = southEast;
+                    cell[2] = northWest;
+                    cell[3] = northEast;
+                    MappedHeights.fillVoids(cell);
+                    cellNormalX = halfS
+                            * (cell[0] - cell[1] + cell[2] - cell[3]);
+                    cellNormalY = halfS
+                            * (cell[0] + cell[1] - cell[2] - cell[3]);
+                }
+                normalX[i] = cellNormalX;
+                normalY[i] = cellNormalY;
+            }
+            normalZ[i] = sSquared;
+        }
+    }
+
+    /**
+     * Calcule les altitudes par interpolation bilinéaire des quatre
+     * échantillons entourant chaque point. Les zones couvertes par aucun
+     * fichier sont à l'altitude zéro.
+     *
+     * @throws UncheckedIOException
+     *             Signale la présence d'une erreur durant l'ouverture d'un
+     *             fichier HGT.
+     */
+    @Override
+    public void elevationsAt(double[] longitudes, double[] latitudes,
+            double[] elevations) {
+        int count = longitudes.length;
+        if (latitudes.length != count || elevations.length != count)
+            throw new IllegalArgumentException("arrays of different lengths");
+        int[] cell = new int[4];
+        for (int i = 0; i < count; i++) {
+            double u = Math.toDegrees(longitudes[i]) * intervals;
+            double v = Math.toDegrees(latitudes[i]) * intervals;
+            int x = (int) Math.floor(u), y = (int) Math.floor(v);
+            int tileLongitude = Math.floorDiv(x, intervals);
+            int tileLatitude = Math.floorDiv(y, intervals);
+            MappedHeights heights = heights(tileLatitude, tileLongitude);
+            if (heights == null) {
+                elevations[i] = 0;
+                continue;
+            }
+            int column = x - tileLongitude * intervals;
+            int row = y - tileLatitude * intervals;
+            cell[0] = altitude(heights, column, row);
+            cell[1] = altitude(heights, column + 1, row);
+            cell[2] = altitude(heights, column, row + 1);
+            cell[3] = altitude(heights, column + 1, row + 1);
+            MappedHeights.fillVoids(cell);
+            elevations[i] = MappedHeights.bilinear(cell, u - x, v - y);
+        }
+    }
+
+    /**
+     * @return L'écart angulaire entre deux échantillons voisins, en radians.
+     */
+    public double angularResolution() {
+        return angularResolution;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (openTiles) {
+            IOException exception = null;
+            for (HGTDigitalElevationModel tile : openTiles.values()) {
+                try {
+                    tile.close();
+                } catch (IOException e) {
+                    exception = e;
+                }
+            }
+            openTiles.clear();
+            if (exception != null)
+                throw exception;
+        }
+    }
+
+    /**
+     * @return Les altitudes du fichier de coin sud-ouest donné, en l'ouvrant
+     *         au besoin, ou null si aucun fichier ne couvre cette zone.
+     */
+    private MappedHeights heights(int latitude, int longitude) {
+        int key = key(latitude, longitude);
+        File file = files.get(key);
+        if (file == null)
+            return null;
+        synchronized (openTiles) {
+            HGTDigitalElevationModel tile = openTiles.get(key);
+            if (tile == null) {
+                try {
+                    tile = new HGTDigitalElevationModel(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                openTiles.put(key, tile);
+            }
+            return tile.heights();
+        }
+    }
+
+    /**
+     * @return L'altitude de l'échantillon donné, la ligne 0 étant au sud.
+     */
+    private int altitude(MappedHeights heights, int x, int y) {
+        return heights.get(x, intervals - y);
+    }
+
+    /**
+     * @return La clé du fichier de coin sud-ouest donné, en degrés.
+     */
+    private static int key(int latitude, int longitude) {
+        return (latitude + 90) * 361 + longitude + 180;
+    }
+}
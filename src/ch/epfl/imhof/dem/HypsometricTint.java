@@ -0,0 +1,126 @@
+package ch.epfl.imhof.dem;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import ch.epfl.imhof.painting.Color;
+
+/**
+ * Teinte hypsométrique : couleur du relief en fonction de l'altitude,
+ * interpolée linéairement entre des altitudes de référence. En dessous de la
+ * plus basse, resp. au-dessus de la plus haute, la couleur est celle de cette
+ * altitude.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+public final class HypsometricTint {
+    private final double[] elevations, red, green, blue;
+
+    private HypsometricTint(TreeMap<Double, Color> stops) {
+        int count = stops.size();
+        elevations = new double[count];
+        red = new double[count];
+        green = new double[count];
+        blue = new double[count];
+        int i = 0;
+        for (Map.Entry<Double, Color> stop : stops.entrySet()) {
+            elevations[i] = stop.getKey();
+            red[i] = stop.getValue().getRed();
+            green[i] = stop.getValue().getGreen();
+            blue[i] = stop.getValue().getBlue();
+            i++;
+        }
+    }
+
+    /**
+     * @param elevation
+     *            Altitude, en mètres
+     * @return La couleur de la teinte à l'altitude donnée.
+     */
+    public Color colorAt(double elevation) {
+        double[] rgb = new double[3];
+        componentsAt(elevation, rgb);
+        return Color.rgb(rgb[0], rgb[1], rgb[2]);
+    }
+
+    /**
+     * Stocke les composantes rouge, verte et bleue de la couleur à l'altitude
+     * donnée dans le tableau donné, sans créer d'objet.
+     */
+    void componentsAt(double elevation, double[] rgb) {
+        int last = elevations.length - 1;
+        if (elevation <= elevations[0] || last == 0) {
+            set(rgb, 0, 0, 0);
+        } else if (elevation >= elevations[last]) {
+            set(rgb, last, last, 0);
+        } else {
+            int i = 1;
+            while (elevations[i] < elevation)
+                i++;
+            set(rgb, i - 1, i, (elevation - elevations[i - 1])
+                    / (elevations[i] - elevations[i - 1]));
+        }
+    }
+
+    /**
+     * @return Une description textuelle des altitudes de référence et de
+     *         leurs couleurs, identique pour deux teintes égales.
+     */
+    String parameters() {
+        StringBuilder parameters = new StringBuilder();
+        for (int i = 0; i < elevations.length; i++) {
+            if (i > 0)
+                parameters.append(';');
+            parameters.append(elevations[i]).append(':').append(red[i])
+                    .append(',').append(green[i]).append(',')
+                    .append(blue[i]);
+        }
+        return parameters.toString();
+    }
+
+    private void set(double[] rgb, int lower, int upper, double t) {
+        rgb[0] = red[lower] + t * (red[upper] - red[lower]);
+        rgb[1] = green[lower] + t * (green[upper] - green[lower]);
+        rgb[2] = blue[lower] + t * (blue[upper] - blue[lower]);
+    }
+
+    /**
+     * Bâtisseur de teinte hypsométrique.
+     *
+     * @author Ben Lalah Ali
+     * @author Alami Idrissi Ali
+     */
+    public static final class Builder {
+        private final TreeMap<Double, Color> stops = new TreeMap<>();
+
+        /**
+         * Ajoute une altitude de référence, en remplaçant la couleur
+         * éventuellement déjà associée à cette altitude.
+         *
+         * @param elevation
+         *            Altitude, en mètres
+         * @param color
+         *            Couleur à cette altitude
+         * @throws IllegalArgumentException
+         *             si l'altitude n'est pas un nombre fini
+         */
+        public void addStop(double elevation, Color color) {
+            if (Double.isNaN(elevation) || Double.isInfinite(elevation))
+                throw new IllegalArgumentException("invalid elevation: "
+                        + elevation);
+            stops.put(elevation, color);
+        }
+
+        /**
+         * @return La teinte hypsométrique
+         * @throws IllegalStateException
+         *             si aucune altitude de référence n'a été ajoutée
+         */
+        public HypsometricTint build() {
+            if (stops.isEmpty())
+                throw new IllegalStateException("no elevation stop");
+            return new HypsometricTint(stops);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package ch.epfl.imhof.dem;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Grille d'altitudes lue par projection en mémoire d'un fichier d'entiers
+ * signés sur 16 bits, gros-boutistes, rangés ligne par ligne du nord au sud
+ * (format HGT). Le fichier est projeté par tranches de lignes entières d'au
+ * plus {@value #MAX_CHUNK_BYTES} octets, de sorte que sa taille n'est pas
+ * limitée par celle d'un tampon unique.
+ *
+ * Les tranches restent lisibles après la fermeture du fichier, et la grille
+ * peut être lue depuis plusieurs fils à la fois.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+final class MappedHeights {
+    /**
+     * Valeur des échantillons manquants.
+     */
+    static final short VOID = Short.MIN_VALUE;
+
+    /**
+     * Taille maximale par défaut d'une tranche projetée, en octets.
+     */
+    static final long MAX_CHUNK_BYTES = 1L << 30;
+
+    private final ShortBuffer[] chunks;
+    private final int columns, rows, rowsPerChunk;
+
+    /**
+     * Projette en mémoire le fichier donné.
+     *
+     * @param file
+     *            Fichier des altitudes
+     * @param columns
+     *            Nombre d'échantillons par ligne
+     * @param rows
+     *            Nombre de lignes
+     * @throws IOException
+     *             en cas d'erreur de lecture, ou si le fichier n'existe pas
+     * @throws IllegalArgumentException
+     *             si la grille a moins de deux lignes ou colonnes, ou si la
+     *             taille du fichier ne correspond pas à ses dimensions
+     */
+    MappedHeights(File file, int columns, int rows) throws IOException {
+        this(file, columns, rows, MAX_CHUNK_BYTES);
+    }
+
+    /**
+     * Projette en mémoire le fichier donné, par tranches de la taille
+     * maximale donnée.
+     *
+     * @param file
+     *            Fichier des altitudes
+     * @param columns
+     *            Nombre d'échantillons par ligne
+     * @param rows
+     *            Nombre de lignes
+     * @param maxChunkBytes
+     *            Taille maximale d'une tranche, en octets, arrondie au
+     *            besoin à une ligne entière
+     * @throws IOException
+     *             en cas d'erreur de lecture, ou si le fichier n'existe pas
+     * @throws IllegalArgumentException
+     *             si la grille a moins de deux lignes ou colonnes, ou si la
+     *             taille du fichier ne correspond pas à ses dimensions
+     */
+    MappedHeights(File file, int columns, int rows, long maxChunkBytes)
+            throws IOException {
+        if (columns < 2 || rows < 2)
+            throw new IllegalArgumentException("invalid grid size: "
+                    + columns + "x" + rows);
+        if (!file.isFile())
+            throw new FileNotFoundException(file.getPath());
+        if (file.length() != 2L * columns * rows)
+            throw new IllegalArgumentException("invalid file size: "
+                    + file.length() + " for " + columns + "x" + rows
+                    + " samples");
+        this.columns = columns;
+        this.rows = rows;
+        this.rowsPerChunk = (int) Math.max(1,
+                Math.min(rows, maxChunkBytes / (2L * columns)));
+        this.chunks = new ShortBuffer[(rows + rowsPerChunk - 1) / rowsPerChunk];
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            for (int i = 0; i < chunks.length; i++) {
+                int chunkRows = Math.min(rowsPerChunk, rows - i * rowsPerChunk);
+                chunks[i] = channel.map(MapMode.READ_ONLY,
+                        2L * columns * i * rowsPerChunk,
+                        2L * columns * chunkRows).asShortBuffer();
+            }
+        }
+    }
+
+    /**
+     * @return Le nombre d'échantillons par ligne.
+     */
+    int columns() {
+        return columns;
+    }
+
+    /**
+     * @return Le nombre de lignes.
+     */
+    int rows() {
+        return rows;
+    }
+
+    /**
+     * @param column
+     *            Colonne de l'échantillon, depuis l'ouest
+     * @param row
+     *            Ligne de l'échantillon, depuis le nord
+     * @return L'altitude de l'échantillon, ou {@link #VOID} s'il manque.
+     */
+    short get(int column, int row) {
+        return chunks[row / rowsPerChunk].get((row % rowsPerChunk) * columns
+                + column);
+    }
+
+    /**
+     * Remplace les échantillons manquants d'une cellule par la moyenne des
+     * autres, ou par zéro s'ils manquent tous.
+     *
+     * @param samples
+     *            Les quatre échantillons d'une cellule, modifiés en place
+     */
+    static void fillVoids(int[] samples) {
+        int sum = 0, count = 0;
+        for (int sample : samples) {
+            if (sample != VOID) {
+                sum += sample;
+                count++;
+            }
+        }
+        int fill = count == 0 ? 0 : Math.round((float) sum / count);
+        for (int i = 0; i < samples.length; i++)
+            if (samples[i] == VOID)
+                samples[i] = fill;
+    }
+
+    /**
+     * @param samples
+     *            Les quatre échantillons d'une cellule : sud-ouest, sud-est,
+     *            nord-ouest et nord-est
+     * @param fx
+     *            Position du point dans la cellule, de l'ouest (0) à l'est (1)
+     * @param fy
+     *            Position du point dans la cellule, du sud (0) au nord (1)
+     * @return L'altitude interpolée bilinéairement au point donné.
+     */
+    static double bilinear(int[] samples, double fx, double fy) {
+        fx = Math.max(0, Math.min(1, fx));
+        fy = Math.max(0, Math.min(1, fy));
+        double south = samples[0] + fx * (samples[1] - samples[0]);
+        double north = samples[2] + fx * (samples[3] - samples[2]);
+        return south + fy * (north - south);
+    }
+}
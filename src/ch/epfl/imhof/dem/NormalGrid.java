@@ -0,0 +1,214 @@
+package ch.epfl.imhof.dem;
+
+import java.util.Arrays;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.Vector3;
+
+/**
+ * Modèle numérique du terrain dont les normales sont précalculées, sur une
+ * zone donnée, à partir d'un autre modèle. Les normales unitaires sont
+ * évaluées une seule fois au centre de chaque cellule d'une grille régulière,
+ * stockées sous forme d'entiers sur 16 bits, puis interpolées
+ * bilinéairement : les pixels tombant dans une même cellule du modèle
+ * d'origine ne produisent plus de paliers. Si le modèle d'origine connaît
+ * l'altitude du terrain, elle est précalculée de la même manière, au mètre
+ * près.
+ *
+ * Les points situés hors de la zone reçoivent la normale du bord le plus
+ * proche. Les instances sont non modifiables et peuvent être utilisées depuis
+ * plusieurs fils à la fois.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+public final class NormalGrid implements DigitalElevationModel {
+    // Facteur de quantification des composantes des normales unitaires
+    private static final double SCALE = Short.MAX_VALUE;
+
+    private final short[] normalX, normalY;
+    // Altitudes, en mètres, ou null si le modèle d'origine ne les connaît pas
+    private final short[] elevations;
+    private final int columns, rows;
+    private final double longitude, latitude, spacing;
+
+    /**
+     * Précalcule les normales du modèle donné sur la zone donnée.
+     *
+     * @param model
+     *            Modèle d'origine, qui doit couvrir toute la zone.
+     * @param bl
+     *            Coin bas gauche de la zone.
+     * @param tr
+     *            Coin haut droit de la zone.
+     * @param spacing
+     *            Ecart angulaire entre deux normales de la grille, en
+     *            radians, typiquement celui entre deux échantillons du
+     *            modèle d'origine.
+     * @throws IllegalArgumentException
+     *             Lève une exception si l'écart n'est pas strictement
+     *             positif, si la zone est vide ou si la grille serait trop
+     *             grande.
+     */
+    public NormalGrid(DigitalElevationModel model, PointGeo bl, PointGeo tr,
+            double spacing) {
+        if (!(spacing > 0))
+            throw new IllegalArgumentException("invalid spacing: " + spacing);
+        if (!(bl.longitude() < tr.longitude() && bl.latitude() < tr.latitude()))
+            throw new IllegalArgumentException("empty area");
+
+        // Grille alignée sur les multiples de l'écart, de sorte que ses
+        // centres coïncident avec ceux des cellules du modèle d'origine
+        double firstColumn = Math.floor(bl.longitude() / spacing);
+        double firstRow = Math.floor(bl.latitude() / spacing);
+        long columns = Math.max(2, (long) Math.ceil(tr.longitude() / spacing)
+                - (long) firstColumn);
+        long rows = Math.max(2, (long) Math.ceil(tr.latitude() / spacing)
+                - (long) firstRow);
+        if (columns * rows > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("grid too large");
+        this.columns = (int) columns;
+        this.rows = (int) rows;
+        this.longitude = firstColumn * spacing;
+        this.latitude = firstRow * spacing;
+        this.spacing = spacing;
+
+        normalX = new short[this.columns * this.rows];
+        normalY = new short[this.columns * this.rows];
+        double[] longitudes = new double[this.columns];
+        double[] latitudes = new double[this.columns];
+        double[] x = new double[this.columns];
+        double[] y = new double[this.columns];
+        double[] z = new double[this.columns];
+        double[] rowElevations = new double[this.columns];
+        short[] elevations = new short[this.columns * this.rows];
+        for (int column = 0; column < this.columns; column++)
+            longitudes[column] = Math.max(-Math.PI, Math.min(Math.PI,
+                    longitude + (column + 0.5) * spacing));
+        for (int row = 0; row < this.rows; row++) {
+            Arrays.fill(latitudes, Math.max(-Math.PI / 2, Math.min(
+                    Math.PI / 2, latitude + (row + 0.5) * spacing)));
+            model.normalsAt(longitudes, latitudes, x, y, z);
+            if (elevations != null) {
+                try {
+                    model.elevationsAt(longitudes, latitudes, rowElevations);
+                    for (int column = 0; column < this.columns; column++)
+                        elevations[row * this.columns + column] = (short) Math
+                                .max(Short.MIN_VALUE, Math.min(
+                                        Short.MAX_VALUE,
+                                        Math.round(rowElevations[column])));
+                } catch (UnsupportedOperationException e) {
+                    elevations = null;
+                }
+            }
+            for (int column = 0; column < this.columns; column++) {
+                double norm = Math.sqrt(x[column] * x[column] + y[column]
+                        * y[column] + z[column] * z[column]);
+                normalX[row * this.columns + column] = quantize(x[column]
+                        / norm);
+                normalY[row * this.columns + column] = quantize(y[column]
+                        / norm);
+            }
+        }
+        this.elevations = elevations;
+    }
+
+    @Override
+    public Vector3 normalAt(PointGeo point) {
+        double[] normal = new double[3];
+        interpolate(point.longitude(), point.latitude(), normal);
+        return new Vector3(normal[0], normal[1], normal[2]);
+    }
+
+    @Override
+    public void normalsAt(double[] longitudes, double[] latitudes,
+            double[] normalX, double[] normalY, double[] normalZ) {
+        int count = longitudes.length;
+        if (latitudes.length != count || normalX.length != count
+                || normalY.length != count || normalZ.length != count)
+            throw new IllegalArgumentException("arrays of different lengths");
+        double[] normal = new double[3];
+        for (int i = 0; i < count; i++) {
+            interpolate(longitudes[i], latitudes[i], normal);
+            normalX[i] = normal[0];
+            normalY[i] = normal[1];
+            normalZ[i] = normal[2];
+        }
+    }
+
+    /**
+     * Interpole bilinéairement les altitudes précalculées.
+     * 
+     * @throws UnsupportedOperationException
+     *             si le modèle d'origine ne connaît pas l'altitude du
+     *             terrain
+     */
+    @Override
+    public void elevationsAt(double[] longitudes, double[] latitudes,
+            double[] elevations) {
+        if (this.elevations == null)
+            throw new UnsupportedOperationException(
+                    "elevations not available");
+        int count = longitudes.length;
+        if (latitudes.length != count || elevations.length != count)
+            throw new IllegalArgumentException("arrays of different lengths");
+        for (int i = 0; i < count; i++) {
+            double u = clamp((longitudes[i] - this.longitude) / spacing - 0.5,
+                    columns - 1);
+            double v = clamp((latitudes[i] - this.latitude) / spacing - 0.5,
+                    rows - 1);
+            int column = Math.min((int) u, columns - 2);
+            int row = Math.min((int) v, rows - 2);
+            int south = row * columns + column, north = south + columns;
+            elevations[i] = bilinear(this.elevations[south],
+                    this.elevations[south + 1], this.elevations[north],
+                    this.elevations[north + 1], u - column, v - row);
+        }
+    }
+
+    /**
+     * Ne fait rien : le modèle d'origine reste à fermer par son propriétaire.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Interpole la normale au point donné et stocke ses coordonnées dans le
+     * tableau donné.
+     */
+    private void interpolate(double longitude, double latitude,
+            double[] normal) {
+        // Position du point par rapport aux centres des cellules
+        double u = clamp((longitude - this.longitude) / spacing - 0.5,
+                columns - 1);
+        double v = clamp((latitude - this.latitude) / spacing - 0.5, rows - 1);
+        int column = Math.min((int) u, columns - 2);
+        int row = Math.min((int) v, rows - 2);
+        double fx = u - column, fy = v - row;
+
+        int south = row * columns + column, north = south + columns;
+        double x = bilinear(normalX[south], normalX[south + 1],
+                normalX[north], normalX[north + 1], fx, fy) / SCALE;
+        double y = bilinear(normalY[south], normalY[south + 1],
+                normalY[north], normalY[north + 1], fx, fy) / SCALE;
+        normal[0] = x;
+        normal[1] = y;
+        normal[2] = Math.sqrt(Math.max(0, 1 - x * x - y * y));
+    }
+
+    private static double bilinear(short southWest, short southEast,
+            short northWest, short northEast, double fx, double fy) {
+        double south = southWest + fx * (southEast - southWest);
+        double north = northWest + fx * (northEast - northWest);
+        return south + fy * (north - south);
+    }
+
+    private static double clamp(double value, double max) {
+        return value < 0 ? 0 : value > max ? max : value;
+    }
+
+    private static short quantize(double component) {
+        return (short) Math.round(component * SCALE);
+    }
+}
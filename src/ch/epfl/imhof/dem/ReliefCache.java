@@ -0,0 +1,389 @@
+package ch.epfl.imhof.dem;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import javax.imageio.ImageIO;
+
+import ch.epfl.imhof.MapSnapshot;
+import ch.epfl.imhof.Vector3;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.projection.Projection;
+
+/**
+ * Cache persistant des reliefs ombrés. Chaque relief est stocké dans une
+ * image PNG accompagnée d'un fichier de propriétés décrivant sa grille de
+ * pixels. Un relief demandé peut être extrait de tout relief du cache ayant
+ * la même clef, la même taille de pixel et dont la grille contient, à un
+ * nombre entier de pixels près, la zone demandée.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+public final class ReliefCache {
+
+    private static final String IMAGE_EXTENSION = ".png";
+    private static final String GRID_EXTENSION = ".properties";
+    // Ecart toléré entre grilles, en pixels
+    private static final double GRID_TOLERANCE = 1e-3;
+
+    private final Path directory;
+
+    /**
+     * Construit un cache stockant ses reliefs dans le répertoire donné, créé
+     * au besoin lors de la première écriture.
+     *
+     * @param directory
+     *            : Répertoire du cache.
+     */
+    public ReliefCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return Le répertoire par défaut du cache : le sous-répertoire relief du
+     *         répertoire des instantanés de cartes (voir
+     *         {@link MapSnapshot#CACHE_DIRECTORY_PROPERTY}).
+     */
+    public static Path defaultDirectory() {
+        String directory = System
+                .getProperty(MapSnapshot.CACHE_DIRECTORY_PROPERTY);
+        Path root = directory != null ? Paths.get(directory) : Paths.get(
+                System.getProperty("java.io.tmpdir"), "imhof");
+        return root.resolve("relief");
+    }
+
+    /**
+     * Calcule la clef identifiant les reliefs d'un modèle de terrain éclairé
+     * par une seule source lumineuse, sans teinte hypsométrique.
+     *
+     * @param demFile
+     *            : Fichier HGT, ou répertoire de fichiers HGT.
+     * @param projection
+     *            : Projection utilisée.
+     * @param light
+     *            : Direction de la lumière.
+     * @param radius
+     *            : Rayon de floutage, en pixels.
+     * @return La clef des reliefs.
+     */
+    public static String key(File demFile, Projection projection,
+            Vector3 light, double radius) {
+        return key(demFile, projection, Collections.singletonList(light),
+                Collections.singletonList(1d), null, radius);
+    }
+
+    /**
+     * Calcule la clef identifiant les reliefs d'un modèle de terrain : la
+     * version du calcul de l'ombrage, le fichier HGT ou le répertoire de
+     * fichiers HGT (chemin, taille et date de modification de chaque
+     * fichier), la projection, la direction et le poids relatif de chaque
+     * source lumineuse, la teinte hypsométrique et le rayon de floutage.
+     *
+     * @param demFile
+     *            : Fichier HGT, ou répertoire de fichiers HGT.
+     * @param projection
+     *            : Projection utilisée.
+     * @param lights
+     *            : Directions des sources lumineuses.
+     * @param weights
+     *            : Poids des sources lumineuses, dans le même ordre.
+     * @param tint
+     *            : Teinte hypsométrique, ou null s'il n'y en a pas.
+     * @param radius
+     *            : Rayon de floutage, en pixels.
+     * @return La clef des reliefs.
+     * @throws IllegalArgumentException
+     *             : si les nombres de sources et de poids diffèrent.
+     */
+    public static String key(File demFile, Projection projection,
+            List<Vector3> lights, List<Double> weights, HypsometricTint tint,
+            double radius) {
+        if (lights.size() != weights.size())
+            throw new IllegalArgumentException("one weight per light needed");
+        List<String> parts = new ArrayList<>();
+        parts.add("v" + ReliefShader.VERSION);
+        File[] files = demFile.isDirectory() ? demFile.listFiles()
+                : new File[] { demFile };
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files)
+                parts.add(file.getAbsolutePath() + ":" + file.length() + ":"
+                        + file.lastModified());
+        }
+        parts.add(projection.getClass().getName());
+        // Seuls comptent la direction des sources et leur poids relatif,
+        // comme pour le dessinateur de relief
+        double totalWeight = 0;
+        for (double weight : weights)
+            totalWeight += weight;
+        for (int i = 0; i < lights.size(); i++) {
+            Vector3 direction = lights.get(i).normalized();
+            parts.add(direction.x() + "," + direction.y() + ","
+                    + direction.z() + "*" + weights.get(i) / totalWeight);
+        }
+        parts.add(tint == null ? "no tint" : tint.parameters());
+        parts.add(Double.toString(radius));
+        return String.join("|", parts);
+    }
+
+    /**
+     * Lit le relief de la zone donnée, en l'extrayant au besoin d'un relief
+     * plus grand.
+     *
+     * @param key
+     *            : Clef des reliefs.
+     * @param bl
+     *            : Point bas gauche en coordonnées du plan.
+     * @param tr
+     *            : Point haut droit en coordonnées du plan.
+     * @param width
+     *            : Largeur en pixels du relief.
+     * @param height
+     *            : Hauteur en pixels du relief.
+     * @return Le relief, ou null si le cache ne contient aucun relief dont il
+     *         puisse être extrait. Un relief illisible ou invalide est
+     *         signalé, supprimé du cache et traité comme absent.
+     * @throws IOException
+     *             : en cas d'erreur de lecture du répertoire du cache.
+     */
+    public BufferedImage read(String key, Point bl, Point tr, int width,
+            int height) throws IOException {
+        if (!Files.isDirectory(directory))
+            return null;
+        Grid wanted = new Grid(key, bl, tr, width, height);
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(
+                directory, digest(key) + "-*" + GRID_EXTENSION)) {
+            for (Path entry : entries) {
+                try {
+                    Grid grid;
+                    try (InputStream input = Files.newInputStream(entry)) {
+                        Properties properties = new Properties();
+                        properties.load(input);
+                        grid = new Grid(properties);
+                    }
+                    int[] offset = grid.offsetOf(wanted);
+                    if (offset != null)
+                        return crop(image(entry), offset[0], offset[1],
+                                width, height);
+                } catch (IOException | IllegalArgumentException e) {
+                    // Comme pour l'écriture, une erreur sur un relief du
+                    // cache ne fait que le rendre indisponible
+                    System.err.println("Discarding relief cache entry "
+                            + entry + ": " + e);
+                    discard(entry);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Ecrit le relief de la zone donnée. L'image puis sa grille sont d'abord
+     * écrites à côté de leur destination puis renommées, de sorte qu'un
+     * relief incomplet n'est jamais lu.
+     *
+     * @param key
+     *            : Clef des reliefs.
+     * @param bl
+     *            : Point bas gauche en coordonnées du plan.
+     * @param tr
+     *            : Point haut droit en coordonnées du plan.
+     * @param relief
+     *            : Relief à écrire.
+     * @throws IOException
+     *             : en cas d'erreur d'écriture.
+     */
+    public void write(String key, Point bl, Point tr, BufferedImage relief)
+            throws IOException {
+        Grid grid = new Grid(key, bl, tr, relief.getWidth(),
+                relief.getHeight());
+        String name = digest(key) + "-"
+                + digest(bl.x() + "|" + tr.y() + "|" + relief.getWidth()
+                        + "|" + relief.getHeight() + "|" + tr.x() + "|"
+                        + bl.y());
+        Files.createDirectories(directory);
+
+        // Le relief est opaque : seules les composantes RGB sont stockées
+        BufferedImage rgb = crop(relief, 0, 0, relief.getWidth(),
+                relief.getHeight());
+        Path image = directory.resolve(name + IMAGE_EXTENSION);
+        Path temporary = Files.createTempFile(directory, "relief", ".tmp");
+        try {
+            if (!ImageIO.write(rgb, "png", temporary.toFile()))
+                throw new IOException("no PNG writer available");
+            Files.move(temporary, image, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+            try (OutputStream output = Files.newOutputStream(temporary)) {
+                grid.toProperties().store(output, null);
+            }
+            Files.move(temporary, directory.resolve(name + GRID_EXTENSION),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @return L'image associée au fichier de grille donné.
+     */
+    private static BufferedImage image(Path gridFile) throws IOException {
+        Path file = imageFile(gridFile);
+        BufferedImage image = ImageIO.read(file.toFile());
+        if (image == null)
+            throw new IOException("invalid relief image: " + file);
+        return image;
+    }
+
+    /**
+     * @return Le fichier de l'image associée au fichier de grille donné.
+     */
+    private static Path imageFile(Path gridFile) {
+        String name = gridFile.getFileName().toString();
+        return gridFile.resolveSibling(name.substring(0, name.length()
+                - GRID_EXTENSION.length())
+                + IMAGE_EXTENSION);
+    }
+
+    /**
+     * Supprime du cache le relief dont la grille est stockée dans le fichier
+     * donné ; un échec est seulement signalé.
+     */
+    private static void discard(Path gridFile) {
+        try {
+            Files.deleteIfExists(gridFile);
+            Files.deleteIfExists(imageFile(gridFile));
+        } catch (IOException e) {
+            System.err.println("Unable to delete relief cache entry "
+                    + gridFile + ": " + e);
+        }
+    }
+
+    /**
+     * @return Une copie RGB de la portion donnée de l'image.
+     */
+    private static BufferedImage crop(BufferedImage image, int x, int y,
+            int width, int height) throws IOException {
+        if (x + width > image.getWidth() || y + height > image.getHeight())
+            throw new IOException("relief image smaller than its grid");
+        BufferedImage crop = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = crop.createGraphics();
+        graphics.drawImage(image, -x, -y, null);
+        graphics.dispose();
+        return crop;
+    }
+
+    private static String digest(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(
+                    key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : hash)
+                name.append(String.format("%02x", b));
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 est disponible sur toute plateforme Java
+            throw new Error(e);
+        }
+    }
+
+    /**
+     * Grille de pixels d'un relief : position de son coin haut gauche en
+     * coordonnées du plan, taille de ses pixels et dimensions.
+     */
+    private static final class Grid {
+        private final String key;
+        private final double left, top, pixelWidth, pixelHeight;
+        private final int width, height;
+
+        Grid(String key, Point bl, Point tr, int width, int height) {
+            this.key = key;
+            this.left = bl.x();
+            this.top = tr.y();
+            this.pixelWidth = (tr.x() - bl.x()) / width;
+            this.pixelHeight = (tr.y() - bl.y()) / height;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * @throws IllegalArgumentException
+         *             si une propriété manque ou est invalide
+         */
+        Grid(Properties properties) {
+            this.key = property(properties, "key");
+            this.left = Double.parseDouble(property(properties, "left"));
+            this.top = Double.parseDouble(property(properties, "top"));
+            this.pixelWidth = Double.parseDouble(property(properties,
+                    "pixelWidth"));
+            this.pixelHeight = Double.parseDouble(property(properties,
+                    "pixelHeight"));
+            this.width = Integer.parseInt(property(properties, "width"));
+            this.height = Integer.parseInt(property(properties, "height"));
+            if (!(pixelWidth > 0 && pixelHeight > 0 && width > 0 && height > 0))
+                throw new IllegalArgumentException("invalid relief grid");
+        }
+
+        private static String property(Properties properties, String name) {
+            String value = properties.getProperty(name);
+            if (value == null)
+                throw new IllegalArgumentException("missing " + name);
+            return value;
+        }
+
+        Properties toProperties() {
+            Properties properties = new Properties();
+            properties.setProperty("key", key);
+            properties.setProperty("left", Double.toString(left));
+            properties.setProperty("top", Double.toString(top));
+            properties.setProperty("pixelWidth", Double.toString(pixelWidth));
+            properties.setProperty("pixelHeight", Double.toString(pixelHeight));
+            properties.setProperty("width", Integer.toString(width));
+            properties.setProperty("height", Integer.toString(height));
+            return properties;
+        }
+
+        /**
+         * @return La position, en pixels de cette grille, du coin haut
+         *         gauche de la grille donnée, ou null si celle-ci n'est pas
+         *         une portion de cette grille.
+         */
+        int[] offsetOf(Grid that) {
+            if (!key.equals(that.key)
+                    || Math.abs(pixelWidth - that.pixelWidth) * that.width > GRID_TOLERANCE
+                            * pixelWidth
+                    || Math.abs(pixelHeight - that.pixelHeight) * that.height > GRID_TOLERANCE
+                            * pixelHeight)
+                return null;
+            double x = (that.left - left) / pixelWidth;
+            double y = (top - that.top) / pixelHeight;
+            long column = Math.round(x), row = Math.round(y);
+            if (Math.abs(x - column) > GRID_TOLERANCE
+                    || Math.abs(y - row) > GRID_TOLERANCE || column < 0
+                    || row < 0 || column + that.width > width
+                    || row + that.height > height)
+                return null;
+            return new int[] { (int) column, (int) row };
+        }
+    }
+}
@@ -1,28 +1,56 @@
 package ch.epfl.imhof.dem;
 
 import java.awt.image.BufferedImage;
-import java.awt.image.ConvolveOp;
-import java.awt.image.Kernel;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 
-import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.Parallel;
 import ch.epfl.imhof.Vector3;
 import ch.epfl.imhof.geometry.Point;
-import ch.epfl.imhof.painting.Color;
+import ch.epfl.imhof.projection.InverseProjectionGrid;
 import ch.epfl.imhof.projection.Projection;
 
 /**
  * Classe dessinant un relief ombré et coloré.
  *
+ * Le relief peut être éclairé par plusieurs sources lumineuses pondérées
+ * (ombrage multidirectionnel), et coloré selon l'altitude au moyen d'une
+ * {@link HypsometricTint teinte hypsométrique}. Dans tous les cas, la normale
+ * au terrain n'est lue qu'une fois par pixel, quel que soit le nombre de
+ * sources.
+ *
  * @author Ben Lalah Ali
  * @author Alami Idrissi Ali
  */
 public final class ReliefShader {
+    /**
+     * Version du calcul de l'ombrage, à incrémenter dès qu'il produit des
+     * pixels différents pour les mêmes paramètres (voir
+     * {@link ReliefCache#key(java.io.File, Projection, List, List, HypsometricTint, double)}
+     * ).
+     */
+    static final int VERSION = 3;
+    // Erreur maximale de la projection inverse approchée, en pixels
+    private static final double MAX_INVERSE_ERROR = 0.1;
+
     private final Projection projection;
     private final DigitalElevationModel model;
-    private final Vector3 light;
+    // Composantes des vecteurs unitaires pointant vers les lumières, et
+    // poids de chacune, de somme 1
+    private final double[] lightX, lightY, lightZ, weights;
+    // Teinte hypsométrique, ou null pour la teinte bleutée par défaut
+    private final HypsometricTint tint;
+    private final ExecutorService executor;
 
     /**
+     * Construit un dessinateur de relief qui calcule l'ombrage par bandes
+     * parallèles sur le {@link ForkJoinPool#commonPool() groupe commun}.
      * 
      * @param projection
      *            Projection utilisée.
@@ -33,9 +61,49 @@ public final class ReliefShader {
      */
     public ReliefShader(Projection projection, DigitalElevationModel model,
             Vector3 light) {
+        this(projection, model, light, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 
+     * @param projection
+     *            Projection utilisée.
+     * @param model
+     *            Modèle d'élévation du terrain, utilisable depuis plusieurs
+     *            fils à la fois.
+     * @param light
+     *            Vecteur pointant dans la direction de la source lumineuse.
+     * @param executor
+     *            Exécuteur sur lequel calculer les bandes de l'ombrage.
+     */
+    public ReliefShader(Projection projection, DigitalElevationModel model,
+            Vector3 light, ExecutorService executor) {
+        this(projection, model, Collections.singletonList(light), Collections
+                .singletonList(1d), null, executor);
+    }
+
+    private ReliefShader(Projection projection, DigitalElevationModel model,
+            List<Vector3> lights, List<Double> weights, HypsometricTint tint,
+            ExecutorService executor) {
         this.projection = projection;
         this.model = model;
-        this.light = light;
+        int count = lights.size();
+        this.lightX = new double[count];
+        this.lightY = new double[count];
+        this.lightZ = new double[count];
+        this.weights = new double[count];
+        double totalWeight = 0;
+        for (double weight : weights)
+            totalWeight += weight;
+        for (int i = 0; i < count; i++) {
+            Vector3 normalizedLight = lights.get(i).normalized();
+            this.lightX[i] = normalizedLight.x();
+            this.lightY[i] = normalizedLight.y();
+            this.lightZ[i] = normalizedLight.z();
+            this.weights[i] = weights.get(i) / totalWeight;
+        }
+        this.tint = tint;
+        this.executor = executor;
     }
 
     /**
@@ -54,92 +122,243 @@ public final class ReliefShader {
      */
     public BufferedImage shadedRelief(Point bl, Point tr, int width,
             int height, double radius) {
-        // Traite les deux cas ou le rayon est nul ou non nul
-        if (radius == 0) {
-            // Fonction de changement de coordonnées
-            Function<Point, Point> rebasing = Point.alignedCoordinateChange(
-                    new Point(0, height), bl, new Point(width, 0), tr);
-            return ombrage(width, height, rebasing);
-        } else {
-            float[] data = gaussianBlur(radius);
-            int limit = (int) Math.ceil(data.length / 2);
-            // Fonction de changement de coordonnées
-            Function<Point, Point> rebasing = Point.alignedCoordinateChange(
-                    new Point(limit, height + limit), bl, new Point(width
-                            + limit, limit), tr);
-            BufferedImage image = ombrage(width + 2 * limit,
-                    height + 2 * limit, rebasing);
-            return blur(image, data).getSubimage(limit, limit, width,
-                    height);
+        // Bordure nécessaire au flou, ajoutée de chaque côté
+        int limit = GaussianBlur.margin(radius);
+        int planeWidth = width + 2 * limit, planeHeight = height + 2 * limit;
+        // Fonction de changement de coordonnées
+        Function<Point, Point> rebasing = Point.alignedCoordinateChange(
+                new Point(limit, height + limit), bl, new Point(width + limit,
+                        limit), tr);
+        // Les altitudes ne sont pas floutées : seul l'ombrage l'est
+        float[] elevations = tint == null ? null : new float[planeWidth
+                * planeHeight];
+        float[] cosines = cosines(planeWidth, planeHeight, rebasing,
+                elevations);
+        if (radius != 0)
+            cosines = new GaussianBlur(radius, executor).apply(cosines,
+                    planeWidth, planeHeight);
+
+        BufferedImage relief = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) relief.getRaster().getDataBuffer())
+                .getData();
+        double[] rgb = new double[3];
+        for (int y = 0; y < height; y++) {
+            int planeRow = (y + limit) * planeWidth + limit;
+            for (int x = 0; x < width; x++) {
+                if (tint == null) {
+                    pixels[y * width + x] = color(cosines[planeRow + x]);
+                } else {
+                    tint.componentsAt(elevations[planeRow + x], rgb);
+                    pixels[y * width + x] = color(cosines[planeRow + x], rgb[0],
+                            rgb[1], rgb[2]);
+                }
+            }
         }
+        return relief;
     }
 
     /**
      * 
      * @param width
-     *            Largeur de l'image produite
+     *            Largeur du plan produit
      * @param height
-     *            Longueur de l'image produite
+     *            Longueur du plan produit
      * @param rebasing
      *            Fonction de changement de coordonnées
-     * @return Un relief ombré brut
+     * @param elevations
+     *            Plan recevant l'altitude de chaque pixel, ou null si elle
+     *            n'est pas nécessaire
+     * @return L'éclairement de chaque pixel, ligne par ligne, entre -1 et 1
+     *         (voir {@link #cosine(double, double, double)})
      */
-    private BufferedImage ombrage(int width, int height,
-            Function<Point, Point> rebasing) {
-        BufferedImage ombrage = new BufferedImage(width, height,
-                BufferedImage.TYPE_INT_ARGB);
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                PointGeo point = projection.inverse(rebasing.apply(new Point(x,
-                        y)));
-                Vector3 vector = model.normalAt(point).normalized();
-                double cos = vector.scalarProduct(light.normalized());
-                double r = 0.5 * (cos + 1), b = 0.5 * (0.7 * cos + 1);
-                ombrage.setRGB(x, y, Color.toJavaColor(Color.rgb(r, r, b))
-                        .getRGB());
+    private float[] cosines(int width, int height,
+            Function<Point, Point> rebasing, float[] elevations) {
+        float[] cosines = new float[width * height];
+
+        // Le changement de coordonnées est aligné sur les axes : les
+        // coordonnées du plan ne dépendent que de la colonne, resp. de la
+        // ligne, et sont calculées une seule fois
+        double[] planeX = new double[width], planeY = new double[height];
+        for (int x = 0; x < width; x++)
+            planeX[x] = rebasing.apply(new Point(x, 0)).x();
+        for (int y = 0; y < height; y++)
+            planeY[y] = rebasing.apply(new Point(0, y)).y();
+        Projection inverse = inverseProjection(planeX, planeY);
+
+        Parallel.inStripes(executor, height, (firstRow, lastRow) -> {
+            // Tampons d'une ligne, réutilisés d'une ligne à l'autre
+            double[] longitudes = new double[width];
+            double[] latitudes = new double[width];
+            double[] normalX = new double[width];
+            double[] normalY = new double[width];
+            double[] normalZ = new double[width];
+            double[] rowElevations = elevations == null ? null
+                    : new double[width];
+            double[] rowY = new double[width];
+            for (int y = firstRow; y < lastRow; y++) {
+                Arrays.fill(rowY, planeY[y]);
+                inverse.inverse(planeX, rowY, longitudes, latitudes);
+                model.normalsAt(longitudes, latitudes, normalX, normalY,
+                        normalZ);
+                for (int x = 0; x < width; x++)
+                    cosines[y * width + x] = (float) cosine(normalX[x],
+                            normalY[x], normalZ[x]);
+                if (elevations != null) {
+                    model.elevationsAt(longitudes, latitudes,
+                            rowElevations);
+                    for (int x = 0; x < width; x++)
+                        elevations[y * width + x] = (float) rowElevations[x];
+                }
             }
-        }
-        return ombrage;
+        });
+        return cosines;
     }
 
     /**
-     * 
-     * @param radius
-     *            Rayon de floutage
-     * @return Le noyau du flou gaussien (unidimensionnel) sous forme d'un
-     *         tableau
+     * @param planeX
+     *            Abscisses des colonnes de pixels, croissantes
+     * @param planeY
+     *            Ordonnées des lignes de pixels, décroissantes
+     * @return Une projection dont l'inverse est approchée à moins de
+     *         {@value #MAX_INVERSE_ERROR} pixel près sur la zone couverte par
+     *         les pixels, ou la projection elle-même si cette zone est vide
+     *         ou inversée.
      */
-    private float[] gaussianBlur(double radius) {
-        double sigma = radius / 3;
-        int matrixSize = (int) (2 * Math.ceil(radius) + 1);
-        double normal = 0;
-        float[] kernel = new float[matrixSize];
-        for (int i = 0; i < matrixSize; i++) {
-            int x = i - (int) Math.ceil(matrixSize / 2);
-            kernel[i] = (float) Math.exp(-(x * x) / (2 * sigma * sigma));
-            normal += kernel[i];
-        }
-        for (int i = 0; i < matrixSize; i++) {
-            kernel[i] *= (1 / normal);
-        }
-        return kernel;
+    private Projection inverseProjection(double[] planeX, double[] planeY) {
+        int width = planeX.length, height = planeY.length;
+        if (width < 2 || height < 2)
+            return projection;
+        double pixelSize = Math.min(planeX[1] - planeX[0], planeY[0]
+                - planeY[1]);
+        if (!(pixelSize > 0))
+            return projection;
+        return new InverseProjectionGrid(projection, new Point(planeX[0],
+                planeY[height - 1]), new Point(planeX[width - 1], planeY[0]),
+                MAX_INVERSE_ERROR * pixelSize);
     }
 
     /**
+     * Avec une seule lumière, l'éclairement est le cosinus de l'angle entre
+     * la normale donnée et la direction de la lumière. Avec plusieurs, c'est
+     * la moyenne pondérée des éclairements de chacune, une face à l'ombre
+     * d'une lumière ne recevant rien d'elle (sans quoi les lumières
+     * s'additionneraient en une seule), ramenée entre -1 et 1.
      * 
-     * @param ombre
-     *            Relief ombré brut
-     * @param data
-     *            Noyau du flou gaussien (unidimensionnel)
-     * @return Image floutée
+     * @return L'éclairement du terrain de normale donnée, entre -1 et 1.
+     */
+    private double cosine(double normalX, double normalY, double normalZ) {
+        double norm = Math.sqrt(normalX * normalX + normalY * normalY
+                + normalZ * normalZ);
+        if (weights.length == 1)
+            return (normalX * lightX[0] + normalY * lightY[0] + normalZ
+                    * lightZ[0])
+                    / norm;
+
+        double illumination = 0;
+        for (int i = 0; i < weights.length; i++)
+            illumination += weights[i]
+                    * Math.max(0, normalX * lightX[i] + normalY * lightY[i]
+                            + normalZ * lightZ[i]);
+        return 2 * illumination / norm - 1;
+    }
+
+    /**
+     * @return La couleur ARGB du relief ombré pour le cosinus donné.
+     */
+    private static int color(double cos) {
+        return color(cos, 1, 1, 1);
+    }
+
+    /**
+     * @return La couleur ARGB du relief ombré pour le cosinus donné, teinté
+     *         par la couleur de composantes données.
+     */
+    private static int color(double cos, double tintRed, double tintGreen,
+            double tintBlue) {
+        double r = 0.5 * (cos + 1), b = 0.5 * (0.7 * cos + 1);
+        // Même arrondi que java.awt.Color
+        int red = (int) ((float) (tintRed * r) * 255 + 0.5);
+        int green = (int) ((float) (tintGreen * r) * 255 + 0.5);
+        int blue = (int) ((float) (tintBlue * b) * 255 + 0.5);
+        return 0xFF000000 | red << 16 | green << 8 | blue;
+    }
+
+    /**
+     * Bâtisseur de dessinateur de relief, permettant de combiner plusieurs
+     * sources lumineuses et une teinte hypsométrique.
+     *
+     * @author Ben Lalah Ali
+     * @author Alami Idrissi Ali
      */
-    private BufferedImage blur(BufferedImage ombre, float[] data) {
-        Kernel kernelV = new Kernel(1, data.length, data);
-        Kernel kernelH = new Kernel(data.length, 1, data);
-        ConvolveOp convolveH = new ConvolveOp(kernelV, ConvolveOp.EDGE_NO_OP,
-                null);
-        ConvolveOp convolveV = new ConvolveOp(kernelH, ConvolveOp.EDGE_NO_OP,
-                null);
-        return convolveV.filter(convolveH.filter(ombre, null), null);
+    public static final class Builder {
+        private final Projection projection;
+        private final DigitalElevationModel model;
+        private final List<Vector3> lights = new ArrayList<>();
+        private final List<Double> weights = new ArrayList<>();
+        private HypsometricTint tint = null;
+        private ExecutorService executor = ForkJoinPool.commonPool();
+
+        /**
+         * @param projection
+         *            Projection utilisée.
+         * @param model
+         *            Modèle d'élévation du terrain, utilisable depuis
+         *            plusieurs fils à la fois.
+         */
+        public Builder(Projection projection, DigitalElevationModel model) {
+            this.projection = projection;
+            this.model = model;
+        }
+
+        /**
+         * Ajoute une source lumineuse.
+         *
+         * @param light
+         *            Vecteur pointant dans la direction de la source.
+         * @param weight
+         *            Poids de la source, relatif à celui des autres.
+         * @throws IllegalArgumentException
+         *             si le poids n'est pas strictement positif et fini
+         */
+        public void addLight(Vector3 light, double weight) {
+            if (!(weight > 0) || Double.isInfinite(weight))
+                throw new IllegalArgumentException("invalid weight: " + weight);
+            lights.add(light);
+            weights.add(weight);
+        }
+
+        /**
+         * Colore le relief selon l'altitude, ce qui demande un modèle
+         * capable de la fournir (voir
+         * {@link DigitalElevationModel#elevationsAt(double[], double[], double[])}
+         * ).
+         *
+         * @param tint
+         *            Teinte hypsométrique.
+         */
+        public void setTint(HypsometricTint tint) {
+            this.tint = tint;
+        }
+
+        /**
+         * @param executor
+         *            Exécuteur sur lequel calculer les bandes de l'ombrage.
+         */
+        public void setExecutor(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * @return Le dessinateur de relief.
+         * @throws IllegalStateException
+         *             si aucune source lumineuse n'a été ajoutée
+         */
+        public ReliefShader build() {
+            if (lights.isEmpty())
+                throw new IllegalStateException("no light");
+            return new ReliefShader(projection, model, new ArrayList<>(lights),
+                    new ArrayList<>(weights), tint, executor);
+        }
     }
 }
@@ -0,0 +1,133 @@
+package ch.epfl.imhof.geometry;
+
+import java.util.List;
+
+/**
+ * Rectangle englobant, aux côtés parallèles aux axes, d'un ensemble de points.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+public final class BoundingBox {
+
+    private final double minX, minY, maxX, maxY;
+
+    /**
+     * Construit le rectangle de coins donnés.
+     *
+     * @param minX
+     *            : Abscisse minimale.
+     * @param minY
+     *            : Ordonnée minimale.
+     * @param maxX
+     *            : Abscisse maximale.
+     * @param maxY
+     *            : Ordonnée maximale.
+     * @throws IllegalArgumentException
+     *             : si un minimum est supérieur au maximum correspondant.
+     */
+    public BoundingBox(double minX, double minY, double maxX, double maxY) {
+        if (!(minX <= maxX && minY <= maxY))
+            throw new IllegalArgumentException("invalid bounding box");
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     *
+     * @param points
+     *            : Liste non vide de points.
+     * @return Le plus petit rectangle contenant tous les points donnés.
+     * @throws IllegalArgumentException
+     *             : si la liste est vide.
+     */
+    public static BoundingBox of(List<Point> points) {
+        if (points.isEmpty())
+            throw new IllegalArgumentException("empty point list");
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Point point : points) {
+            minX = Math.min(minX, point.x());
+            minY = Math.min(minY, point.y());
+            maxX = Math.max(maxX, point.x());
+            maxY = Math.max(maxY, point.y());
+        }
+        return new BoundingBox(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * @return L'abscisse minimale du rectangle.
+     */
+    public double minX() {
+        return minX;
+    }
+
+    /**
+     * @return L'ordonnée minimale du rectangle.
+     */
+    public double minY() {
+        return minY;
+    }
+
+    /**
+     * @return L'abscisse maximale du rectangle.
+     */
+    public double maxX() {
+        return maxX;
+    }
+
+    /**
+     * @return L'ordonnée maximale du rectangle.
+     */
+    public double maxY() {
+        return maxY;
+    }
+
+    /**
+     *
+     * @param point
+     *            : Point à tester.
+     * @return Vrai si le point est dans le rectangle, bords compris.
+     */
+    public boolean contains(Point point) {
+        return point.x() >= minX && point.x() <= maxX && point.y() >= minY
+                && point.y() <= maxY;
+    }
+
+    /**
+     *
+     * @param that
+     *            : Rectangle à tester.
+     * @return Vrai si le rectangle donné est entièrement contenu dans celui-ci,
+     *         bords compris.
+     */
+    public boolean contains(BoundingBox that) {
+        return that.minX >= minX && that.maxX <= maxX && that.minY >= minY
+                && that.maxY <= maxY;
+    }
+
+    /**
+     *
+     * @param that
+     *            : Rectangle à tester.
+     * @return Vrai si les deux rectangles ont au moins un point commun.
+     */
+    public boolean intersects(BoundingBox that) {
+        return that.minX <= maxX && that.maxX >= minX && that.minY <= maxY
+                && that.maxY >= minY;
+    }
+
+    /**
+     *
+     * @param that
+     *            : Autre rectangle.
+     * @return Le plus petit rectangle contenant les deux rectangles.
+     */
+    public BoundingBox union(BoundingBox that) {
+        return new BoundingBox(Math.min(minX, that.minX), Math.min(minY,
+                that.minY), Math.max(maxX, that.maxX), Math.max(maxY,
+                that.maxY));
+    }
+}
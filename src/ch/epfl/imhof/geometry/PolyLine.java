@@ -14,6 +14,9 @@ import java.util.List;
 public abstract class PolyLine{
 
     private final List<Point> points;
+    // Calculé à la première demande ; un calcul concurrent donne le même
+    // résultat, immuable
+    private BoundingBox boundingBox;
 
     /**
      * @throws IllegalArgumentException
@@ -50,6 +53,16 @@ public abstract class PolyLine{
         return fp;
     }
 
+    /**
+     * @return Le rectangle englobant les points sommets du PolyLine
+     */
+    public BoundingBox boundingBox() {
+        BoundingBox box = boundingBox;
+        if (box == null)
+            boundingBox = box = BoundingBox.of(points);
+        return box;
+    }
+
     /**
      * Batit un PolyLine modifiable
      * 
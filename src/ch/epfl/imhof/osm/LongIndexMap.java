@@ -0,0 +1,122 @@
+package ch.epfl.imhof.osm;
+
+import java.util.Arrays;
+
+/**
+ * Table associative à adressage ouvert (sondage linéaire) associant des
+ * identifiants de type long à des index entiers positifs, sans emballer les
+ * clefs dans des objets Long.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+final class LongIndexMap {
+
+    private static final int ABSENT = -1;
+    private static final double MAX_LOAD_FACTOR = 0.6;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    /**
+     * Construit une table vide.
+     */
+    public LongIndexMap() {
+        this(16);
+    }
+
+    /**
+     * Construit une table vide pouvant contenir le nombre d'éléments donné
+     * sans être agrandie.
+     *
+     * @param expectedSize
+     *            : Nombre d'éléments attendu.
+     */
+    public LongIndexMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16,
+                (int) (expectedSize / MAX_LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     *
+     * @param key
+     *            : Identifiant recherché.
+     * @return L'index associé à l'identifiant donné, ou -1 s'il n'y en a
+     *         aucun.
+     */
+    public int get(long key) {
+        int slot = slot(key);
+        while (values[slot] != ABSENT) {
+            if (keys[slot] == key)
+                return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return ABSENT;
+    }
+
+    /**
+     * Associe l'index donné à l'identifiant donné, en remplaçant l'éventuelle
+     * association précédente.
+     *
+     * @param key
+     *            : Identifiant.
+     * @param index
+     *            : Index positif ou nul à associer à l'identifiant.
+     * @throws IllegalArgumentException
+     *             : si l'index est négatif.
+     */
+    public void put(long key, int index) {
+        if (index < 0)
+            throw new IllegalArgumentException("negative index: " + index);
+        int slot = slot(key);
+        while (values[slot] != ABSENT) {
+            if (keys[slot] == key) {
+                values[slot] = index;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = index;
+        if (++size > MAX_LOAD_FACTOR * keys.length)
+            grow();
+    }
+
+    /**
+     *
+     * @return Le nombre d'identifiants présents dans la table.
+     */
+    public int size() {
+        return size;
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, ABSENT);
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != ABSENT) {
+                int slot = slot(oldKeys[i]);
+                while (values[slot] != ABSENT)
+                    slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -7,11 +7,14 @@ package ch.epfl.imhof.osm;
  * @author Alami Idrissi Ali
  */
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.PointGeo;
+
 public final class OSMMap {
 
     private final List<OSMWay> ways;
@@ -55,17 +58,38 @@ public final class OSMMap {
      */
     public static final class Builder {
 
-        private HashMap<Long, OSMNode> nodes;
-        private HashMap<Long, OSMWay> ways;
-        private HashMap<Long, OSMRelation> relations;
+        private static final Attributes NO_ATTRIBUTES = new Attributes(
+                Collections.<String, String> emptyMap());
+
+        // Les nœuds sont stockés dans des tableaux parallèles ; ceux ajoutés
+        // sans objet OSMNode ne sont construits qu'à la première demande, une
+        // seule fois par nœud, afin que les chemins partagent leurs nœuds
+        // communs. Les attributs d'un nœud construit ne sont plus gardés que
+        // par celui-ci.
+        private final LongIndexMap nodeIndices;
+        private double[] longitudes, latitudes;
+        private Attributes[] nodeAttributes;
+        private OSMNode[] nodes;
+        private int nodesCount;
+
+        private final LongIndexMap wayIndices;
+        private final List<OSMWay> ways;
+        private final LongIndexMap relationIndices;
+        private final List<OSMRelation> relations;
 
         /**
          * Construit un nouveau batisseur de OSMMAp
          */
         public Builder() {
-            nodes = new HashMap<>();
-            ways = new HashMap<>();
-            relations = new HashMap<>();
+            nodeIndices = new LongIndexMap();
+            longitudes = new double[16];
+            latitudes = new double[16];
+            nodeAttributes = new Attributes[16];
+            nodes = new OSMNode[16];
+            wayIndices = new LongIndexMap();
+            ways = new ArrayList<>();
+            relationIndices = new LongIndexMap();
+            relations = new ArrayList<>();
         }
 
         /**
@@ -75,7 +99,45 @@ public final class OSMMap {
          *            : Noeud a ajouter.
          */
         public void addNode(OSMNode newNode) {
-            nodes.put(new Long(newNode.id()), newNode);
+            int index = addNode(newNode.id(), newNode.position().longitude(),
+                    newNode.position().latitude(), newNode.attributes());
+            nodes[index] = newNode;
+        }
+
+        /**
+         * Ajoute au bâtisseur le nœud d'identifiant, de position et
+         * d'attributs donnés, sans construire d'objet OSMNode.
+         * 
+         * @param id
+         *            : Identifiant du noeud.
+         * @param longitude
+         *            : Longitude du noeud, en radians.
+         * @param latitude
+         *            : Latitude du noeud, en radians.
+         * @param attributes
+         *            : Attributs du noeud.
+         * @return L'index du noeud dans les tableaux du bâtisseur.
+         * @throws IllegalArgumentException
+         *             : si la position donnée est invalide.
+         */
+        int addNode(long id, double longitude, double latitude,
+                Attributes attributes) {
+            if (!(longitude >= -Math.PI && longitude <= Math.PI
+                    && latitude >= -Math.PI / 2 && latitude <= Math.PI / 2))
+                throw new IllegalArgumentException("invalid position: ("
+                        + longitude + "," + latitude + ")");
+            int index = nodeIndices.get(id);
+            if (index < 0) {
+                if (nodesCount == longitudes.length)
+                    growNodes();
+                index = nodesCount++;
+                nodeIndices.put(id, index);
+            }
+            longitudes[index] = longitude;
+            latitudes[index] = latitude;
+            nodeAttributes[index] = attributes.isEmpty() ? null : attributes;
+            nodes[index] = null;
+            return index;
         }
 
         /**
@@ -85,7 +147,47 @@ public final class OSMMap {
          *         null si ce nœud n'a pas été ajouté précédemment au bâtisseur.
          */
         public OSMNode nodeForId(long id) {
-            return nodes.get(id);
+            int index = nodeIndices.get(id);
+            if (index < 0)
+                return null;
+            OSMNode node = nodes[index];
+            if (node == null) {
+                Attributes attributes = nodeAttributes[index];
+                node = new OSMNode(id, new PointGeo(longitudes[index],
+                        latitudes[index]), attributes == null ? NO_ATTRIBUTES
+                        : attributes);
+                nodes[index] = node;
+                nodeAttributes[index] = null;
+            }
+            return node;
+        }
+
+        /**
+         * @param id
+         *            : Identifiant du noeud.
+         * @return L'index du nœud d'identifiant donné dans les tableaux du
+         *         bâtisseur, ou -1 s'il n'a pas été ajouté.
+         */
+        int nodeIndex(long id) {
+            return nodeIndices.get(id);
+        }
+
+        /**
+         * @param index
+         *            : Index retourné par {@link #nodeIndex(long)}.
+         * @return La longitude du nœud d'index donné, en radians.
+         */
+        double longitude(int index) {
+            return longitudes[index];
+        }
+
+        /**
+         * @param index
+         *            : Index retourné par {@link #nodeIndex(long)}.
+         * @return La latitude du nœud d'index donné, en radians.
+         */
+        double latitude(int index) {
+            return latitudes[index];
         }
 
         /**
@@ -95,7 +197,12 @@ public final class OSMMap {
          *            : Chemin à ajouter a la liste des chemins.
          */
         public void addWay(OSMWay newWay) {
-            ways.put(new Long(newWay.id()), newWay);
+            int index = wayIndices.get(newWay.id());
+            if (index < 0) {
+                wayIndices.put(newWay.id(), ways.size());
+                ways.add(newWay);
+            } else
+                ways.set(index, newWay);
         }
 
         /**
@@ -107,7 +214,8 @@ public final class OSMMap {
          *         bâtisseur.
          */
         public OSMWay wayForId(long id) {
-            return ways.get(id);
+            int index = wayIndices.get(id);
+            return (index < 0) ? null : ways.get(index);
         }
 
         /**
@@ -117,7 +225,12 @@ public final class OSMMap {
          *            : Relation a ajouter a la liste.
          */
         public void addRelation(OSMRelation newRelation) {
-            relations.put(new Long(newRelation.id()), newRelation);
+            int index = relationIndices.get(newRelation.id());
+            if (index < 0) {
+                relationIndices.put(newRelation.id(), relations.size());
+                relations.add(newRelation);
+            } else
+                relations.set(index, newRelation);
         }
 
         /**
@@ -129,7 +242,8 @@ public final class OSMMap {
          *         bâtisseur.
          */
         public OSMRelation relationForId(long id) {
-            return relations.get(id);
+            int index = relationIndices.get(id);
+            return (index < 0) ? null : relations.get(index);
         }
 
         /**
@@ -138,7 +252,15 @@ public final class OSMMap {
          *         jusqu'à présent.
          */
         public OSMMap build() {
-            return new OSMMap(ways.values(), relations.values());
+            return new OSMMap(ways, relations);
+        }
+
+        private void growNodes() {
+            int capacity = longitudes.length << 1;
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            nodeAttributes = Arrays.copyOf(nodeAttributes, capacity);
+            nodes = Arrays.copyOf(nodes, capacity);
         }
     }
 }
@@ -0,0 +1,450 @@
+package ch.epfl.imhof.osm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+
+/**
+ * Assemble une carte OSM à partir de la suite des éléments lus dans un
+ * fichier, quel que soit l'analyseur qui les produit. Peut ne conserver que
+ * les chemins et relations dont l'étendue rencontre une zone donnée ; ceux-ci
+ * sont alors conservés en entier, nœuds hors de la zone compris.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+final class OSMMapAssembler {
+    private final OSMMap.Builder mapBuilder;
+    private OSMWay.Builder wayBuilder;
+    private OSMRelation.Builder relationBuilder;
+    private Attributes.Builder nodeAttributes;
+    private long nodeId;
+    private double nodeLongitude, nodeLatitude;
+
+    // Zone de filtrage, en radians (non utilisée si isFiltered est faux)
+    private final boolean isFiltered;
+    private final double minLongitude, minLatitude, maxLongitude, maxLatitude;
+
+    // Nœuds du chemin en cours et membres de la relation en cours, résolus
+    // une fois l'entité terminée
+    private long[] references;
+    private int referencesCount;
+    private boolean isWayIncomplete;
+    private final List<MemberReference> members;
+
+    // Etendue de l'entité en cours, en radians
+    private double entityMinLongitude, entityMinLatitude, entityMaxLongitude,
+            entityMaxLatitude;
+
+    // Etendues des chemins et relations lus, et entités hors de la zone
+    // gardées sous forme compacte au cas où une relation conservée y ferait
+    // référence (uniquement si isFiltered est vrai)
+    private final Extents wayExtents, relationExtents;
+    private final LongIndexMap hiddenWayIndices, hiddenRelationIndices;
+    private final List<HiddenWay> hiddenWays;
+    private final List<HiddenRelation> hiddenRelations;
+
+    // Valeurs d'attributs déjà lues, afin qu'une valeur répétée ne soit
+    // gardée qu'une fois ; la table disparaît avec l'assembleur
+    private final HashMap<String, String> tagValues;
+
+    /**
+     * Construit un assembleur qui conserve toutes les entités lues.
+     */
+    public OSMMapAssembler() {
+        this(false, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Construit un assembleur qui ne conserve que les chemins et relations
+     * dont l'étendue rencontre la zone donnée, bornes comprises. Un chemin
+     * qui sort de la zone et y revient, ou un polygone qui l'englobe, est
+     * ainsi conservé en entier.
+     *
+     * @param minLongitude
+     *            : Longitude minimale, en radians.
+     * @param minLatitude
+     *            : Latitude minimale, en radians.
+     * @param maxLongitude
+     *            : Longitude maximale, en radians.
+     * @param maxLatitude
+     *            : Latitude maximale, en radians.
+     */
+    public OSMMapAssembler(double minLongitude, double minLatitude,
+            double maxLongitude, double maxLatitude) {
+        this(true, minLongitude, minLatitude, maxLongitude, maxLatitude);
+    }
+
+    private OSMMapAssembler(boolean isFiltered, double minLongitude,
+            double minLatitude, double maxLongitude, double maxLatitude) {
+        this.mapBuilder = new OSMMap.Builder();
+        this.isFiltered = isFiltered;
+        this.minLongitude = minLongitude;
+        this.minLatitude = minLatitude;
+        this.maxLongitude = maxLongitude;
+        this.maxLatitude = maxLatitude;
+        this.references = new long[16];
+        this.members = new ArrayList<>();
+        this.wayExtents = new Extents();
+        this.relationExtents = new Extents();
+        this.hiddenWayIndices = new LongIndexMap();
+        this.hiddenRelationIndices = new LongIndexMap();
+        this.hiddenWays = new ArrayList<>();
+        this.hiddenRelations = new ArrayList<>();
+        this.tagValues = new HashMap<>();
+    }
+
+    /**
+     * Débute un nœud.
+     *
+     * @param id
+     *            : Identifiant du nœud.
+     * @param longitude
+     *            : Longitude du nœud, en radians.
+     * @param latitude
+     *            : Latitude du nœud, en radians.
+     */
+    public void startNode(long id, double longitude, double latitude) {
+        nodeId = id;
+        nodeLongitude = longitude;
+        nodeLatitude = latitude;
+        // Tous les nœuds sont gardés, un chemin conservé pouvant sortir de la
+        // zone ; seuls ceux qui sont utilisés sont construits
+        nodeAttributes = new Attributes.Builder();
+        wayBuilder = null;
+        relationBuilder = null;
+    }
+
+    /**
+     * Termine le nœud en cours et l'ajoute à la carte.
+     */
+    public void endNode() {
+        if (nodeAttributes != null)
+            mapBuilder.addNode(nodeId, nodeLongitude, nodeLatitude,
+                    nodeAttributes.build());
+        nodeAttributes = null;
+    }
+
+    /**
+     * Débute un chemin.
+     *
+     * @param id
+     *            : Identifiant du chemin.
+     */
+    public void startWay(long id) {
+        wayBuilder = new OSMWay.Builder(id);
+        relationBuilder = null;
+        nodeAttributes = null;
+        referencesCount = 0;
+        isWayIncomplete = false;
+        clearExtent();
+    }
+
+    /**
+     * Ajoute au chemin en cours le nœud d'identifiant donné.
+     *
+     * @param reference
+     *            : Identifiant du nœud.
+     */
+    public void addNodeReference(long reference) {
+        if (wayBuilder == null)
+            return;
+        int index = mapBuilder.nodeIndex(reference);
+        if (index < 0) {
+            isWayIncomplete = true;
+            return;
+        }
+        if (referencesCount == references.length)
+            references = Arrays.copyOf(references, 2 * referencesCount);
+        references[referencesCount++] = reference;
+        if (isFiltered)
+            extend(mapBuilder.longitude(index), mapBuilder.latitude(index),
+                    mapBuilder.longitude(index), mapBuilder.latitude(index));
+    }
+
+    /**
+     * Termine le chemin en cours et l'ajoute à la carte s'il est complet et
+     * rencontre la zone.
+     */
+    public void endWay() {
+        if (wayBuilder == null)
+            return;
+        if (!isWayIncomplete && referencesCount >= 2) {
+            long id = wayBuilder.id();
+            if (isFiltered)
+                wayExtents.put(id, entityMinLongitude, entityMinLatitude,
+                        entityMaxLongitude, entityMaxLatitude);
+            if (!isFiltered || isExtentVisible()) {
+                for (int i = 0; i < referencesCount; i++)
+                    wayBuilder.addNode(mapBuilder.nodeForId(references[i]));
+                mapBuilder.addWay(wayBuilder.build());
+            } else {
+                put(hiddenWayIndices, hiddenWays, id, new HiddenWay(
+                        Arrays.copyOf(references, referencesCount),
+                        wayBuilder.getAttributes()));
+            }
+        }
+        wayBuilder = null;
+    }
+
+    /**
+     * Débute une relation.
+     *
+     * @param id
+     *            : Identifiant de la relation.
+     */
+    public void startRelation(long id) {
+        relationBuilder = new OSMRelation.Builder(id);
+        nodeAttributes = null;
+        wayBuilder = null;
+        members.clear();
+        clearExtent();
+    }
+
+    /**
+     * Ajoute un membre à la relation en cours.
+     *
+     * @param type
+     *            : Type du membre, ou null s'il est inconnu.
+     * @param reference
+     *            : Identifiant du membre.
+     * @param role
+     *            : Rôle du membre.
+     */
+    public void addMember(Type type, long reference, String role) {
+        if (relationBuilder == null)
+            return;
+        if (type == null || !isKnown(type, reference)) {
+            relationBuilder.setIncomplete();
+            return;
+        }
+        members.add(new MemberReference(type, reference, role));
+        if (isFiltered) {
+            switch (type) {
+            case NODE:
+                int index = mapBuilder.nodeIndex(reference);
+                extend(mapBuilder.longitude(index), mapBuilder.latitude(index),
+                        mapBuilder.longitude(index), mapBuilder.latitude(index));
+                break;
+            case WAY:
+                extend(wayExtents, reference);
+                break;
+            case RELATION:
+                extend(relationExtents, reference);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Termine la relation en cours et l'ajoute à la carte si elle est
+     * complète et rencontre la zone.
+     */
+    public void endRelation() {
+        if (relationBuilder == null)
+            return;
+        if (!relationBuilder.isIncomplete()) {
+            long id = relationBuilder.id();
+            if (isFiltered)
+                relationExtents.put(id, entityMinLongitude, entityMinLatitude,
+                        entityMaxLongitude, entityMaxLatitude);
+            if (!isFiltered || isExtentVisible()) {
+                for (MemberReference member : members)
+                    relationBuilder.addMember(member.type, member.role,
+                            entity(member.type, member.reference));
+                mapBuilder.addRelation(relationBuilder.build());
+            } else {
+                put(hiddenRelationIndices, hiddenRelations, id,
+                        new HiddenRelation(members
+                                .toArray(new MemberReference[members.size()]),
+                                relationBuilder.getAttributes()));
+            }
+        }
+        relationBuilder = null;
+    }
+
+    /**
+     * Ajoute un attribut à l'entité en cours.
+     *
+     * @param key
+     *            : Clef de l'attribut.
+     * @param value
+     *            : Valeur de l'attribut.
+     */
+    public void addTag(String key, String value) {
+        String known = tagValues.putIfAbsent(value, value);
+        if (known != null)
+            value = known;
+        if (wayBuilder != null)
+            wayBuilder.setAttribute(key, value);
+        else if (relationBuilder != null)
+            relationBuilder.setAttribute(key, value);
+        else if (nodeAttributes != null)
+            nodeAttributes.put(key, value);
+    }
+
+    /**
+     *
+     * @return La carte OSM composée des entités conservées jusqu'à présent.
+     */
+    public OSMMap build() {
+        return mapBuilder.build();
+    }
+
+    private boolean isKnown(Type type, long reference) {
+        switch (type) {
+        case NODE:
+            return mapBuilder.nodeIndex(reference) >= 0;
+        case WAY:
+            return mapBuilder.wayForId(reference) != null
+                    || hiddenWayIndices.get(reference) >= 0;
+        default:
+            return mapBuilder.relationForId(reference) != null
+                    || hiddenRelationIndices.get(reference) >= 0;
+        }
+    }
+
+    // Retourne l'entité donnée, en construisant au besoin un chemin ou une
+    // relation gardés hors de la carte
+    private OSMEntity entity(Type type, long reference) {
+        switch (type) {
+        case NODE:
+            return mapBuilder.nodeForId(reference);
+        case WAY:
+            OSMWay way = mapBuilder.wayForId(reference);
+            return way != null ? way : hiddenWays.get(
+                    hiddenWayIndices.get(reference)).build(reference);
+        default:
+            OSMRelation relation = mapBuilder.relationForId(reference);
+            return relation != null ? relation : hiddenRelations.get(
+                    hiddenRelationIndices.get(reference)).build(reference);
+        }
+    }
+
+    private static <T> void put(LongIndexMap indices, List<T> values, long id,
+            T value) {
+        int index = indices.get(id);
+        if (index < 0) {
+            indices.put(id, values.size());
+            values.add(value);
+        } else
+            values.set(index, value);
+    }
+
+    private void clearExtent() {
+        entityMinLongitude = entityMinLatitude = Double.POSITIVE_INFINITY;
+        entityMaxLongitude = entityMaxLatitude = Double.NEGATIVE_INFINITY;
+    }
+
+    private void extend(double minLongitude, double minLatitude,
+            double maxLongitude, double maxLatitude) {
+        entityMinLongitude = Math.min(entityMinLongitude, minLongitude);
+        entityMinLatitude = Math.min(entityMinLatitude, minLatitude);
+        entityMaxLongitude = Math.max(entityMaxLongitude, maxLongitude);
+        entityMaxLatitude = Math.max(entityMaxLatitude, maxLatitude);
+    }
+
+    private void extend(Extents extents, long id) {
+        int index = extents.indices.get(id);
+        double[] bounds = extents.bounds;
+        extend(bounds[4 * index], bounds[4 * index + 1], bounds[4 * index + 2],
+                bounds[4 * index + 3]);
+    }
+
+    // Vrai si l'étendue de l'entité en cours rencontre la zone ; une
+    // étendue vide ne la rencontre jamais
+    private boolean isExtentVisible() {
+        return entityMinLongitude <= maxLongitude
+                && entityMaxLongitude >= minLongitude
+                && entityMinLatitude <= maxLatitude
+                && entityMaxLatitude >= minLatitude;
+    }
+
+    /**
+     * Etendues, en radians, d'entités désignées par leur identifiant, stockées
+     * par quadruplets dans un seul tableau.
+     */
+    private static final class Extents {
+        private final LongIndexMap indices = new LongIndexMap();
+        private double[] bounds = new double[64];
+        private int count;
+
+        void put(long id, double minLongitude, double minLatitude,
+                double maxLongitude, double maxLatitude) {
+            int index = indices.get(id);
+            if (index < 0) {
+                if (4 * count == bounds.length)
+                    bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+                index = count++;
+                indices.put(id, index);
+            }
+            bounds[4 * index] = minLongitude;
+            bounds[4 * index + 1] = minLatitude;
+            bounds[4 * index + 2] = maxLongitude;
+            bounds[4 * index + 3] = maxLatitude;
+        }
+    }
+
+    /**
+     * Membre d'une relation, désigné par son type et son identifiant.
+     */
+    private static final class MemberReference {
+        private final Type type;
+        private final long reference;
+        private final String role;
+
+        MemberReference(Type type, long reference, String role) {
+            this.type = type;
+            this.reference = reference;
+            this.role = role;
+        }
+    }
+
+    /**
+     * Chemin complet hors de la zone, construit seulement si une relation
+     * conservée le référence.
+     */
+    private final class HiddenWay {
+        private final long[] references;
+        private final Attributes attributes;
+
+        HiddenWay(long[] references, Attributes attributes) {
+            this.references = references;
+            this.attributes = attributes;
+        }
+
+        OSMWay build(long id) {
+            List<OSMNode> nodes = new ArrayList<>(references.length);
+            for (long reference : references)
+                nodes.add(mapBuilder.nodeForId(reference));
+            return new OSMWay(id, nodes, attributes);
+        }
+    }
+
+    /**
+     * Relation complète hors de la zone, construite seulement si une relation
+     * conservée la référence.
+     */
+    private final class HiddenRelation {
+        private final MemberReference[] members;
+        private final Attributes attributes;
+
+        HiddenRelation(MemberReference[] members, Attributes attributes) {
+            this.members = members;
+            this.attributes = attributes;
+        }
+
+        OSMRelation build(long id) {
+            List<OSMRelation.Member> built = new ArrayList<>(members.length);
+            for (MemberReference member : members)
+                built.add(new OSMRelation.Member(member.type, member.role,
+                        entity(member.type, member.reference)));
+            return new OSMRelation(id, built, attributes);
+        }
+    }
+}
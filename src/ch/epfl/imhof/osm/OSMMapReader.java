@@ -4,7 +4,6 @@ import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.GZIPInputStream;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
@@ -18,7 +17,9 @@ import ch.epfl.imhof.osm.OSMRelation.Member.Type;
 
 /**
  * construire une carte OpenStreetMap à partir de données stockées dans un
- * fichier au format OSM.
+ * fichier au format OSM. Les fichiers dont le nom se termine par
+ * {@value #PBF_EXTENSION} sont lus au format binaire PBF, quels que soient
+ * l'analyseur et l'option de décompression demandés.
  *
  * @author Ben Lalah Ali
  * @author Alami Idrissi Ali
@@ -26,6 +27,33 @@ import ch.epfl.imhof.osm.OSMRelation.Member.Type;
 
 public final class OSMMapReader {
 
+    /**
+     * Marge ajoutée de chaque côté de la zone de filtrage, en fraction de la
+     * largeur (resp. hauteur) de celle-ci.
+     */
+    public static final double BOUNDING_BOX_MARGIN = 0.1;
+
+    /**
+     * Extension des fichiers lus au format PBF.
+     */
+    public static final String PBF_EXTENSION = ".pbf";
+
+    /**
+     * Analyseurs XML disponibles pour la lecture des fichiers OSM.
+     */
+    public enum Parser {
+        /**
+         * Analyseur SAX standard de la plateforme Java.
+         */
+        SAX,
+        /**
+         * Analyseur par extraction travaillant directement sur les octets du
+         * fichier, nettement plus rapide mais limité au sous-ensemble de XML
+         * utilisé par les fichiers OSM (encodés en UTF-8).
+         */
+        PULL
+    }
+
     /**
      * 
      * @param fileName
@@ -43,40 +71,150 @@ public final class OSMMapReader {
      */
     public static OSMMap readOSMFile(String fileName, boolean unGZip)
             throws IOException, SAXException {
-        XMLReader factory = null;
-        Handler handler = null;
-        factory = XMLReaderFactory.createXMLReader();
-        handler = new Handler();
-        factory.setContentHandler(handler);
-        try(InputStream fileStream = readFile(fileName, unGZip)){
-            factory.parse(new InputSource(fileStream));
-        }
-        return handler.getMap();
+        return readOSMFile(fileName, unGZip, Parser.SAX);
+    }
+
+    /**
+     * Lit une carte OSM au moyen de l'analyseur donné.
+     * 
+     * @param fileName
+     *            : Nom du fichier OSM.
+     * @param unGZip
+     *            : Vrai si le fichier compressé en format GZip.
+     * @param parser
+     *            : Analyseur à utiliser.
+     * @throws SAXException
+     *             : Lève l'exception en cas d'erreur dans le format du fichier
+     *             XML contenant la carte.
+     * @throws IOException
+     *             : Lève l'exception IOException en cas d'autre erreur
+     *             d'entrée/sortie, p.ex. si le fichier n'existe pas.
+     * @return La carte OSM contenue dans le fichier de nom donné.
+     */
+    public static OSMMap readOSMFile(String fileName, boolean unGZip,
+            Parser parser) throws IOException, SAXException {
+        return read(fileName, unGZip, new OSMMapAssembler(), parser);
+    }
+
+    /**
+     * Lit une carte OSM en ne conservant que les chemins et relations dont
+     * l'étendue rencontre la zone donnée (augmentée de la marge
+     * {@link #BOUNDING_BOX_MARGIN}). Ceux-ci sont conservés en entier, y
+     * compris leurs nœuds hors de la zone ; les autres ne sont construits que
+     * si une relation conservée y fait référence.
+     * 
+     * @param fileName
+     *            : Nom du fichier OSM.
+     * @param unGZip
+     *            : Vrai si le fichier compressé en format GZip.
+     * @param bottomLeft
+     *            : Coin bas gauche de la zone à conserver.
+     * @param topRight
+     *            : Coin haut droit de la zone à conserver.
+     * @throws SAXException
+     *             : Lève l'exception en cas d'erreur dans le format du fichier
+     *             XML contenant la carte.
+     * @throws IOException
+     *             : Lève l'exception IOException en cas d'autre erreur
+     *             d'entrée/sortie, p.ex. si le fichier n'existe pas.
+     * @throws IllegalArgumentException
+     *             : si la zone donnée est vide.
+     * @return La carte OSM réduite à la zone donnée.
+     */
+    public static OSMMap readOSMFile(String fileName, boolean unGZip,
+            PointGeo bottomLeft, PointGeo topRight) throws IOException,
+            SAXException {
+        return readOSMFile(fileName, unGZip, bottomLeft, topRight, Parser.SAX);
+    }
+
+    /**
+     * Lit une carte OSM réduite à la zone donnée au moyen de l'analyseur
+     * donné.
+     * 
+     * @param fileName
+     *            : Nom du fichier OSM.
+     * @param unGZip
+     *            : Vrai si le fichier compressé en format GZip.
+     * @param bottomLeft
+     *            : Coin bas gauche de la zone à conserver.
+     * @param topRight
+     *            : Coin haut droit de la zone à conserver.
+     * @param parser
+     *            : Analyseur à utiliser.
+     * @throws SAXException
+     *             : Lève l'exception en cas d'erreur dans le format du fichier
+     *             XML contenant la carte.
+     * @throws IOException
+     *             : Lève l'exception IOException en cas d'autre erreur
+     *             d'entrée/sortie, p.ex. si le fichier n'existe pas.
+     * @throws IllegalArgumentException
+     *             : si la zone donnée est vide.
+     * @return La carte OSM réduite à la zone donnée.
+     */
+    public static OSMMap readOSMFile(String fileName, boolean unGZip,
+            PointGeo bottomLeft, PointGeo topRight, Parser parser)
+            throws IOException, SAXException {
+        double marginLongitude = BOUNDING_BOX_MARGIN
+                * (topRight.longitude() - bottomLeft.longitude());
+        double marginLatitude = BOUNDING_BOX_MARGIN
+                * (topRight.latitude() - bottomLeft.latitude());
+        if (!(marginLongitude > 0 && marginLatitude > 0))
+            throw new IllegalArgumentException("empty bounding box");
+        OSMMapAssembler assembler = new OSMMapAssembler(
+                bottomLeft.longitude() - marginLongitude,
+                bottomLeft.latitude() - marginLatitude, topRight.longitude()
+                        + marginLongitude, topRight.latitude()
+                        + marginLatitude);
+        return read(fileName, unGZip, assembler, parser);
     }
 
     private OSMMapReader() {
     }
 
+    private static OSMMap read(String fileName, boolean unGZip,
+            OSMMapAssembler assembler, Parser parser) throws IOException,
+            SAXException {
+        if (fileName.endsWith(PBF_EXTENSION)) {
+            // Les blocs d'un fichier PBF sont compressés individuellement
+            try (InputStream fileStream = readFile(fileName, false)) {
+                new OSMPBFReader(fileStream, assembler, Runtime.getRuntime()
+                        .availableProcessors()).read();
+            }
+            return assembler.build();
+        }
+        try (InputStream fileStream = readFile(fileName, unGZip)) {
+            if (parser == Parser.PULL)
+                new OSMPullParser(fileStream, assembler).parse();
+            else {
+                XMLReader factory = XMLReaderFactory.createXMLReader();
+                factory.setContentHandler(new Handler(assembler));
+                factory.parse(new InputSource(fileStream));
+            }
+        }
+        return assembler.build();
+    }
+
     private static InputStream readFile(String fileName, boolean unGZip)
             throws IOException {
         InputStream fileInputStream = new FileInputStream(fileName);
         if (unGZip) {
-            GZIPInputStream gzipInputStream = new GZIPInputStream(
-                    fileInputStream);
-            return new BufferedInputStream(gzipInputStream);
+            // Décompression sur d'autres fils, en parallèle de l'analyse
+            try {
+                return new BufferedInputStream(new ParallelGZIPInputStream(
+                        fileInputStream));
+            } catch (IOException e) {
+                fileInputStream.close();
+                throw e;
+            }
         } else
             return new BufferedInputStream(fileInputStream);
     }
 
     private static class Handler extends DefaultHandler {
-        private OSMMap.Builder mapBuilder;
-        private OSMWay.Builder wayBuilder;
-        private OSMNode.Builder nodeBuilder;
-        private OSMRelation.Builder relationBuilder;
+        private final OSMMapAssembler assembler;
 
-        @Override
-        public void startDocument() {
-            mapBuilder = new OSMMap.Builder();
+        public Handler(OSMMapAssembler assembler) {
+            this.assembler = assembler;
         }
 
         @Override
@@ -84,16 +222,13 @@ public final class OSMMapReader {
                 throws SAXException {
             switch (qName) {
             case "way":
-                if (!wayBuilder.isIncomplete())
-                    mapBuilder.addWay(wayBuilder.build());
+                assembler.endWay();
                 break;
             case "node":
-                if (!nodeBuilder.isIncomplete())
-                    mapBuilder.addNode(nodeBuilder.build());
+                assembler.endNode();
                 break;
             case "relation":
-                if (!relationBuilder.isIncomplete())
-                    mapBuilder.addRelation(relationBuilder.build());
+                assembler.endRelation();
                 break;
             }
         }
@@ -103,80 +238,43 @@ public final class OSMMapReader {
                 Attributes atts) throws SAXException {
             switch (qName) {
             case "node":
-                long id = Long.parseLong(atts.getValue("id"));
-                double longitude = Math.toRadians(Double.parseDouble(atts
-                        .getValue("lon"))),
-                latitude = Math.toRadians(Double.parseDouble(atts
-                        .getValue("lat")));
-                PointGeo point = new PointGeo(longitude, latitude);
-                nodeBuilder = new OSMNode.Builder(id, point);
-                wayBuilder = null;
-                relationBuilder = null;
+                assembler.startNode(Long.parseLong(atts.getValue("id")),
+                        Math.toRadians(Double.parseDouble(atts.getValue("lon"))),
+                        Math.toRadians(Double.parseDouble(atts.getValue("lat"))));
                 break;
             case "way":
-                long idWay = Long.parseLong(atts.getValue("id"));
-                wayBuilder = new OSMWay.Builder(idWay);
-                relationBuilder = null;
-                nodeBuilder = null;
+                assembler.startWay(Long.parseLong(atts.getValue("id")));
                 break;
             case "nd":
-                OSMNode node = mapBuilder.nodeForId(Long.parseLong(atts
-                        .getValue("ref")));
-                if (node != null)
-                    wayBuilder.addNode(node);
-                else
-                    wayBuilder.setIncomplete();
+                assembler.addNodeReference(Long.parseLong(atts.getValue("ref")));
                 break;
             case "tag":
-                String key = atts.getValue("k");
-                String value = atts.getValue("v");
-                if (wayBuilder != null)
-                    wayBuilder.setAttribute(key, value);
-                else if (relationBuilder != null)
-                    relationBuilder.setAttribute(key, value);
-                else
-                    nodeBuilder.setAttribute(key, value);
+                assembler.addTag(atts.getValue("k"), atts.getValue("v"));
                 break;
             case "relation":
-                long idRelation = Long.parseLong(atts.getValue("id"));
-                relationBuilder = new OSMRelation.Builder(idRelation);
-                nodeBuilder = null;
-                wayBuilder = null;
+                assembler.startRelation(Long.parseLong(atts.getValue("id")));
                 break;
             case "member":
                 long memberReference = Long.parseLong(atts.getValue("ref"));
-                String type = atts.getValue("type");
                 String role = atts.getValue("role");
-                OSMEntity member = null;
                 Type memberType = null;
-                switch (type) {
+                switch (atts.getValue("type")) {
                 case "node":
-                    member = mapBuilder.nodeForId(memberReference);
                     memberType = Type.NODE;
                     break;
                 case "way":
-                    member = mapBuilder.wayForId(memberReference);
                     memberType = Type.WAY;
                     break;
                 case "relation":
-                    member = mapBuilder.relationForId(memberReference);
                     memberType = Type.RELATION;
                     break;
                 }
-                if (member != null) {
-                    relationBuilder.addMember(memberType, role, member);
-                } else {
-                    relationBuilder.setIncomplete();
-                }
+                assembler.addMember(memberType, memberReference, role);
                 break;
             }
 
         }
 
-        public OSMMap getMap() {
-            return mapBuilder.build();
-        }
-
     }
 
 }
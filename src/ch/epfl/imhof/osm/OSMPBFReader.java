@@ -0,0 +1,695 @@
+package ch.epfl.imhof.osm;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.xml.sax.SAXException;
+
+import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+
+/**
+ * Lecteur de fichiers OSM au format PBF (« Protocol Buffer Binary Format »).
+ * Le fichier est une suite de blocs compressés indépendants, qui sont
+ * décompressés et décodés en parallèle, puis transmis dans leur ordre
+ * d'origine à l'assembleur de la carte. Les nœuds peuvent être stockés sous
+ * forme simple ou dense ; les chaînes de chaque bloc sont partagées au moyen
+ * de sa table de chaînes.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+final class OSMPBFReader {
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+    private static final String[] SUPPORTED_FEATURES = { "OsmSchema-V0.6",
+            "DenseNodes" };
+
+    // Codes des opérations enregistrées par le décodage d'un bloc
+    private static final int START_NODE = 0, END_NODE = 1, START_WAY = 2,
+            NODE_REFERENCE = 3, END_WAY = 4, START_RELATION = 5, MEMBER = 6,
+            END_RELATION = 7, TAG = 8;
+    private static final Type[] MEMBER_TYPES = { Type.NODE, Type.WAY,
+            Type.RELATION };
+
+    private final DataInputStream input;
+    private final OSMMapAssembler assembler;
+    private final int threads;
+    private int blobSize;
+
+    /**
+     * Construit un lecteur transmettant les entités du flot donné à
+     * l'assembleur donné.
+     *
+     * @param input
+     *            : Flot contenant le fichier PBF.
+     * @param assembler
+     *            : Assembleur de la carte.
+     * @param threads
+     *            : Nombre de fils utilisés pour décoder les blocs.
+     * @throws IllegalArgumentException
+     *             : si le nombre de fils n'est pas strictement positif.
+     */
+    public OSMPBFReader(InputStream input, OSMMapAssembler assembler,
+            int threads) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("invalid thread count: "
+                    + threads);
+        this.input = new DataInputStream(input);
+        this.assembler = assembler;
+        this.threads = threads;
+    }
+
+    /**
+     * Lit la totalité du flot.
+     *
+     * @throws IOException
+     *             : en cas d'erreur d'entrée/sortie.
+     * @throws SAXException
+     *             : si le fichier n'est pas un fichier PBF valide ou utilise
+     *             une fonctionnalité non prise en charge.
+     */
+    public void read() throws IOException, SAXException {
+        ExecutorService decoders = Executors.newFixedThreadPool(threads,
+                runnable -> {
+                    Thread thread = new Thread(runnable, "pbf-decoder");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // Blocs en cours de décodage, dans l'ordre du fichier
+        ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+        try {
+            String type;
+            while ((type = readBlobHeader()) != null) {
+                byte[] blob = readBlob();
+                if (type.equals("OSMHeader"))
+                    checkHeader(decompress(blob));
+                else if (type.equals("OSMData")) {
+                    if (pending.size() == 2 * threads)
+                        pending.removeFirst().get().replay(assembler);
+                    pending.addLast(decoders.submit(decode(blob)));
+                }
+                // Les blocs d'autres types doivent être ignorés
+            }
+            while (!pending.isEmpty())
+                pending.removeFirst().get().replay(assembler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SAXException)
+                throw (SAXException) cause;
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            // Une erreur (manque de mémoire, par exemple) n'est pas due au
+            // fichier et est relancée telle quelle
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new SAXException("invalid PBF block", (Exception) cause);
+        } finally {
+            decoders.shutdownNow();
+        }
+    }
+
+    /**
+     * @return Le type du bloc suivant, ou null à la fin du flot. La taille du
+     *         bloc est mémorisée pour {@link #readBlob()}.
+     */
+    private String readBlobHeader() throws IOException, SAXException {
+        int first = input.read();
+        if (first < 0)
+            return null;
+        int headerSize = first << 24 | input.readUnsignedByte() << 16
+                | input.readUnsignedShort();
+        if (headerSize <= 0 || headerSize > MAX_HEADER_SIZE)
+            throw new SAXException("invalid PBF blob header size: "
+                    + headerSize);
+        byte[] header = new byte[headerSize];
+        input.readFully(header);
+        ProtobufInput message = new ProtobufInput(header, 0, headerSize);
+        String type = null;
+        blobSize = -1;
+        while (message.hasNext()) {
+            switch (message.next()) {
+            case 1:
+                type = message.readString();
+                break;
+            case 3:
+                blobSize = (int) message.readVarint();
+                break;
+            default:
+                message.skip();
+            }
+        }
+        if (type == null || blobSize < 0 || blobSize > MAX_BLOB_SIZE)
+            throw new SAXException("invalid PBF blob header");
+        return type;
+    }
+
+    private byte[] readBlob() throws IOException {
+        byte[] blob = new byte[blobSize];
+        try {
+            input.readFully(blob);
+        } catch (EOFException e) {
+            throw new EOFException("truncated PBF blob");
+        }
+        return blob;
+    }
+
+    /**
+     * @return Le contenu décompressé du bloc donné.
+     */
+    private static byte[] decompress(byte[] blob) throws SAXException {
+        ProtobufInput message = new ProtobufInput(blob, 0, blob.length);
+        byte[] raw = null;
+        int rawSize = -1;
+        int zlibStart = -1, zlibEnd = -1;
+        while (message.hasNext()) {
+            switch (message.next()) {
+            case 1:
+                raw = message.readBytes();
+                break;
+            case 2:
+                rawSize = (int) message.readVarint();
+                break;
+            case 3:
+                int length = message.readLength();
+                zlibStart = message.position();
+                zlibEnd = zlibStart + length;
+                message.skipTo(zlibEnd);
+                break;
+            case 4:
+            case 5:
+            case 6:
+            case 7:
+                throw new SAXException("unsupported PBF blob compression");
+            default:
+                message.skip();
+            }
+        }
+        if (raw != null)
+            return raw;
+        if (zlibStart < 0 || rawSize < 0 || rawSize > MAX_BLOB_SIZE)
+            throw new SAXException("invalid PBF blob");
+        byte[] data = new byte[rawSize];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blob, zlibStart, zlibEnd - zlibStart);
+            int count = 0;
+            while (count < rawSize && !inflater.finished()) {
+                int inflated = inflater.inflate(data, count, rawSize - count);
+                if (inflated == 0 && !inflater.finished()) {
+                    if (inflater.needsInput())
+                        break;
+                    // Un bloc exigeant un dictionnaire prédéfini ne peut être
+                    // décompressé, et inflate retournerait 0 indéfiniment
+                    throw new SAXException("corrupt PBF blob");
+                }
+                count += inflated;
+            }
+            if (count != rawSize)
+                throw new SAXException("invalid PBF blob size");
+        } catch (DataFormatException e) {
+            throw new SAXException("corrupt PBF blob", e);
+        } finally {
+            inflater.end();
+        }
+        return data;
+    }
+
+    private static void checkHeader(byte[] header) throws SAXException {
+        ProtobufInput message = new ProtobufInput(header, 0, header.length);
+        while (message.hasNext()) {
+            if (message.next() == 4) {
+                String feature = message.readString();
+                if (!Arrays.asList(SUPPORTED_FEATURES).contains(feature))
+                    throw new SAXException("unsupported PBF feature: "
+                            + feature);
+            } else
+                message.skip();
+        }
+    }
+
+    private static Callable<Block> decode(byte[] blob) {
+        return () -> {
+            byte[] data = decompress(blob);
+            Block block = new Block();
+            block.decode(new ProtobufInput(data, 0, data.length));
+            return block;
+        };
+    }
+
+    /**
+     * Bloc de données décodé, représenté par la suite des opérations à
+     * effectuer sur l'assembleur.
+     */
+    private static final class Block {
+        private String[] strings = new String[0];
+        private long[] operations = new long[1024];
+        private int size;
+
+        private long granularity = 100;
+        private long latitudeOffset, longitudeOffset;
+
+        void decode(ProtobufInput block) throws SAXException {
+            // Les paramètres du bloc peuvent suivre ses groupes, qui ne sont
+            // donc décodés qu'une fois le bloc entièrement parcouru
+            ArrayList<ProtobufInput> groups = new ArrayList<>();
+            while (block.hasNext()) {
+                switch (block.next()) {
+                case 1:
+                    strings = decodeStrings(block.readMessage());
+                    break;
+                case 2:
+                    groups.add(block.readMessage());
+                    break;
+                case 17:
+                    granularity = block.readVarint();
+                    break;
+                case 19:
+                    latitudeOffset = block.readVarint();
+                    break;
+                case 20:
+                    longitudeOffset = block.readVarint();
+                    break;
+                default:
+                    block.skip();
+                }
+            }
+            for (ProtobufInput group : groups)
+                decodeGroup(group);
+        }
+
+        /**
+         * Rejoue les opérations du bloc sur l'assembleur donné.
+         */
+        void replay(OSMMapAssembler assembler) {
+            long[] ops = operations;
+            int i = 0;
+            while (i < size) {
+                switch ((int) ops[i++]) {
+                case START_NODE:
+                    assembler.startNode(ops[i],
+                            Double.longBitsToDouble(ops[i + 1]),
+                            Double.longBitsToDouble(ops[i + 2]));
+                    i += 3;
+                    break;
+                case END_NODE:
+                    assembler.endNode();
+                    break;
+                case START_WAY:
+                    assembler.startWay(ops[i++]);
+                    break;
+                case NODE_REFERENCE:
+                    assembler.addNodeReference(ops[i++]);
+                    break;
+                case END_WAY:
+                    assembler.endWay();
+                    break;
+                case START_RELATION:
+                    assembler.startRelation(ops[i++]);
+                    break;
+                case MEMBER:
+                    long typeAndRole = ops[i++];
+                    int type = (int) (typeAndRole >>> 32);
+                    assembler.addMember(type < MEMBER_TYPES.length ? MEMBER_TYPES[type]
+                            : null, ops[i++], strings[(int) typeAndRole]);
+                    break;
+                case END_RELATION:
+                    assembler.endRelation();
+                    break;
+                case TAG:
+                    long tag = ops[i++];
+                    assembler.addTag(strings[(int) (tag >>> 32)],
+                            strings[(int) tag]);
+                    break;
+                }
+            }
+        }
+
+        private void decodeGroup(ProtobufInput group) throws SAXException {
+            while (group.hasNext()) {
+                switch (group.next()) {
+                case 1:
+                    decodeNode(group.readMessage());
+                    break;
+                case 2:
+                    decodeDenseNodes(group.readMessage());
+                    break;
+                case 3:
+                    decodeWay(group.readMessage());
+                    break;
+                case 4:
+                    decodeRelation(group.readMessage());
+                    break;
+                default:
+                    group.skip();
+                }
+            }
+        }
+
+        private void decodeNode(ProtobufInput node) throws SAXException {
+            long id = 0, latitude = 0, longitude = 0;
+            ProtobufInput keys = null, values = null;
+            while (node.hasNext()) {
+                switch (node.next()) {
+                case 1:
+                    id = node.readSignedVarint();
+                    break;
+                case 2:
+                    keys = node.readMessage();
+                    break;
+                case 3:
+                    values = node.readMessage();
+                    break;
+                case 8:
+                    latitude = node.readSignedVarint();
+                    break;
+                case 9:
+                    longitude = node.readSignedVarint();
+                    break;
+                default:
+                    node.skip();
+                }
+            }
+            startNode(id, longitude, latitude);
+            addTags(keys, values);
+            add(END_NODE);
+        }
+
+        private void decodeDenseNodes(ProtobufInput dense)
+                throws SAXException {
+            ProtobufInput ids = null, latitudes = null, longitudes = null, keysValues = null;
+            while (dense.hasNext()) {
+                switch (dense.next()) {
+                case 1:
+                    ids = dense.readMessage();
+                    break;
+                case 8:
+                    latitudes = dense.readMessage();
+                    break;
+                case 9:
+                    longitudes = dense.readMessage();
+                    break;
+                case 10:
+                    keysValues = dense.readMessage();
+                    break;
+                default:
+                    dense.skip();
+                }
+            }
+            if (ids == null)
+                return;
+            if (latitudes == null || longitudes == null)
+                throw new SAXException("invalid PBF dense nodes");
+            // Identifiants et coordonnées sont codés par différences
+            long id = 0, latitude = 0, longitude = 0;
+            while (ids.hasNext()) {
+                if (!latitudes.hasNext() || !longitudes.hasNext())
+                    throw new SAXException("invalid PBF dense nodes");
+                id += ids.readSignedVarint();
+                latitude += latitudes.readSignedVarint();
+                longitude += longitudes.readSignedVarint();
+                startNode(id, longitude, latitude);
+                // Clefs et valeurs alternées, terminées par 0 pour chaque nœud
+                if (keysValues != null) {
+                    int key;
+                    while (keysValues.hasNext()
+                            && (key = (int) keysValues.readVarint()) != 0)
+                        addTag(key, (int) keysValues.readVarint());
+                }
+                add(END_NODE);
+            }
+        }
+
+        private void decodeWay(ProtobufInput way) throws SAXException {
+            long id = 0;
+            ProtobufInput keys = null, values = null, references = null;
+            while (way.hasNext()) {
+                switch (way.next()) {
+                case 1:
+                    id = way.readVarint();
+                    break;
+                case 2:
+                    keys = way.readMessage();
+                    break;
+                case 3:
+                    values = way.readMessage();
+                    break;
+                case 8:
+                    references = way.readMessage();
+                    break;
+                default:
+                    way.skip();
+                }
+            }
+            add(START_WAY);
+            add(id);
+            if (references != null) {
+                long reference = 0;
+                while (references.hasNext()) {
+                    reference += references.readSignedVarint();
+                    add(NODE_REFERENCE);
+                    add(reference);
+                }
+            }
+            addTags(keys, values);
+            add(END_WAY);
+        }
+
+        private void decodeRelation(ProtobufInput relation)
+                throws SAXException {
+            long id = 0;
+            ProtobufInput keys = null, values = null, roles = null, members = null, types = null;
+            while (relation.hasNext()) {
+                switch (relation.next()) {
+                case 1:
+                    id = relation.readVarint();
+                    break;
+                case 2:
+                    keys = relation.readMessage();
+                    break;
+                case 3:
+                    values = relation.readMessage();
+                    break;
+                case 8:
+                    roles = relation.readMessage();
+                    break;
+                case 9:
+                    members = relation.readMessage();
+                    break;
+                case 10:
+                    types = relation.readMessage();
+                    break;
+                default:
+                    relation.skip();
+                }
+            }
+            add(START_RELATION);
+            add(id);
+            if (members != null) {
+                if (roles == null || types == null)
+                    throw new SAXException("invalid PBF relation " + id);
+                long member = 0;
+                while (members.hasNext()) {
+                    if (!roles.hasNext() || !types.hasNext())
+                        throw new SAXException("invalid PBF relation " + id);
+                    member += members.readSignedVarint();
+                    int role = checkString(roles.readVarint());
+                    long type = types.readVarint();
+                    add(MEMBER);
+                    add(Math.min(type, Integer.MAX_VALUE) << 32 | role);
+                    add(member);
+                }
+            }
+            addTags(keys, values);
+            add(END_RELATION);
+        }
+
+        private void startNode(long id, long longitude, long latitude) {
+            add(START_NODE);
+            add(id);
+            add(Double.doubleToRawLongBits(toRadians(longitudeOffset
+                    + granularity * longitude)));
+            add(Double.doubleToRawLongBits(toRadians(latitudeOffset
+                    + granularity * latitude)));
+        }
+
+        private void addTags(ProtobufInput keys, ProtobufInput values)
+                throws SAXException {
+            if (keys == null)
+                return;
+            if (values == null)
+                throw new SAXException("invalid PBF tags");
+            while (keys.hasNext()) {
+                if (!values.hasNext())
+                    throw new SAXException("invalid PBF tags");
+                addTag((int) keys.readVarint(), (int) values.readVarint());
+            }
+        }
+
+        private void addTag(long key, long value) throws SAXException {
+            add(TAG);
+            add((long) checkString(key) << 32 | checkString(value));
+        }
+
+        private int checkString(long index) throws SAXException {
+            if (index < 0 || index >= strings.length)
+                throw new SAXException("invalid PBF string index: " + index);
+            return (int) index;
+        }
+
+        private void add(long operation) {
+            if (size == operations.length)
+                operations = Arrays.copyOf(operations, 2 * size);
+            operations[size++] = operation;
+        }
+
+        private static String[] decodeStrings(ProtobufInput table)
+                throws SAXException {
+            String[] strings = new String[16];
+            int count = 0;
+            while (table.hasNext()) {
+                if (table.next() == 1) {
+                    if (count == strings.length)
+                        strings = Arrays.copyOf(strings, 2 * count);
+                    strings[count++] = table.readString();
+                } else
+                    table.skip();
+            }
+            return Arrays.copyOf(strings, count);
+        }
+
+        // La division exacte par 1e9 donne le même double que la lecture de
+        // la valeur décimale dans un fichier XML
+        private static double toRadians(long nanoDegrees) {
+            return Math.toRadians(nanoDegrees / 1e9);
+        }
+
+    }
+
+    /**
+     * Lecture de messages au format « Protocol Buffers », directement dans un
+     * tableau d'octets.
+     */
+    private static final class ProtobufInput {
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+        private int wireType;
+
+        ProtobufInput(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.position = start;
+            this.end = end;
+        }
+
+        boolean hasNext() {
+            return position < end;
+        }
+
+        int position() {
+            return position;
+        }
+
+        /**
+         * @return Le numéro du champ suivant.
+         */
+        int next() throws SAXException {
+            long key = readVarint();
+            wireType = (int) (key & 7);
+            return (int) (key >>> 3);
+        }
+
+        long readVarint() throws SAXException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= end)
+                    throw new SAXException("truncated PBF message");
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0)
+                    return value;
+            }
+            throw new SAXException("invalid PBF varint");
+        }
+
+        long readSignedVarint() throws SAXException {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        int readLength() throws SAXException {
+            long length = readVarint();
+            if (length < 0 || length > end - position)
+                throw new SAXException("truncated PBF message");
+            return (int) length;
+        }
+
+        ProtobufInput readMessage() throws SAXException {
+            int length = readLength();
+            ProtobufInput message = new ProtobufInput(bytes, position,
+                    position + length);
+            position += length;
+            return message;
+        }
+
+        byte[] readBytes() throws SAXException {
+            int length = readLength();
+            byte[] result = Arrays.copyOfRange(bytes, position, position
+                    + length);
+            position += length;
+            return result;
+        }
+
+        String readString() throws SAXException {
+            int length = readLength();
+            String result = new String(bytes, position, length,
+                    StandardCharsets.UTF_8);
+            position += length;
+            return result;
+        }
+
+        void skipTo(int newPosition) {
+            position = newPosition;
+        }
+
+        void skip() throws SAXException {
+            switch (wireType) {
+            case 0:
+                readVarint();
+                break;
+            case 1:
+                skipBytes(8);
+                break;
+            case 2:
+                skipBytes(readLength());
+                break;
+            case 5:
+                skipBytes(4);
+                break;
+            default:
+                throw new SAXException("invalid PBF wire type: " + wireType);
+            }
+        }
+
+        private void skipBytes(int count) throws SAXException {
+            if (count > end - position)
+                throw new SAXException("truncated PBF message");
+            position += count;
+        }
+    }
+}
@@ -0,0 +1,575 @@
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+
+/**
+ * Analyseur XML par extraction, spécialisé pour les fichiers OSM. Il travaille
+ * directement sur les octets du flot (encodé en UTF-8) : les identifiants et
+ * les coordonnées sont décodés sans construire de chaîne intermédiaire, et
+ * seules les clefs, valeurs et rôles des attributs donnent lieu à des chaînes,
+ * partagées autant que possible. Les éléments reconnus sont transmis à un
+ * assembleur.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+final class OSMPullParser {
+    private static final int OTHER = 0, NODE = 1, WAY = 2, ND = 3, TAG = 4,
+            RELATION = 5, MEMBER = 6;
+    private static final byte[][] ELEMENT_NAMES = { null, bytes("node"),
+            bytes("way"), bytes("nd"), bytes("tag"), bytes("relation"),
+            bytes("member") };
+    private static final byte[] ID = bytes("id"), LAT = bytes("lat"),
+            LON = bytes("lon"), REF = bytes("ref"), K = bytes("k"),
+            V = bytes("v"), TYPE = bytes("type"), ROLE = bytes("role");
+
+    // Puissances de dix représentables exactement par un double
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+            1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+            1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private static final int STRING_CACHE_SIZE = 4096;
+
+    private final InputStream stream;
+    private final OSMMapAssembler assembler;
+
+    private final byte[] buffer = new byte[1 << 16];
+    private int position, limit;
+    private long offset;
+
+    private byte[] name = new byte[32];
+    private int nameLength;
+    private byte[] value = new byte[128];
+    private int valueLength;
+    private boolean valueHasEntity;
+
+    private int[] elements = new int[16];
+    private String[] otherElements = new String[16];
+    private int depth;
+
+    private final byte[][] cachedBytes = new byte[STRING_CACHE_SIZE][];
+    private final String[] cachedStrings = new String[STRING_CACHE_SIZE];
+
+    /**
+     * Construit un analyseur lisant le flot donné.
+     *
+     * @param stream
+     *            : Flot contenant le fichier OSM.
+     * @param assembler
+     *            : Assembleur recevant les éléments lus.
+     */
+    public OSMPullParser(InputStream stream, OSMMapAssembler assembler) {
+        this.stream = stream;
+        this.assembler = assembler;
+    }
+
+    /**
+     * Lit la totalité du flot et transmet ses éléments à l'assembleur.
+     *
+     * @throws IOException
+     *             : en cas d'erreur de lecture du flot.
+     * @throws SAXException
+     *             : si le document est mal formé.
+     */
+    public void parse() throws IOException, SAXException {
+        int c;
+        while ((c = read()) >= 0) {
+            if (c == '<')
+                markup();
+        }
+        if (depth != 0)
+            throw error("unexpected end of document");
+    }
+
+    private void markup() throws IOException, SAXException {
+        int c = readRequired();
+        switch (c) {
+        case '?':
+            skipProcessingInstruction();
+            break;
+        case '!':
+            if (readRequired() == '-' && readRequired() == '-')
+                skipComment();
+            else
+                skipUntil('>');
+            break;
+        case '/':
+            endTag();
+            break;
+        default:
+            startTag(c);
+        }
+    }
+
+    private void startTag(int first) throws IOException, SAXException {
+        int c = readName(first);
+        int element = element();
+        String otherName = (element == OTHER) ? new String(name, 0,
+                nameLength, StandardCharsets.UTF_8) : null;
+
+        long id = 0, reference = 0;
+        double latitude = Double.NaN, longitude = Double.NaN;
+        boolean hasId = false, hasReference = false;
+        String key = null, tagValue = null, role = null;
+        Type type = null;
+        boolean isEmpty;
+
+        // Lecture des attributs
+        while (true) {
+            c = skipWhitespace(c);
+            if (c == '>') {
+                isEmpty = false;
+                break;
+            } else if (c == '/') {
+                if (readRequired() != '>')
+                    throw error("'>' expected");
+                isEmpty = true;
+                break;
+            }
+            c = skipWhitespace(readName(c));
+            if (c != '=')
+                throw error("'=' expected");
+            readValue(skipWhitespace(readRequired()));
+            c = readRequired();
+
+            switch (element) {
+            case NODE:
+                if (nameIs(ID)) {
+                    id = parseLong();
+                    hasId = true;
+                } else if (nameIs(LAT))
+                    latitude = parseDouble();
+                else if (nameIs(LON))
+                    longitude = parseDouble();
+                break;
+            case WAY:
+            case RELATION:
+                if (nameIs(ID)) {
+                    id = parseLong();
+                    hasId = true;
+                }
+                break;
+            case ND:
+                if (nameIs(REF)) {
+                    reference = parseLong();
+                    hasReference = true;
+                }
+                break;
+            case TAG:
+                if (nameIs(K))
+                    key = string();
+                else if (nameIs(V))
+                    tagValue = string();
+                break;
+            case MEMBER:
+                if (nameIs(REF)) {
+                    reference = parseLong();
+                    hasReference = true;
+                } else if (nameIs(TYPE))
+                    type = memberType();
+                else if (nameIs(ROLE))
+                    role = string();
+                break;
+            }
+        }
+
+        switch (element) {
+        case NODE:
+            if (!hasId || Double.isNaN(latitude) || Double.isNaN(longitude))
+                throw error("incomplete node");
+            assembler.startNode(id, Math.toRadians(longitude),
+                    Math.toRadians(latitude));
+            break;
+        case WAY:
+            if (!hasId)
+                throw error("way without id");
+            assembler.startWay(id);
+            break;
+        case RELATION:
+            if (!hasId)
+                throw error("relation without id");
+            assembler.startRelation(id);
+            break;
+        case ND:
+            if (!hasReference)
+                throw error("nd without ref");
+            assembler.addNodeReference(reference);
+            break;
+        case TAG:
+            assembler.addTag(key, tagValue);
+            break;
+        case MEMBER:
+            if (!hasReference)
+                throw error("member without ref");
+            assembler.addMember(type, reference, role);
+            break;
+        }
+
+        if (isEmpty)
+            endElement(element);
+        else
+            push(element, otherName);
+    }
+
+    private void endTag() throws IOException, SAXException {
+        int c = skipWhitespace(readName(readRequired()));
+        if (c != '>')
+            throw error("'>' expected");
+        int element = element();
+        if (depth == 0)
+            throw error("unexpected end tag");
+        depth--;
+        if (elements[depth] != element
+                || (element == OTHER && !otherElements[depth]
+                        .equals(new String(name, 0, nameLength,
+                                StandardCharsets.UTF_8))))
+            throw error("mismatched end tag");
+        otherElements[depth] = null;
+        endElement(element);
+    }
+
+    private void endElement(int element) {
+        switch (element) {
+        case NODE:
+            assembler.endNode();
+            break;
+        case WAY:
+            assembler.endWay();
+            break;
+        case RELATION:
+            assembler.endRelation();
+            break;
+        }
+    }
+
+    private void push(int element, String otherName) {
+        if (depth == elements.length) {
+            elements = Arrays.copyOf(elements, depth * 2);
+            otherElements = Arrays.copyOf(otherElements, depth * 2);
+        }
+        elements[depth] = element;
+        otherElements[depth] = otherName;
+        depth++;
+    }
+
+    /**
+     * Lit un nom débutant par l'octet donné dans le tampon des noms.
+     *
+     * @return Le premier octet suivant le nom.
+     */
+    private int readName(int first) throws IOException, SAXException {
+        if (isNameTerminator(first))
+            throw error("name expected");
+        nameLength = 0;
+        int c = first;
+        do {
+            if (nameLength == name.length)
+                name = Arrays.copyOf(name, nameLength * 2);
+            name[nameLength++] = (byte) c;
+            c = readRequired();
+        } while (!isNameTerminator(c));
+        return c;
+    }
+
+    /**
+     * Lit une valeur d'attribut délimitée par le guillemet donné dans le
+     * tampon des valeurs, en normalisant les blancs comme le prescrit XML.
+     */
+    private void readValue(int quote) throws IOException, SAXException {
+        if (quote != '"' && quote != '\'')
+            throw error("quote expected");
+        valueLength = 0;
+        valueHasEntity = false;
+        // Parcours direct du tampon tant qu'aucun octet particulier n'apparaît
+        int start = position;
+        while (position < limit) {
+            byte b = buffer[position];
+            if (b == quote) {
+                appendValue(start, position - start);
+                position++;
+                return;
+            } else if (b == '&' || b == '<' || (b >= 0 && b < ' '))
+                break;
+            position++;
+        }
+        appendValue(start, position - start);
+        int c;
+        while ((c = readRequired()) != quote) {
+            if (c == '<')
+                throw error("'<' in attribute value");
+            if (c == '&')
+                valueHasEntity = true;
+            else if (c == '\t' || c == '\n' || c == '\r')
+                c = ' ';
+            if (valueLength == value.length)
+                value = Arrays.copyOf(value, valueLength * 2);
+            value[valueLength++] = (byte) c;
+        }
+    }
+
+    private void appendValue(int start, int length) {
+        if (valueLength + length > value.length)
+            value = Arrays.copyOf(value,
+                    Math.max(value.length * 2, valueLength + length));
+        System.arraycopy(buffer, start, value, valueLength, length);
+        valueLength += length;
+    }
+
+    private int element() {
+        for (int element = NODE; element < ELEMENT_NAMES.length; element++)
+            if (nameIs(ELEMENT_NAMES[element]))
+                return element;
+        return OTHER;
+    }
+
+    private boolean nameIs(byte[] expected) {
+        if (nameLength != expected.length)
+            return false;
+        for (int i = 0; i < nameLength; i++)
+            if (name[i] != expected[i])
+                return false;
+        return true;
+    }
+
+    private boolean valueIs(byte[] expected) {
+        if (valueLength != expected.length)
+            return false;
+        for (int i = 0; i < valueLength; i++)
+            if (value[i] != expected[i])
+                return false;
+        return true;
+    }
+
+    private Type memberType() {
+        if (valueIs(ELEMENT_NAMES[NODE]))
+            return Type.NODE;
+        else if (valueIs(ELEMENT_NAMES[WAY]))
+            return Type.WAY;
+        else if (valueIs(ELEMENT_NAMES[RELATION]))
+            return Type.RELATION;
+        return null;
+    }
+
+    private long parseLong() throws SAXException {
+        int i = 0;
+        boolean negative = false;
+        if (valueLength > 0 && (value[0] == '-' || value[0] == '+')) {
+            negative = value[0] == '-';
+            i++;
+        }
+        if (i == valueLength || valueLength - i > 18)
+            return parseLongSlowly();
+        long result = 0;
+        for (; i < valueLength; i++) {
+            int digit = value[i] - '0';
+            if (digit < 0 || digit > 9)
+                throw error("invalid integer");
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    private long parseLongSlowly() throws SAXException {
+        try {
+            return Long.parseLong(new String(value, 0, valueLength,
+                    StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            throw error("invalid integer");
+        }
+    }
+
+    /**
+     * Décode un nombre décimal. Lorsque la mantisse et le nombre de décimales
+     * sont assez petits, le quotient de deux doubles exacts est correctement
+     * arrondi et donne donc le même résultat que Double.parseDouble.
+     */
+    private double parseDouble() throws SAXException {
+        int i = 0;
+        boolean negative = false;
+        if (valueLength > 0 && (value[0] == '-' || value[0] == '+')) {
+            negative = value[0] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int decimals = -1, digits = 0;
+        for (; i < valueLength; i++) {
+            int b = value[i];
+            if (b == '.' && decimals < 0)
+                decimals = 0;
+            else if (b >= '0' && b <= '9' && digits < 18) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (decimals >= 0)
+                    decimals++;
+            } else
+                return parseDoubleSlowly();
+        }
+        if (digits == 0 || mantissa >= MAX_EXACT_MANTISSA
+                || decimals >= POWERS_OF_TEN.length)
+            return parseDoubleSlowly();
+        double result = (decimals <= 0) ? mantissa : mantissa
+                / POWERS_OF_TEN[decimals];
+        return negative ? -result : result;
+    }
+
+    private double parseDoubleSlowly() throws SAXException {
+        try {
+            return Double.parseDouble(new String(value, 0, valueLength,
+                    StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            throw error("invalid number");
+        }
+    }
+
+    /**
+     * @return La valeur lue sous forme de chaîne, prise dans le cache des
+     *         chaînes lorsque la même suite d'octets y figure déjà.
+     */
+    private String string() throws SAXException {
+        if (valueHasEntity)
+            decodeEntities();
+        int hash = 1;
+        for (int i = 0; i < valueLength; i++)
+            hash = 31 * hash + value[i];
+        int slot = (hash ^ (hash >>> 16)) & (STRING_CACHE_SIZE - 1);
+        byte[] cached = cachedBytes[slot];
+        if (cached != null && valueIs(cached))
+            return cachedStrings[slot];
+        String string = new String(value, 0, valueLength,
+                StandardCharsets.UTF_8);
+        cachedBytes[slot] = Arrays.copyOf(value, valueLength);
+        cachedStrings[slot] = string;
+        return string;
+    }
+
+    /**
+     * Remplace dans le tampon des valeurs les entités prédéfinies et les
+     * références de caractères par leur encodage UTF-8.
+     */
+    private void decodeEntities() throws SAXException {
+        int length = 0;
+        for (int i = 0; i < valueLength; i++) {
+            if (value[i] != '&') {
+                value[length++] = value[i];
+                continue;
+            }
+            int end = i + 1;
+            while (end < valueLength && value[end] != ';')
+                end++;
+            if (end == valueLength)
+                throw error("unterminated entity");
+            String entity = new String(value, i + 1, end - i - 1,
+                    StandardCharsets.US_ASCII);
+            int codePoint;
+            switch (entity) {
+            case "lt":
+                codePoint = '<';
+                break;
+            case "gt":
+                codePoint = '>';
+                break;
+            case "amp":
+                codePoint = '&';
+                break;
+            case "quot":
+                codePoint = '"';
+                break;
+            case "apos":
+                codePoint = '\'';
+                break;
+            default:
+                try {
+                    if (entity.startsWith("#x"))
+                        codePoint = Integer.parseInt(entity.substring(2), 16);
+                    else if (entity.startsWith("#"))
+                        codePoint = Integer.parseInt(entity.substring(1));
+                    else
+                        throw error("unknown entity: " + entity);
+                } catch (NumberFormatException e) {
+                    throw error("invalid character reference: " + entity);
+                }
+                if (!Character.isValidCodePoint(codePoint))
+                    throw error("invalid character reference: " + entity);
+            }
+            // L'encodage d'un caractère n'est jamais plus long que sa référence
+            byte[] encoded = new String(Character.toChars(codePoint))
+                    .getBytes(StandardCharsets.UTF_8);
+            for (byte b : encoded)
+                value[length++] = b;
+            i = end;
+        }
+        valueLength = length;
+        valueHasEntity = false;
+    }
+
+    private void skipProcessingInstruction() throws IOException,
+            SAXException {
+        boolean question = false;
+        int c;
+        while (!((c = readRequired()) == '>' && question))
+            question = (c == '?');
+    }
+
+    private void skipComment() throws IOException, SAXException {
+        int dashes = 0;
+        int c;
+        while (!((c = readRequired()) == '>' && dashes >= 2))
+            dashes = (c == '-') ? dashes + 1 : 0;
+    }
+
+    private void skipUntil(int end) throws IOException, SAXException {
+        while (readRequired() != end)
+            ;
+    }
+
+    private int skipWhitespace(int c) throws IOException, SAXException {
+        while (c == ' ' || c == '\t' || c == '\n' || c == '\r')
+            c = readRequired();
+        return c;
+    }
+
+    private static boolean isNameTerminator(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '='
+                || c == '>' || c == '/' || c == '<' || c == '"' || c == '\'';
+    }
+
+    private int readRequired() throws IOException, SAXException {
+        int c = read();
+        if (c < 0)
+            throw error("unexpected end of document");
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            offset += limit;
+            int count;
+            do {
+                count = stream.read(buffer, 0, buffer.length);
+            } while (count == 0);
+            position = 0;
+            limit = Math.max(count, 0);
+            if (count < 0)
+                return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private SAXParseException error(String message) {
+        return new SAXParseException(message + " (at byte "
+                + (offset + position) + ")", null, null, -1, -1);
+    }
+
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.US_ASCII);
+    }
+}
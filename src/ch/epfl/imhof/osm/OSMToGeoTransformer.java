@@ -2,18 +2,22 @@ package ch.epfl.imhof.osm;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
 
 import ch.epfl.imhof.Attributed;
 import ch.epfl.imhof.Attributes;
 import ch.epfl.imhof.Graph;
 import ch.epfl.imhof.Map;
+import ch.epfl.imhof.Parallel;
+import ch.epfl.imhof.geometry.BoundingBox;
 import ch.epfl.imhof.geometry.ClosedPolyLine;
 import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.geometry.PolyLine;
@@ -30,7 +34,11 @@ import ch.epfl.imhof.projection.Projection;
  */
 
 public final class OSMToGeoTransformer {
+    // Nombre de tranches par fil, pour équilibrer la charge
+    private final static int CHUNKS_PER_THREAD = 4;
+
     private final Projection projection;
+    private final ExecutorService executor;
     private final static Set<String> ATTRIBUTES_POLYGONE = new HashSet<>(
             Arrays.asList("building", "landuse", "layer", "leisure", "natural",
                     "waterway"));
@@ -45,13 +53,30 @@ public final class OSMToGeoTransformer {
 
     /**
      * Construit un convertisseur OSM en géométrie qui utilise la projection
-     * donnée.
+     * donnée et convertit les entités séquentiellement.
      * 
      * @param projection
      *            : Projection à utiliser pour projeter les points.
      */
     public OSMToGeoTransformer(Projection projection) {
         this.projection = projection;
+        this.executor = null;
+    }
+
+    /**
+     * Construit un convertisseur OSM en géométrie qui utilise la projection
+     * donnée et répartit la conversion des chemins et des relations entre les
+     * fils de l'exécuteur donné (p.ex. un {@link ForkJoinPool}). La carte
+     * obtenue est identique à celle d'une conversion séquentielle.
+     * 
+     * @param projection
+     *            : Projection à utiliser pour projeter les points.
+     * @param executor
+     *            : Exécuteur sur lequel convertir les entités.
+     */
+    public OSMToGeoTransformer(Projection projection, ExecutorService executor) {
+        this.projection = projection;
+        this.executor = executor;
     }
 
     /**
@@ -62,10 +87,41 @@ public final class OSMToGeoTransformer {
      * @return Une Map géometrique convertie.
      */
     public Map transform(OSMMap map) {
+        List<OSMWay> ways = map.ways();
+        List<OSMRelation> relations = map.relations();
+        if (executor == null)
+            return transform(ways, relations);
+
+        // Découpage en tranches, converties en parallèle puis réunies dans
+        // l'ordre des entités
+        int chunks = CHUNKS_PER_THREAD * Parallel.parallelism(executor);
+        List<Callable<Map>> tasks = new ArrayList<>();
+        for (int i = 0; i < chunks; i++) {
+            List<OSMWay> chunk = chunk(ways, i, chunks);
+            if (!chunk.isEmpty())
+                tasks.add(() -> transform(chunk,
+                        Collections.<OSMRelation> emptyList()));
+        }
+        for (int i = 0; i < chunks; i++) {
+            List<OSMRelation> chunk = chunk(relations, i, chunks);
+            if (!chunk.isEmpty())
+                tasks.add(() -> transform(Collections.<OSMWay> emptyList(),
+                        chunk));
+        }
+
+        Map.Builder mapBuilder = new Map.Builder();
+        for (Map chunkMap : Parallel.invokeAll(executor, tasks)) {
+            chunkMap.polyLines().forEach(mapBuilder::addPolyLine);
+            chunkMap.polygons().forEach(mapBuilder::addPolygon);
+        }
+        return mapBuilder.build();
+    }
+
+    private Map transform(List<OSMWay> ways, List<OSMRelation> relations) {
         Map.Builder mapBuilder = new Map.Builder();
 
         // Conversion des chemins en PolyLigne et Polygon
-        for (OSMWay way : map.ways()) {
+        for (OSMWay way : ways) {
             // Déclaration des variables
             PolyLine.Builder polyLineBuilder = new PolyLine.Builder();
 
@@ -100,7 +156,7 @@ public final class OSMToGeoTransformer {
         }
 
         // Conversion des relations en multipolygones
-        for (OSMRelation relation : map.relations()) {
+        for (OSMRelation relation : relations) {
             Attributes attributesRelation = relation.attributes().keepOnlyKeys(
                     ATTRIBUTES_POLYGONE);
             if (!attributesRelation.isEmpty()) {
@@ -116,6 +172,15 @@ public final class OSMToGeoTransformer {
         return mapBuilder.build();
     }
 
+    /**
+     * @return La tranche d'index donné parmi le nombre de tranches donné de
+     *         la liste.
+     */
+    private static <T> List<T> chunk(List<T> list, int index, int chunks) {
+        return list.subList((int) ((long) list.size() * index / chunks),
+                (int) ((long) list.size() * (index + 1) / chunks));
+    }
+
     private boolean isSurface(OSMWay way) {
         String area = way.attributes().get("area");
         if (way.isClosed()) {
@@ -200,37 +265,114 @@ public final class OSMToGeoTransformer {
         // Trie de la liste des outers par ordre croissant
         outers.sort(new ComparatorClosedP());
 
+        // Associer chaque Inner au plus petit Outer qui le contient, en ne
+        // testant que les Outers dont le rectangle englobant peut le contenir
+        List<List<ClosedPolyLine>> holes = new ArrayList<>();
+        for (int i = 0; i < outers.size(); i++)
+            holes.add(new ArrayList<ClosedPolyLine>());
+        OuterRingIndex index = new OuterRingIndex(outers);
+        for (ClosedPolyLine inner : inners) {
+            int outer = index.smallestOuterContaining(inner);
+            if (outer >= 0)
+                holes.get(outer).add(inner);
+        }
+
         // Liste des resultats à retouner
         List<Attributed<Polygon>> result = new ArrayList<>();
+        for (int i = 0; i < outers.size(); i++)
+            result.add(new Attributed<>(new Polygon(outers.get(i), holes
+                    .get(i)), attributes));
 
-        java.util.Map<ClosedPolyLine, List<ClosedPolyLine>> polygonsBuilder = new HashMap<>();
-
-        // Associer à chaque Outer les Inners qui vont avec
-        for (ClosedPolyLine outer : outers) {
-            polygonsBuilder.put(outer, new ArrayList<ClosedPolyLine>());
-            Iterator<ClosedPolyLine> iterator = inners.iterator();
-            while (iterator.hasNext()) {
-                ClosedPolyLine inner = iterator.next();
-                boolean isIn = true;
-                for (Point point : inner.points()) {
-                    if (!outer.containsPoint(point))
-                        isIn = false;
-                }
-                if (isIn) {
-                    polygonsBuilder.get(outer).add(inner);
-                    iterator.remove();
-                }
+        return result;
+    }
+
+    /**
+     * Index spatial des Outers d'une relation, triés par aire croissante : une
+     * grille régulière couvrant leur rectangle englobant, dont chaque case
+     * contient les index des Outers qui la recouvrent.
+     */
+    private static final class OuterRingIndex {
+        private final List<ClosedPolyLine> outers;
+        private final BoundingBox bounds;
+        private final int size;
+        private final double cellWidth, cellHeight;
+        private final int[][] cells;
+
+        OuterRingIndex(List<ClosedPolyLine> outers) {
+            this.outers = outers;
+            BoundingBox bounds = null;
+            for (ClosedPolyLine outer : outers)
+                bounds = bounds == null ? outer.boundingBox() : bounds
+                        .union(outer.boundingBox());
+            this.bounds = bounds;
+            this.size = Math.max(1, (int) Math.ceil(Math.sqrt(outers.size())));
+            this.cellWidth = bounds == null ? 0 : (bounds.maxX() - bounds
+                    .minX()) / size;
+            this.cellHeight = bounds == null ? 0 : (bounds.maxY() - bounds
+                    .minY()) / size;
+
+            // Deux passes : compte puis remplissage des cases
+            int[] counts = new int[size * size];
+            for (ClosedPolyLine outer : outers)
+                forEachCell(outer.boundingBox(), cell -> counts[cell]++);
+            this.cells = new int[size * size][];
+            for (int i = 0; i < cells.length; i++)
+                cells[i] = new int[counts[i]];
+            int[] filled = new int[size * size];
+            for (int i = 0; i < outers.size(); i++) {
+                int outer = i;
+                forEachCell(outers.get(i).boundingBox(),
+                        cell -> cells[cell][filled[cell]++] = outer);
             }
         }
 
-        // Ajout des Polygone dans la liste à retourner
-        for (Entry<ClosedPolyLine, List<ClosedPolyLine>> polygonBuilder : polygonsBuilder
-                .entrySet()) {
-            result.add(new Attributed<>(new Polygon(polygonBuilder.getKey(),
-                    polygonBuilder.getValue()), attributes));
+        /**
+         * @return L'index du plus petit Outer contenant tous les points de
+         *         l'Inner donné, ou -1 s'il n'y en a aucun.
+         */
+        int smallestOuterContaining(ClosedPolyLine inner) {
+            // Un Outer contenant l'Inner recouvre la case de son premier point
+            Point first = inner.firstPoint();
+            if (bounds == null || !bounds.contains(first))
+                return -1;
+            BoundingBox innerBox = inner.boundingBox();
+            for (int outer : cells[row(first.y()) * size + column(first.x())]) {
+                ClosedPolyLine candidate = outers.get(outer);
+                if (candidate.boundingBox().contains(innerBox)
+                        && containsAllPoints(candidate, inner))
+                    return outer;
+            }
+            return -1;
         }
 
-        return result;
+        private static boolean containsAllPoints(ClosedPolyLine outer,
+                ClosedPolyLine inner) {
+            for (Point point : inner.points())
+                if (!outer.containsPoint(point))
+                    return false;
+            return true;
+        }
+
+        private void forEachCell(BoundingBox box, IntConsumer action) {
+            for (int row = row(box.minY()); row <= row(box.maxY()); row++)
+                for (int column = column(box.minX()); column <= column(box
+                        .maxX()); column++)
+                    action.accept(row * size + column);
+        }
+
+        private int column(double x) {
+            return cell(x - bounds.minX(), cellWidth);
+        }
+
+        private int row(double y) {
+            return cell(y - bounds.minY(), cellHeight);
+        }
+
+        private int cell(double offset, double cellSize) {
+            if (cellSize == 0)
+                return 0;
+            return Math.max(0, Math.min(size - 1, (int) (offset / cellSize)));
+        }
     }
 
     private class ComparatorClosedP implements Comparator<ClosedPolyLine> {
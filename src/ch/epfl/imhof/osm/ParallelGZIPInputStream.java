@@ -0,0 +1,352 @@
+package ch.epfl.imhof.osm;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Flot décompressant des données gzip sur d'autres fils d'exécution que celui
+ * qui les lit. Un fil lit et décompresse le fichier par blocs qu'il dépose
+ * dans une file bornée, pendant que le lecteur consomme les blocs déjà prêts.
+ * Lorsque le fichier est composé de membres gzip indépendants dont la taille
+ * figure dans l'en-tête (format BGZF), les membres sont de plus décompressés
+ * en parallèle et restitués dans leur ordre d'origine.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+final class ParallelGZIPInputStream extends InputStream {
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final int QUEUE_CAPACITY = 16;
+    private static final int BGZF_HEADER_SIZE = 18;
+    private static final int BGZF_MAX_BLOCK_SIZE = 1 << 16;
+    // Bloc marquant la fin des données, reconnu par son identité
+    private static final byte[] END = new byte[0];
+
+    private final InputStream source;
+    private final BlockingQueue<Future<byte[]>> blocks;
+    private final ExecutorService inflaters;
+    private final Thread producer;
+    private volatile boolean closed;
+
+    private byte[] block = new byte[0];
+    private int position;
+    private boolean finished;
+    // Erreur signalée par le producteur, relancée à chaque lecture suivante
+    private IOException failure;
+
+    /**
+     * Construit un flot décompressant le flot gzip donné avec autant de fils
+     * que de processeurs disponibles.
+     *
+     * @param compressed
+     *            : Flot de données compressées avec gzip.
+     * @throws IOException
+     *             : si l'en-tête gzip est invalide ou illisible.
+     */
+    public ParallelGZIPInputStream(InputStream compressed) throws IOException {
+        this(compressed, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Construit un flot décompressant le flot gzip donné.
+     *
+     * @param compressed
+     *            : Flot de données compressées avec gzip.
+     * @param threads
+     *            : Nombre de fils utilisés pour décompresser les membres
+     *            BGZF en parallèle.
+     * @throws IOException
+     *             : si l'en-tête gzip est invalide ou illisible.
+     * @throws IllegalArgumentException
+     *             : si le nombre de fils n'est pas strictement positif.
+     */
+    public ParallelGZIPInputStream(InputStream compressed, int threads)
+            throws IOException {
+        if (threads <= 0)
+            throw new IllegalArgumentException("invalid thread count: "
+                    + threads);
+        BufferedInputStream buffered = new BufferedInputStream(compressed,
+                BGZF_MAX_BLOCK_SIZE);
+        this.blocks = new ArrayBlockingQueue<>(Math.max(QUEUE_CAPACITY,
+                2 * threads));
+        Runnable task;
+        if (isBGZF(buffered)) {
+            this.source = buffered;
+            this.inflaters = Executors.newFixedThreadPool(threads,
+                    runnable -> daemon(runnable, "bgzf-inflater"));
+            task = this::readMembers;
+        } else {
+            // Le constructeur lit l'en-tête : une erreur est signalée ici
+            this.source = new GZIPInputStream(buffered, BLOCK_SIZE);
+            this.inflaters = null;
+            task = this::inflateSequentially;
+        }
+        this.producer = daemon(task, "gzip-reader");
+        this.producer.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureBlock())
+            return -1;
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!ensureBlock())
+            return -1;
+        int count = Math.min(len, block.length - position);
+        System.arraycopy(block, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return block.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        producer.interrupt();
+        if (inflaters != null)
+            inflaters.shutdownNow();
+        source.close();
+    }
+
+    /**
+     * Passe au bloc suivant si le bloc courant est épuisé.
+     *
+     * @return Faux si et seulement si la fin des données est atteinte.
+     */
+    private boolean ensureBlock() throws IOException {
+        if (closed)
+            throw new IOException("stream closed");
+        if (failure != null)
+            throw failure;
+        while (position == block.length) {
+            if (finished)
+                return false;
+            byte[] next;
+            try {
+                next = blocks.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                failure = cause instanceof IOException ? (IOException) cause
+                        : new IOException(cause);
+                throw failure;
+            }
+            if (next == END) {
+                finished = true;
+                return false;
+            }
+            block = next;
+            position = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Décompresse le flot sur le fil producteur, bloc par bloc.
+     */
+    private void inflateSequentially() {
+        try {
+            while (true) {
+                byte[] buffer = new byte[BLOCK_SIZE];
+                int count = 0, read = 0;
+                while (count < BLOCK_SIZE
+                        && (read = source.read(buffer, count, BLOCK_SIZE
+                                - count)) >= 0)
+                    count += read;
+                if (count > 0)
+                    publish(CompletableFuture
+                            .completedFuture(count == BLOCK_SIZE ? buffer
+                                    : Arrays.copyOf(buffer, count)));
+                if (read < 0)
+                    break;
+            }
+            publish(CompletableFuture.completedFuture(END));
+        } catch (InterruptedException e) {
+            // Flot fermé par le lecteur
+        } catch (IOException e) {
+            publishFailure(e);
+        } catch (RuntimeException e) {
+            // Le décompresseur a pu être libéré par la fermeture du flot
+            publishFailure(new IOException(e));
+        }
+    }
+
+    /**
+     * Découpe le flot en membres BGZF et confie leur décompression aux fils
+     * de décompression.
+     */
+    private void readMembers() {
+        try {
+            byte[] member;
+            while ((member = readMember()) != null) {
+                byte[] compressed = member;
+                publish(inflaters.submit(() -> inflateMember(compressed)));
+            }
+            publish(CompletableFuture.completedFuture(END));
+        } catch (InterruptedException | RejectedExecutionException e) {
+            // Flot fermé par le lecteur
+        } catch (IOException e) {
+            publishFailure(e);
+        } finally {
+            // Les membres déjà soumis sont tout de même décompressés
+            inflaters.shutdown();
+        }
+    }
+
+    /**
+     * @return Le membre BGZF suivant, en-tête compris, ou null à la fin du
+     *         flot.
+     */
+    private byte[] readMember() throws IOException {
+        byte[] header = new byte[BGZF_HEADER_SIZE];
+        int count = readFully(source, header, 0, header.length);
+        if (count == 0)
+            return null;
+        if (count < header.length)
+            throw new EOFException("truncated BGZF header");
+        int size = memberSize(header);
+        if (size < 0)
+            throw new ZipException("not a BGZF member");
+        byte[] member = Arrays.copyOf(header, size);
+        if (readFully(source, member, header.length, size - header.length) < size
+                - header.length)
+            throw new EOFException("truncated BGZF member");
+        return member;
+    }
+
+    private static byte[] inflateMember(byte[] member) throws IOException {
+        int extraLength = unsignedShort(member, 10);
+        int dataStart = 12 + extraLength;
+        int trailer = member.length - 8;
+        long expectedCrc = unsignedInt(member, trailer);
+        int size = (int) unsignedInt(member, trailer + 4);
+        byte[] data = new byte[size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(member, dataStart, trailer - dataStart);
+            int count = 0;
+            while (count < size && !inflater.finished()) {
+                int inflated = inflater.inflate(data, count, size - count);
+                if (inflated == 0 && (inflater.needsInput()
+                        || inflater.needsDictionary()))
+                    throw new EOFException("truncated BGZF member");
+                count += inflated;
+            }
+            if (count != size)
+                throw new ZipException("invalid BGZF member size");
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if (crc.getValue() != expectedCrc)
+            throw new ZipException("corrupt BGZF member (bad CRC)");
+        return data;
+    }
+
+    private void publish(Future<byte[]> future) throws InterruptedException {
+        if (closed)
+            throw new InterruptedException();
+        blocks.put(future);
+    }
+
+    private void publishFailure(IOException exception) {
+        if (closed)
+            return;
+        CompletableFuture<byte[]> failure = new CompletableFuture<>();
+        failure.completeExceptionally(exception);
+        try {
+            publish(failure);
+        } catch (InterruptedException e) {
+            // Flot fermé par le lecteur
+        }
+    }
+
+    /**
+     * @return Vrai si le flot débute par un membre gzip portant le champ
+     *         supplémentaire BGZF, qui donne la taille du membre.
+     */
+    private static boolean isBGZF(BufferedInputStream stream)
+            throws IOException {
+        byte[] header = new byte[BGZF_HEADER_SIZE];
+        stream.mark(header.length);
+        int count = readFully(stream, header, 0, header.length);
+        stream.reset();
+        return count == header.length && memberSize(header) > 0;
+    }
+
+    /**
+     * @return La taille totale du membre BGZF dont l'en-tête est donné, ou -1
+     *         si l'en-tête n'est pas celui d'un membre BGZF.
+     */
+    private static int memberSize(byte[] header) {
+        boolean isGZip = (header[0] & 0xFF) == 31 && (header[1] & 0xFF) == 139
+                && header[2] == 8;
+        boolean hasExtra = (header[3] & 4) != 0;
+        if (!isGZip || !hasExtra || unsignedShort(header, 10) != 6
+                || header[12] != 'B' || header[13] != 'C'
+                || unsignedShort(header, 14) != 2)
+            return -1;
+        return unsignedShort(header, 16) + 1;
+    }
+
+    private static int readFully(InputStream stream, byte[] buffer,
+            int offset, int length) throws IOException {
+        int count = 0;
+        while (count < length) {
+            int read = stream.read(buffer, offset + count, length - count);
+            if (read < 0)
+                break;
+            count += read;
+        }
+        return count;
+    }
+
+    private static int unsignedShort(byte[] bytes, int index) {
+        return (bytes[index] & 0xFF) | (bytes[index + 1] & 0xFF) << 8;
+    }
+
+    private static long unsignedInt(byte[] bytes, int index) {
+        return unsignedShort(bytes, index)
+                | (long) unsignedShort(bytes, index + 2) << 16;
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
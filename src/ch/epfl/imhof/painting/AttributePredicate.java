@@ -0,0 +1,129 @@
+package ch.epfl.imhof.painting;
+
+import java.util.BitSet;
+import java.util.function.Predicate;
+
+import ch.epfl.imhof.AttributeIndex;
+import ch.epfl.imhof.Attributed;
+
+/**
+ * Prédicat portant sur les seuls attributs des entités (voir
+ * {@link Filters}), qui peut aussi être évalué d'un coup pour toutes les
+ * entités d'un {@link AttributeIndex index}. Ses combinaisons par
+ * {@link #and(Predicate) and}, {@link #or(Predicate) or} et
+ * {@link #negate() negate} avec d'autres prédicats de ce type le restent, et
+ * sont alors évaluées par des opérations sur des ensembles de bits.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+abstract class AttributePredicate implements Predicate<Attributed<?>> {
+
+    /**
+     * @param index
+     *            Index des attributs des entités
+     * @return Les positions des entités de l'index qui satisfont le
+     *         prédicat, dans un ensemble que l'appelant peut modifier.
+     */
+    abstract BitSet select(AttributeIndex index);
+
+    /**
+     * @return Un prédicat vrai pour les entités possédant l'attribut donné.
+     */
+    static AttributePredicate tagged(String key) {
+        return new AttributePredicate() {
+            @Override
+            public boolean test(Attributed<?> attributed) {
+                return attributed.hasAttribute(key);
+            }
+
+            @Override
+            BitSet select(AttributeIndex index) {
+                return index.withKey(key);
+            }
+        };
+    }
+
+    /**
+     * @return Un prédicat vrai pour les entités possédant l'attribut donné
+     *         avec l'une des valeurs données.
+     */
+    static AttributePredicate tagged(String key, String... values) {
+        String[] copy = values.clone();
+        return new AttributePredicate() {
+            @Override
+            public boolean test(Attributed<?> attributed) {
+                String value = attributed.attributeValue(key);
+                if (value != null)
+                    for (String candidate : copy)
+                        if (candidate.equals(value))
+                            return true;
+                return false;
+            }
+
+            @Override
+            BitSet select(AttributeIndex index) {
+                return index.withValue(key, copy);
+            }
+        };
+    }
+
+    @Override
+    public Predicate<Attributed<?>> and(
+            Predicate<? super Attributed<?>> other) {
+        if (!(other instanceof AttributePredicate))
+            return Predicate.super.and(other);
+        AttributePredicate first = this, second = (AttributePredicate) other;
+        return new AttributePredicate() {
+            @Override
+            public boolean test(Attributed<?> attributed) {
+                return first.test(attributed) && second.test(attributed);
+            }
+
+            @Override
+            BitSet select(AttributeIndex index) {
+                BitSet features = first.select(index);
+                features.and(second.select(index));
+                return features;
+            }
+        };
+    }
+
+    @Override
+    public Predicate<Attributed<?>> or(Predicate<? super Attributed<?>> other) {
+        if (!(other instanceof AttributePredicate))
+            return Predicate.super.or(other);
+        AttributePredicate first = this, second = (AttributePredicate) other;
+        return new AttributePredicate() {
+            @Override
+            public boolean test(Attributed<?> attributed) {
+                return first.test(attributed) || second.test(attributed);
+            }
+
+            @Override
+            BitSet select(AttributeIndex index) {
+                BitSet features = first.select(index);
+                features.or(second.select(index));
+                return features;
+            }
+        };
+    }
+
+    @Override
+    public Predicate<Attributed<?>> negate() {
+        AttributePredicate predicate = this;
+        return new AttributePredicate() {
+            @Override
+            public boolean test(Attributed<?> attributed) {
+                return !predicate.test(attributed);
+            }
+
+            @Override
+            BitSet select(AttributeIndex index) {
+                BitSet features = predicate.select(index);
+                features.flip(0, index.size());
+                return features;
+            }
+        };
+    }
+}
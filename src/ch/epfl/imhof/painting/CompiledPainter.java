@@ -0,0 +1,381 @@
+package ch.epfl.imhof.painting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Predicate;
+
+import ch.epfl.imhof.AttributeIndex;
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+/**
+ * Peintre compilé (voir {@link Painter#compiled()}) : l'arbre des peintres
+ * combinés par {@link Painter#above(Painter) above},
+ * {@link Painter#when(Predicate) when} et {@link Painter#layered() layered}
+ * est aplati en une liste ordonnée de règles, chacune associant à un peintre
+ * les entités qu'il doit dessiner.
+ *
+ * Chaque entité de la carte est classée une seule fois parmi les règles, en
+ * parcourant un arbre de filtres : un filtre faux écarte tout son
+ * sous-arbre, chaque prédicat n'est évalué qu'une fois par entité, et la
+ * couche d'une entité, lue dans l'{@link Map#polygonIndex() index} de la
+ * carte, permet de choisir directement la branche de cette couche. Les
+ * filtres portant sur les attributs sont résolus au moyen de cet index, que
+ * les cartes extraites par {@link Map#subMap(int[], int[]) subMap} partagent
+ * avec leur carte d'origine. Les règles sont ensuite dessinées dans l'ordre,
+ * chacune avec ses entités dans l'ordre de la carte, ce qui donne le même
+ * dessin que le peintre d'origine.
+ *
+ * Les peintres qui ne sont pas des combinaisons de peintres de la classe
+ * {@link Painter} sont conservés tels quels et reçoivent, comme avec
+ * {@link Painter#when(Predicate) when}, la carte des seules entités qui les
+ * concernent. Les instances sont non modifiables et peuvent être utilisées
+ * depuis plusieurs fils à la fois.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+final class CompiledPainter implements Painter {
+    // Peintres des règles, dans l'ordre du dessin
+    private final List<Painter> rules;
+    // Prédicats distincts, numérotés pour la mémorisation de leur valeur
+    private final List<Predicate<Attributed<?>>> predicates;
+    // Arbres de classement des polygones, resp. des polylignes, ou null
+    private final Node polygonTree, polyLineTree;
+
+    private CompiledPainter(Painter painter) {
+        this.rules = new ArrayList<>();
+        this.predicates = new ArrayList<>();
+        Compiler compiler = new Compiler();
+        Node[] trees = compiler.compile(painter);
+        this.polygonTree = trees[0];
+        this.polyLineTree = trees[1];
+    }
+
+    /**
+     * @param painter
+     *            Peintre à compiler
+     * @return Le peintre donné, compilé.
+     */
+    static CompiledPainter compile(Painter painter) {
+        return painter instanceof CompiledPainter ? (CompiledPainter) painter
+                : new CompiledPainter(painter);
+    }
+
+    /**
+     * @return Le nombre de règles du peintre.
+     */
+    int rulesCount() {
+        return rules.size();
+    }
+
+    @Override
+    public void drawMap(Map map, Canvas canvas) {
+        List<List<Attributed<Polygon>>> polygons = polygonTree == null ? empty()
+                : classify(polygonTree, map.polygons(), map.polygonIndex(),
+                        map::polygonPosition);
+        List<List<Attributed<PolyLine>>> polyLines = polyLineTree == null ? empty()
+                : classify(polyLineTree, map.polyLines(), map.polyLineIndex(),
+                        map::polyLinePosition);
+
+        for (int i = 0; i < rules.size(); i++) {
+            Painter rule = rules.get(i);
+            if (rule instanceof FeaturePainter) {
+                FeaturePainter painter = (FeaturePainter) rule;
+                for (Attributed<Polygon> polygon : polygons.get(i))
+                    painter.drawPolygon(polygon.value(), canvas);
+                for (Attributed<PolyLine> polyLine : polyLines.get(i))
+                    painter.drawPolyLine(polyLine.value(), canvas);
+            } else {
+                rule.drawMap(new Map(polyLines.get(i), polygons.get(i)),
+                        canvas);
+            }
+        }
+    }
+
+    /**
+     * @return Pour chaque règle, la liste des entités données qu'elle doit
+     *         dessiner, dans l'ordre, la position de chaque entité dans
+     *         l'index donné étant obtenue par la fonction donnée.
+     */
+    private <T> List<List<Attributed<T>>> classify(Node tree,
+            List<Attributed<T>> features, AttributeIndex index,
+            IntUnaryOperator positions) {
+        Classification<T> classification = new Classification<>(
+                rules.size(), predicates, index);
+        for (int i = 0; i < features.size(); i++) {
+            classification.moveTo(positions.applyAsInt(i));
+            tree.classify(features.get(i), classification);
+        }
+        return classification.buckets;
+    }
+
+    /**
+     * @return Une liste vide d'entités pour chaque règle.
+     */
+    private <T> List<List<Attributed<T>>> empty() {
+        return Collections.nCopies(rules.size(),
+                Collections.<Attributed<T>> emptyList());
+    }
+
+    /**
+     * Classement en cours des entités d'un type donné : listes des entités de
+     * chaque règle, et valeur des prédicats déjà évalués pour l'entité
+     * courante. Les prédicats portant sur les attributs sont évalués d'un
+     * coup pour toutes les entités de l'index de la carte lors de leur
+     * premier usage ; les entités sont repérées par leur position dans
+     * celui-ci, qui doit croître de l'une à la suivante.
+     */
+    private static final class Classification<T> {
+        private final List<List<Attributed<T>>> buckets;
+        private final List<Predicate<Attributed<?>>> predicates;
+        private final AttributeIndex index;
+        // Entités satisfaisant chaque prédicat portant sur les attributs
+        private final BitSet[] selections;
+        // Position de l'entité pour laquelle chaque autre prédicat a été
+        // évalué, plus un
+        private final int[] evaluatedFor;
+        private final boolean[] values;
+        // Position de l'entité courante dans l'index
+        private int feature = -1;
+
+        Classification(int rules, List<Predicate<Attributed<?>>> predicates,
+                AttributeIndex index) {
+            this.buckets = new ArrayList<>(rules);
+            for (int i = 0; i < rules; i++)
+                buckets.add(new ArrayList<>());
+            this.predicates = predicates;
+            this.index = index;
+            this.selections = new BitSet[predicates.size()];
+            this.evaluatedFor = new int[predicates.size()];
+            this.values = new boolean[predicates.size()];
+        }
+
+        void moveTo(int position) {
+            feature = position;
+        }
+
+        int layer() {
+            return index.layer(feature);
+        }
+
+        boolean test(int predicate, Attributed<?> attributed) {
+            Predicate<Attributed<?>> tested = predicates.get(predicate);
+            if (tested instanceof AttributePredicate) {
+                if (selections[predicate] == null)
+                    selections[predicate] = ((AttributePredicate) tested)
+                            .select(index);
+                return selections[predicate].get(feature);
+            }
+            if (evaluatedFor[predicate] != feature + 1) {
+                values[predicate] = tested.test(attributed);
+                evaluatedFor[predicate] = feature + 1;
+            }
+            return values[predicate];
+        }
+
+        @SuppressWarnings("unchecked")
+        void add(int rule, Attributed<?> attributed) {
+            buckets.get(rule).add((Attributed<T>) attributed);
+        }
+    }
+
+    /**
+     * Nœud de l'arbre de classement.
+     */
+    private interface Node {
+        void classify(Attributed<?> feature, Classification<?> classification);
+    }
+
+    /**
+     * Feuille ajoutant l'entité à une règle.
+     */
+    private static final class Rule implements Node {
+        private final int rule;
+
+        Rule(int rule) {
+            this.rule = rule;
+        }
+
+        @Override
+        public void classify(Attributed<?> feature,
+                Classification<?> classification) {
+            classification.add(rule, feature);
+        }
+    }
+
+    /**
+     * Nœud ne transmettant à son enfant que les entités satisfaisant un
+     * prédicat.
+     */
+    private static final class Filter implements Node {
+        private final int predicate;
+        private final Node child;
+
+        Filter(int predicate, Node child) {
+            this.predicate = predicate;
+            this.child = child;
+        }
+
+        @Override
+        public void classify(Attributed<?> feature,
+                Classification<?> classification) {
+            if (classification.test(predicate, feature))
+                child.classify(feature, classification);
+        }
+    }
+
+    /**
+     * Nœud transmettant les entités à tous ses enfants.
+     */
+    private static final class Sequence implements Node {
+        private final Node[] children;
+
+        Sequence(List<Node> children) {
+            this.children = children.toArray(new Node[children.size()]);
+        }
+
+        @Override
+        public void classify(Attributed<?> feature,
+                Classification<?> classification) {
+            for (Node child : children)
+                child.classify(feature, classification);
+        }
+    }
+
+    /**
+     * Nœud regroupant des filtres par couche : la couche de l'entité est
+     * calculée une fois, puis l'entité est transmise à la seule branche de
+     * cette couche.
+     */
+    private static final class LayerSwitch implements Node {
+        private final HashMap<Integer, Node> layers;
+
+        LayerSwitch(HashMap<Integer, Node> layers) {
+            this.layers = layers;
+        }
+
+        @Override
+        public void classify(Attributed<?> feature,
+                Classification<?> classification) {
+            Node child = layers.get(classification.layer());
+            if (child != null)
+                child.classify(feature, classification);
+        }
+    }
+
+    /**
+     * Compilateur de l'arbre des peintres, qui numérote les règles dans
+     * l'ordre du dessin.
+     */
+    private final class Compiler {
+        private final IdentityHashMap<Predicate<Attributed<?>>, Integer> predicateIndices = new IdentityHashMap<>();
+
+        /**
+         * @return Les arbres de classement des polygones et des polylignes
+         *         du peintre donné, null s'il n'en dessine pas.
+         */
+        Node[] compile(Painter painter) {
+            if (painter instanceof StackedPainter) {
+                StackedPainter stacked = (StackedPainter) painter;
+                Node[] bottom = compile(stacked.bottom());
+                Node[] top = compile(stacked.top());
+                return new Node[] { sequence(bottom[0], top[0]),
+                        sequence(bottom[1], top[1]) };
+            }
+            if (painter instanceof FilteredPainter) {
+                FilteredPainter filtered = (FilteredPainter) painter;
+                Node[] children = compile(filtered.painter());
+                Predicate<Attributed<?>> predicate = filtered.predicate();
+                return new Node[] { filter(predicate, children[0]),
+                        filter(predicate, children[1]) };
+            }
+
+            Node rule = new Rule(rules.size());
+            rules.add(painter);
+            if (painter instanceof FeaturePainter) {
+                FeaturePainter feature = (FeaturePainter) painter;
+                return new Node[] { feature.drawsPolygons() ? rule : null,
+                        feature.drawsPolyLines() ? rule : null };
+            }
+            return new Node[] { rule, rule };
+        }
+
+        private Node filter(Predicate<Attributed<?>> predicate, Node child) {
+            if (child == null)
+                return null;
+            Integer index = predicateIndices.get(predicate);
+            if (index == null) {
+                index = predicates.size();
+                predicates.add(predicate);
+                predicateIndices.put(predicate, index);
+            }
+            return new Filter(index, child);
+        }
+
+        /**
+         * @return Un nœud transmettant les entités aux deux nœuds donnés,
+         *         dont les séquences sont mises à plat et les filtres par
+         *         couche regroupés.
+         */
+        private Node sequence(Node first, Node second) {
+            if (first == null)
+                return second;
+            if (second == null)
+                return first;
+
+            List<Node> nodes = new ArrayList<>();
+            for (Node node : new Node[] { first, second }) {
+                if (node instanceof Sequence)
+                    nodes.addAll(Arrays.asList(((Sequence) node).children));
+                else
+                    nodes.add(node);
+            }
+            List<Node> children = new ArrayList<>();
+            HashMap<Integer, List<Node>> layers = new HashMap<>();
+            for (Node node : nodes) {
+                Integer layer = layerOf(node);
+                if (layer != null) {
+                    layers.computeIfAbsent(layer, k -> new ArrayList<>()).add(
+                            ((Filter) node).child);
+                } else if (node instanceof LayerSwitch) {
+                    ((LayerSwitch) node).layers.forEach((l, child) -> layers
+                            .computeIfAbsent(l, k -> new ArrayList<>()).add(
+                                    child));
+                } else {
+                    children.add(node);
+                }
+            }
+            if (!layers.isEmpty()) {
+                HashMap<Integer, Node> switchLayers = new HashMap<>();
+                layers.forEach((layer, branches) -> switchLayers.put(layer,
+                        branches.size() == 1 ? branches.get(0) : new Sequence(
+                                branches)));
+                children.add(new LayerSwitch(switchLayers));
+            }
+            return children.size() == 1 ? children.get(0) : new Sequence(
+                    children);
+        }
+
+        /**
+         * @return La couche du nœud donné s'il est un filtre par couche,
+         *         null sinon.
+         */
+        private Integer layerOf(Node node) {
+            if (!(node instanceof Filter))
+                return null;
+            Predicate<Attributed<?>> predicate = predicates
+                    .get(((Filter) node).predicate);
+            return predicate instanceof LayerPredicate ? ((LayerPredicate) predicate)
+                    .layer() : null;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package ch.epfl.imhof.painting;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.concurrent.ExecutorService;
+
+import ch.epfl.imhof.Parallel;
+
+/**
+ * Combine des images, pixel par pixel, en travaillant directement sur leurs
+ * tableaux d'entiers. Les lignes sont parcourues dans l'ordre de la mémoire,
+ * par bandes horizontales traitées en parallèle, sans allouer d'objet par
+ * pixel.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+public final class Compositor {
+    private Compositor() {
+    }
+
+    /**
+     * Multiplie deux images composante par composante, comme le fait
+     * {@link Color#multiply(Color, Color)}, avec le même arrondi que
+     * {@link Color#toJavaColor(Color)}.
+     *
+     * @param image1
+     *            Première image (p.ex. la carte)
+     * @param image2
+     *            Seconde image (p.ex. le relief), de même taille
+     * @param executor
+     *            Exécuteur sur lequel traiter les bandes
+     * @return Une nouvelle image RGB, produit des deux images
+     * @throws IllegalArgumentException
+     *             si les images n'ont pas la même taille
+     */
+    public static BufferedImage multiply(BufferedImage image1,
+            BufferedImage image2, ExecutorService executor) {
+        int width = image1.getWidth(), height = image1.getHeight();
+        if (image2.getWidth() != width || image2.getHeight() != height)
+            throw new IllegalArgumentException("images of different sizes");
+        BufferedImage result = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_RGB);
+        Pixels pixels1 = new Pixels(image1), pixels2 = new Pixels(image2);
+        Pixels output = new Pixels(result);
+
+        Parallel.inStripes(executor, height, (firstRow, lastRow) -> {
+            for (int y = firstRow; y < lastRow; y++)
+                multiplyRow(pixels1, pixels2, output, y, width);
+        });
+        return result;
+    }
+
+    private static void multiplyRow(Pixels pixels1, Pixels pixels2,
+            Pixels output, int y, int width) {
+        int[] data1 = pixels1.data, data2 = pixels2.data, out = output.data;
+        int index1 = pixels1.index(y), index2 = pixels2.index(y);
+        int outIndex = output.index(y);
+        for (int x = 0; x < width; x++) {
+            int rgb1 = data1[index1 + x], rgb2 = data2[index2 + x];
+            out[outIndex + x] = multiply(rgb1 >> 16 & 0xFF, rgb2 >> 16 & 0xFF) << 16
+                    | multiply(rgb1 >> 8 & 0xFF, rgb2 >> 8 & 0xFF) << 8
+                    | multiply(rgb1 & 0xFF, rgb2 & 0xFF);
+        }
+    }
+
+    /**
+     * @return Le produit de deux composantes sur 8 bits, arrondi au plus
+     *         proche.
+     */
+    private static int multiply(int component1, int component2) {
+        return (component1 * component2 + 127) / 255;
+    }
+
+    /**
+     * Tableau des pixels RGB d'une image, éventuellement partagé avec une
+     * image plus grande dont elle est une portion.
+     */
+    private static final class Pixels {
+        private final int[] data;
+        private final int offset, stride;
+
+        Pixels(BufferedImage image) {
+            if (image.getType() != BufferedImage.TYPE_INT_RGB
+                    && image.getType() != BufferedImage.TYPE_INT_ARGB) {
+                // Conversion des autres formats, sur fond blanc
+                BufferedImage converted = new BufferedImage(image.getWidth(),
+                        image.getHeight(), BufferedImage.TYPE_INT_RGB);
+                Graphics2D graphics = converted.createGraphics();
+                graphics.drawImage(image, 0, 0, java.awt.Color.WHITE, null);
+                graphics.dispose();
+                image = converted;
+            }
+            Raster raster = image.getRaster();
+            DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+            this.data = buffer.getData();
+            this.stride = ((SinglePixelPackedSampleModel) raster
+                    .getSampleModel()).getScanlineStride();
+            this.offset = buffer.getOffset()
+                    - raster.getSampleModelTranslateY() * stride
+                    - raster.getSampleModelTranslateX();
+        }
+
+        int index(int y) {
+            return offset + y * stride;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package ch.epfl.imhof.painting;
+
+import java.util.Arrays;
+
+/**
+ * Simplification de polylignes par l'algorithme de Douglas-Peucker : seuls
+ * sont conservés les sommets qui s'écartent de plus de la tolérance donnée
+ * du segment joignant les sommets conservés qui les entourent. Les
+ * coordonnées sont passées dans deux tableaux, qui sont compactés sur
+ * place.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+final class DouglasPeucker {
+
+    private DouglasPeucker() {
+    }
+
+    /**
+     * Simplifie la polyligne donnée en ne gardant, au début des tableaux et
+     * dans l'ordre, que ses sommets significatifs. Les extrémités d'une
+     * polyligne ouverte sont toujours conservées. Une polyligne fermée qui
+     * se réduirait à moins de trois sommets est laissée intacte.
+     *
+     * @param xs
+     *            Abscisses des sommets
+     * @param ys
+     *            Ordonnées des sommets
+     * @param count
+     *            Nombre de sommets, au début des tableaux
+     * @param closed
+     *            Vrai si la polyligne est fermée, son dernier sommet étant
+     *            alors relié au premier
+     * @param tolerance
+     *            Ecart maximal toléré entre la polyligne et sa version
+     *            simplifiée
+     * @return Le nombre de sommets conservés.
+     */
+    static int simplify(double[] xs, double[] ys, int count, boolean closed,
+            double tolerance) {
+        if (count <= (closed ? 3 : 2))
+            return count;
+
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        // Une polyligne fermée est découpée en deux au sommet le plus
+        // éloigné du premier, l'indice count désignant le premier sommet
+        int[] stack = new int[64];
+        int size = 0;
+        if (closed) {
+            int farthest = 0;
+            double farthestDistance = -1;
+            for (int i = 1; i < count; i++) {
+                double dx = xs[i] - xs[0], dy = ys[i] - ys[0];
+                double distance = dx * dx + dy * dy;
+                if (distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+            keep[farthest] = true;
+            stack[size++] = 0;
+            stack[size++] = farthest;
+            stack[size++] = farthest;
+            stack[size++] = count;
+        } else {
+            keep[count - 1] = true;
+            stack[size++] = 0;
+            stack[size++] = count - 1;
+        }
+
+        double squaredTolerance = tolerance * tolerance;
+        while (size > 0) {
+            int last = stack[--size], first = stack[--size];
+            int end = last == count ? 0 : last;
+            int farthest = -1;
+            double farthestDistance = squaredTolerance;
+            for (int i = first + 1; i < last; i++) {
+                double distance = squaredDistance(xs[i], ys[i], xs[first],
+                        ys[first], xs[end], ys[end]);
+                if (distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                if (size + 4 > stack.length)
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                stack[size++] = first;
+                stack[size++] = farthest;
+                stack[size++] = farthest;
+                stack[size++] = last;
+            }
+        }
+
+        int kept = 0;
+        for (int i = 0; i < count; i++)
+            if (keep[i])
+                kept++;
+        if (closed && kept < 3)
+            return count;
+        kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                xs[kept] = xs[i];
+                ys[kept] = ys[i];
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * @return Le carré de la distance entre le point (x, y) et le segment
+     *         donné.
+     */
+    private static double squaredDistance(double x, double y, double x1,
+            double y1, double x2, double y2) {
+        double dx = x2 - x1, dy = y2 - y1;
+        double length = dx * dx + dy * dy;
+        double t = length == 0 ? 0 : ((x - x1) * dx + (y - y1) * dy)
+                / length;
+        t = Math.max(0, Math.min(1, t));
+        double ex = x1 + t * dx - x, ey = y1 + t * dy - y;
+        return ex * ex + ey * ey;
+    }
+}
@@ -0,0 +1,106 @@
+package ch.epfl.imhof.painting;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+/**
+ * Peintre élémentaire, qui dessine chaque entité de la carte
+ * indépendamment des autres : il peut donc aussi dessiner les entités une à
+ * une, ce dont profite le {@link CompiledPainter peintre compilé}.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+abstract class FeaturePainter implements Painter {
+    private final boolean drawsPolygons, drawsPolyLines;
+
+    private FeaturePainter(boolean drawsPolygons, boolean drawsPolyLines) {
+        this.drawsPolygons = drawsPolygons;
+        this.drawsPolyLines = drawsPolyLines;
+    }
+
+    /**
+     * @param color
+     *            Couleur des polygones
+     * @return Un peintre remplissant les polygones de la couleur donnée.
+     */
+    static FeaturePainter polygon(Color color) {
+        return new FeaturePainter(true, false) {
+            @Override
+            void drawPolygon(Polygon polygon, Canvas canvas) {
+                canvas.drawPolygon(color, polygon);
+            }
+        };
+    }
+
+    /**
+     * @param style
+     *            Style des lignes
+     * @return Un peintre traçant les polylignes dans le style donné.
+     */
+    static FeaturePainter line(LineStyle style) {
+        return new FeaturePainter(false, true) {
+            @Override
+            void drawPolyLine(PolyLine polyLine, Canvas canvas) {
+                canvas.drawPolyLine(style, polyLine);
+            }
+        };
+    }
+
+    /**
+     * @param style
+     *            Style des bordures
+     * @return Un peintre traçant l'enveloppe et les trous des polygones dans
+     *         le style donné.
+     */
+    static FeaturePainter outline(LineStyle style) {
+        return new FeaturePainter(true, false) {
+            @Override
+            void drawPolygon(Polygon polygon, Canvas canvas) {
+                canvas.drawPolyLine(style, polygon.shell());
+                for (PolyLine hole : polygon.holes())
+                    canvas.drawPolyLine(style, hole);
+            }
+        };
+    }
+
+    /**
+     * @return Vrai si le peintre dessine les polygones.
+     */
+    boolean drawsPolygons() {
+        return drawsPolygons;
+    }
+
+    /**
+     * @return Vrai si le peintre dessine les polylignes.
+     */
+    boolean drawsPolyLines() {
+        return drawsPolyLines;
+    }
+
+    /**
+     * Dessine le polygone donné sur la toile donnée, si le peintre dessine
+     * les polygones.
+     */
+    void drawPolygon(Polygon polygon, Canvas canvas) {
+    }
+
+    /**
+     * Dessine la polyligne donnée sur la toile donnée, si le peintre dessine
+     * les polylignes.
+     */
+    void drawPolyLine(PolyLine polyLine, Canvas canvas) {
+    }
+
+    @Override
+    public void drawMap(Map map, Canvas canvas) {
+        if (drawsPolygons)
+            for (Attributed<Polygon> polygon : map.polygons())
+                drawPolygon(polygon.value(), canvas);
+        if (drawsPolyLines)
+            for (Attributed<PolyLine> polyLine : map.polyLines())
+                drawPolyLine(polyLine.value(), canvas);
+    }
+}
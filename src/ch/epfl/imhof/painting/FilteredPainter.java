@@ -0,0 +1,58 @@
+package ch.epfl.imhof.painting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+/**
+ * Peintre ne dessinant, au moyen d'un autre peintre, que les entités de la
+ * carte qui satisfont un prédicat (voir {@link Painter#when(Predicate)}).
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+final class FilteredPainter implements Painter {
+    private final Painter painter;
+    private final Predicate<Attributed<?>> predicate;
+
+    /**
+     * @param painter
+     *            Peintre des entités retenues
+     * @param predicate
+     *            Prédicat que les entités dessinées doivent satisfaire
+     */
+    FilteredPainter(Painter painter, Predicate<Attributed<?>> predicate) {
+        this.painter = painter;
+        this.predicate = predicate;
+    }
+
+    /**
+     * @return Le peintre des entités retenues.
+     */
+    Painter painter() {
+        return painter;
+    }
+
+    /**
+     * @return Le prédicat que les entités dessinées doivent satisfaire.
+     */
+    Predicate<Attributed<?>> predicate() {
+        return predicate;
+    }
+
+    @Override
+    public void drawMap(Map map, Canvas canvas) {
+        List<Attributed<Polygon>> filtredPolygons = new ArrayList<>(
+                map.polygons());
+        List<Attributed<PolyLine>> filtredPolyLines = new ArrayList<>(
+                map.polyLines());
+        filtredPolygons.removeIf(x -> !predicate.test(x));
+        filtredPolyLines.removeIf(x -> !predicate.test(x));
+        painter.drawMap(new Map(filtredPolyLines, filtredPolygons), canvas);
+    }
+}
@@ -24,7 +24,7 @@ public final class Filters {
      *         de sa valeur.
      */
     public static Predicate<Attributed<?>> tagged(String attribute) {
-        return attributed -> attributed.hasAttribute(attribute);
+        return AttributePredicate.tagged(attribute);
     }
 
     /**
@@ -39,16 +39,7 @@ public final class Filters {
      *         données.
      */
     public static Predicate<Attributed<?>> tagged(String attribute, String... values) {
-        return attributed -> {
-            if (tagged(attribute).test(attributed)) {
-                String attrValue = attributed.attributeValue(attribute);
-                for (int i = 0; i < values.length; i++) {
-                    if (values[i].equals(attrValue))
-                        return true;
-                }
-            }
-            return false;
-        };
+        return AttributePredicate.tagged(attribute, values);
     }
 
     /**
@@ -59,7 +50,7 @@ public final class Filters {
      *         attribuée appartenant cette couche.
      */
     public static Predicate<Attributed<?>> onLayer(int layer) {
-        return attributed -> (attributed.attributeValue("layer", 0) == layer);
+        return new LayerPredicate(layer);
     }
 
 }
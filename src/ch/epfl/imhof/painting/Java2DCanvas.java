@@ -5,12 +5,15 @@ import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
 
 import java.awt.BasicStroke;
 import java.awt.Graphics2D;
+import java.awt.Shape;
 import java.awt.geom.Area;
 import java.awt.geom.Path2D;
 import java.awt.image.BufferedImage;
-import java.util.Iterator;
-import java.util.function.Function;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import ch.epfl.imhof.geometry.BoundingBox;
 import ch.epfl.imhof.geometry.ClosedPolyLine;
 import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.geometry.PolyLine;
@@ -19,14 +22,60 @@ import ch.epfl.imhof.geometry.Polygon;
 /**
  * Représente un toile en deux dimensions
  *
+ * Les entités dont le rectangle englobant, élargi de l'épaisseur du trait,
+ * ne recoupe pas la partie visible de la toile ne sont pas dessinées, et les
+ * autres sont simplifiées (voir {@link DouglasPeucker}) avec une tolérance de
+ * {@value #SIMPLIFICATION_TOLERANCE} pixel avant leur dessin. Ces deux
+ * traitements ne dépendent que de l'entité et de la toile entière, de sorte
+ * que les portions d'une même toile se raccordent toujours exactement.
+ *
+ * Une même entité étant souvent dessinée plusieurs fois (bordure et
+ * intérieur d'une route, remplissage et contour d'un bâtiment), les chemins
+ * construits pour chaque géométrie sont conservés, ainsi que les traits et
+ * couleurs Java2D de chaque style, dans des caches de taille bornée qui
+ * oublient les éléments les moins récemment utilisés. Les géométries et les
+ * styles y sont identifiés par leur instance.
+ *
  * @author Ben Lalah Ali
  * @author Alami Idrissi Ali
  */
 public final class Java2DCanvas implements Canvas {
 
+    /**
+     * Ecart maximal entre une entité et sa version simplifiée, en pixels.
+     */
+    public static final double SIMPLIFICATION_TOLERANCE = 0.25;
+    /**
+     * Nombre maximum de géométries dont le chemin est conservé.
+     */
+    public static final int MAX_CACHED_SHAPES = 16384;
+    /**
+     * Nombre maximum de styles de ligne, resp. de couleurs, dont le trait,
+     * resp. la couleur Java2D, est conservé.
+     */
+    public static final int MAX_CACHED_STYLES = 256;
+    // Rapport maximal entre la tolérance de simplification d'un anneau et
+    // le plus petit côté de son rectangle englobant
+    private static final double RING_TOLERANCE_RATIO = 1 / 32d;
+    // Rapport maximal entre la longueur d'un raccord en pointe et l'épaisseur
+    // du trait
+    private static final float MITER_LIMIT = 10f;
+
     private final Graphics2D graphics;
     private final BufferedImage image;
-    private Function<Point, Point> rebasing;
+    // Changement de repère du plan vers la toile, en points (1/72 de pouce)
+    private final double scaleX, offsetX, scaleY, offsetY;
+    // Partie visible de la toile, en points
+    private final double visibleMinX, visibleMinY, visibleMaxX, visibleMaxY;
+    // Taille d'un pixel, en points
+    private final double pixel;
+    // Sommets de l'entité en cours de dessin, en points
+    private double[] xs = new double[64], ys = new double[64];
+    // Chemins des polylignes, resp. zones des polygones à trous
+    private final Map<PolyLine, Path2D> paths = cache(MAX_CACHED_SHAPES);
+    private final Map<Polygon, Area> areas = cache(MAX_CACHED_SHAPES);
+    private final Map<LineStyle, BasicStroke> strokes = cache(MAX_CACHED_STYLES);
+    private final Map<Color, java.awt.Color> colors = cache(MAX_CACHED_STYLES);
 
     /**
      * Construction d'une toile à deux dimensions
@@ -46,60 +95,191 @@ public final class Java2DCanvas implements Canvas {
      */
     public Java2DCanvas(Point bl, Point tr, int width, int height,
             int resolution, Color backgroundColor) {
-        this.image = new BufferedImage(width, height,
-                BufferedImage.TYPE_INT_RGB);
+        this(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), 0,
+                0, bl, tr, width, height, resolution, backgroundColor);
+    }
+
+    /**
+     * Construction d'une toile dessinant la portion d'une toile plus grande
+     * qui commence au pixel donné, dans l'image donnée. Les coordonnées sont
+     * celles de la toile entière, de sorte que des portions adjacentes se
+     * raccordent exactement.
+     * 
+     * @param image
+     *            Image de la portion, de la taille de celle-ci
+     * @param x
+     *            Abscisse, en pixels, de la portion dans la toile entière
+     * @param y
+     *            Ordonnée, en pixels, de la portion dans la toile entière
+     * @param bl
+     *            Point bas gauche de la toile entière en coordonnées du plan
+     * @param tr
+     *            Point haut droit de la toile entière en coordonnées du plan
+     * @param width
+     *            Largeur en pixels de la toile entière
+     * @param height
+     *            Hauteur en pixels de la toile entière
+     * @param resolution
+     *            résolution de la toile
+     * @param backgroundColor
+     *            Couleur du fond de la toile
+     */
+    Java2DCanvas(BufferedImage image, int x, int y, Point bl, Point tr,
+            int width, int height, int resolution, Color backgroundColor) {
+        this.image = image;
         this.graphics = this.image.createGraphics();
-        this.rebasing = Point.alignedCoordinateChange(bl, new Point(0, height
-                / (resolution / 72d)), tr, new Point(
-                width / (resolution / 72d), 0));
+        this.pixel = 72d / resolution;
+        this.scaleX = width * pixel / (tr.x() - bl.x());
+        this.offsetX = -bl.x() * scaleX;
+        this.scaleY = -height * pixel / (tr.y() - bl.y());
+        this.offsetY = -tr.y() * scaleY;
+        this.visibleMinX = x * pixel;
+        this.visibleMinY = y * pixel;
+        this.visibleMaxX = (x + image.getWidth()) * pixel;
+        this.visibleMaxY = (y + image.getHeight()) * pixel;
         graphics.setColor(Color.toJavaColor(backgroundColor));
-        graphics.fillRect(0, 0, width, height);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.translate(-x, -y);
         graphics.scale(resolution / 72d, resolution / 72d);
         graphics.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
     }
 
     @Override
     public void drawPolyLine(LineStyle style, PolyLine polyline) {
-        BasicStroke stroke = new BasicStroke(style.getWidth(), style
-                .getLineCap().ordinal(), style.getLineJoin().ordinal(), 10f,
-                (style.getAlternance().length == 0) ? null : style
-                        .getAlternance(), 0f);
+        if (!isVisible(polyline.boundingBox(), strokeReach(style)))
+            return;
+        BasicStroke stroke = strokes.get(style);
+        if (stroke == null) {
+            stroke = new BasicStroke(style.getWidth(), style.getLineCap()
+                    .ordinal(), style.getLineJoin().ordinal(), MITER_LIMIT,
+                    (style.getAlternance().length == 0) ? null : style
+                            .getAlternance(), 0f);
+            strokes.put(style, stroke);
+        }
         graphics.setStroke(stroke);
-        graphics.setColor(Color.toJavaColor(style.getColor()));
-        Path2D line = drawShape(polyline, polyline.isClosed());
-        graphics.draw(line);
+        graphics.setColor(javaColor(style.getColor()));
+        graphics.draw(drawShape(polyline));
     }
 
     @Override
     public void drawPolygon(Color color, Polygon polygon) {
-        // Dessine l'enveloppe
-        graphics.setColor(Color.toJavaColor(color));
-        Path2D shell = drawShape(polygon.shell(), polygon.shell().isClosed());
-        Area area = new Area(shell);
-        // Dessine les trous
-        for (ClosedPolyLine hole : polygon.holes())
-            area.subtract(new Area(drawShape(hole, hole.isClosed())));
-        graphics.fill(area);
+        if (!isVisible(polygon.shell().boundingBox(), 0))
+            return;
+        graphics.setColor(javaColor(color));
+        Shape shape;
+        if (polygon.holes().isEmpty()) {
+            shape = drawShape(polygon.shell());
+        } else {
+            Area area = areas.get(polygon);
+            if (area == null) {
+                // Dessine l'enveloppe
+                area = new Area(drawShape(polygon.shell()));
+                // Dessine les trous, sauf ceux qui ne sont pas visibles
+                for (ClosedPolyLine hole : polygon.holes())
+                    if (isVisible(hole.boundingBox(), 0))
+                        area.subtract(new Area(drawShape(hole)));
+                areas.put(polygon, area);
+            }
+            shape = area;
+        }
+        graphics.fill(shape);
+    }
+
+    /**
+     * @param style
+     *            Style de ligne
+     * @return La distance maximale, en points, à laquelle un trait du style
+     *         donné peut s'étendre au-delà du rectangle englobant de sa
+     *         polyligne.
+     */
+    static double strokeReach(LineStyle style) {
+        // Un raccord en pointe peut s'étendre jusqu'à MITER_LIMIT demi-
+        // épaisseurs du sommet, une terminaison carrée jusqu'à racine de
+        // deux
+        double reach = style.getLineJoin() == LineStyle.LineJoin.Miter ? MITER_LIMIT
+                : Math.sqrt(2);
+        return 0.5 * style.getWidth() * reach;
+    }
+
+    /**
+     * @return La couleur Java2D correspondant à la couleur donnée.
+     */
+    private java.awt.Color javaColor(Color color) {
+        java.awt.Color javaColor = colors.get(color);
+        if (javaColor == null) {
+            javaColor = Color.toJavaColor(color);
+            colors.put(color, javaColor);
+        }
+        return javaColor;
+    }
+
+    /**
+     * @param box
+     *            Rectangle englobant d'une entité, en coordonnées du plan
+     * @param margin
+     *            Marge autour du rectangle, en points
+     * @return Vrai si le rectangle élargi de la marge donnée, et d'un pixel
+     *         pour l'anti-crénelage, recoupe la partie visible de la toile.
+     */
+    private boolean isVisible(BoundingBox box, double margin) {
+        double x1 = box.minX() * scaleX + offsetX;
+        double x2 = box.maxX() * scaleX + offsetX;
+        // L'axe des ordonnées de la toile est dirigé vers le bas
+        double y1 = box.maxY() * scaleY + offsetY;
+        double y2 = box.minY() * scaleY + offsetY;
+        margin += pixel;
+        return x1 - margin <= visibleMaxX && x2 + margin >= visibleMinX
+                && y1 - margin <= visibleMaxY && y2 + margin >= visibleMinY;
     }
 
     /**
      * 
      * @param shape
      *            polyligne à dessiner
-     * @param close
-     *            indique si le chemin est fermé
      * @return chemin en deux dimensions représentant le polyligne donné en
-     *         paramètre
+     *         paramètre, simplifié, construit lors de la première demande
      */
-    private Path2D drawShape(PolyLine shape, boolean close) {
-        Path2D path = new Path2D.Double();
-        Iterator<Point> iterator = shape.points().iterator();
-        Point initialPoint = rebasing.apply(iterator.next());
-        path.moveTo(initialPoint.x(), initialPoint.y());
-        while (iterator.hasNext()) {
-            Point point = rebasing.apply(iterator.next());
-            path.lineTo(point.x(), point.y());
+    private Path2D drawShape(PolyLine shape) {
+        Path2D path = paths.get(shape);
+        if (path == null) {
+            path = buildShape(shape);
+            paths.put(shape, path);
         }
+        return path;
+    }
+
+    private Path2D buildShape(PolyLine shape) {
+        boolean close = shape.isClosed();
+        List<Point> points = shape.points();
+        int count = points.size();
+        if (xs.length < count) {
+            xs = new double[Math.max(count, 2 * xs.length)];
+            ys = new double[xs.length];
+        }
+        for (int i = 0; i < count; i++) {
+            Point point = points.get(i);
+            xs[i] = point.x() * scaleX + offsetX;
+            ys[i] = point.y() * scaleY + offsetY;
+        }
+        double tolerance = SIMPLIFICATION_TOLERANCE * pixel;
+        if (close) {
+            // Le contour simplifié s'écarte de l'anneau d'au plus la
+            // tolérance, vers l'intérieur (sommets saillants écartés) comme
+            // vers l'extérieur (sommets rentrants écartés). Pour un anneau
+            // de quelques pixels, un tel écart change nettement sa forme et
+            // sa surface : la tolérance est bornée par une fraction de sa
+            // taille, ce qui borne sa déformation relative
+            BoundingBox box = shape.boundingBox();
+            tolerance = Math.min(tolerance, RING_TOLERANCE_RATIO
+                    * Math.min((box.maxX() - box.minX()) * scaleX,
+                            (box.minY() - box.maxY()) * scaleY));
+        }
+        count = DouglasPeucker.simplify(xs, ys, count, close, tolerance);
+
+        Path2D path = new Path2D.Double(Path2D.WIND_NON_ZERO, count);
+        path.moveTo(xs[0], ys[0]);
+        for (int i = 1; i < count; i++)
+            path.lineTo(xs[i], ys[i]);
         if (close)
             path.closePath();
         return path;
@@ -109,4 +289,20 @@ public final class Java2DCanvas implements Canvas {
         return image;
     }
 
+    /**
+     * @return Une table associative vide, limitée au nombre d'éléments
+     *         donné, qui oublie l'élément le moins récemment utilisé lorsque
+     *         cette limite est dépassée.
+     */
+    private static <K, V> Map<K, V> cache(int maxSize) {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
 }
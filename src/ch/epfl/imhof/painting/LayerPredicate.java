@@ -0,0 +1,44 @@
+package ch.epfl.imhof.painting;
+
+import java.util.BitSet;
+
+import ch.epfl.imhof.AttributeIndex;
+import ch.epfl.imhof.Attributed;
+
+/**
+ * Prédicat vrai pour les entités d'une couche donnée (voir
+ * {@link Filters#onLayer(int)}). Le numéro de la couche reste accessible, ce
+ * qui permet au {@link CompiledPainter peintre compilé} de regrouper les
+ * filtres par couche.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+final class LayerPredicate extends AttributePredicate {
+    private final int layer;
+
+    /**
+     * @param layer
+     *            Numéro de couche
+     */
+    LayerPredicate(int layer) {
+        this.layer = layer;
+    }
+
+    /**
+     * @return Le numéro de la couche.
+     */
+    int layer() {
+        return layer;
+    }
+
+    @Override
+    public boolean test(Attributed<?> attributed) {
+        return attributed.attributeValue("layer", 0) == layer;
+    }
+
+    @Override
+    BitSet select(AttributeIndex index) {
+        return index.onLayer(layer);
+    }
+}
@@ -6,9 +6,6 @@ import java.util.function.Predicate;
 
 import ch.epfl.imhof.Attributed;
 import ch.epfl.imhof.Map;
-import ch.epfl.imhof.geometry.ClosedPolyLine;
-import ch.epfl.imhof.geometry.PolyLine;
-import ch.epfl.imhof.geometry.Polygon;
 import ch.epfl.imhof.painting.LineStyle.LineCap;
 import ch.epfl.imhof.painting.LineStyle.LineJoin;
 
@@ -28,11 +25,7 @@ public interface Painter {
      * @return Un peintre des polygones
      */
     public static Painter polygon(Color backgroundColor) {
-        return (map, canvas) -> {
-            List<Attributed<Polygon>> polygons = map.polygons();
-            for (Attributed<Polygon> polygon : polygons)
-                canvas.drawPolygon(backgroundColor, polygon.value());
-        };
+        return FeaturePainter.polygon(backgroundColor);
     }
 
     /**
@@ -42,10 +35,7 @@ public interface Painter {
      * @return Un peintre de lignes
      */
     public static Painter line(LineStyle style) {
-        return (map, canvas) -> {
-            for (Attributed<PolyLine> polyline : map.polyLines())
-                canvas.drawPolyLine(style, polyline.value());
-        };
+        return FeaturePainter.line(style);
     }
 
     /**
@@ -90,17 +80,7 @@ public interface Painter {
      * @return Un peintre de bordures
      */
     public static Painter outline(LineStyle style) {
-        return (map, canvas) -> {
-            ClosedPolyLine shell;
-            List<ClosedPolyLine> holes;
-            for (Attributed<Polygon> polygon : map.polygons()) {
-                shell = polygon.value().shell();
-                holes = polygon.value().holes();
-                canvas.drawPolyLine(style, shell);
-                for (PolyLine hole : holes)
-                    canvas.drawPolyLine(style, hole);
-            }
-        };
+        return FeaturePainter.outline(style);
     }
 
     /**
@@ -146,15 +126,7 @@ public interface Painter {
      *         prédicat passé en paramètre
      */
     public default Painter when(Predicate<Attributed<?>> predicate) {
-        return (map, canvas) -> {
-            List<Attributed<Polygon>> filtredPolygons = new ArrayList<>(
-                    map.polygons());
-            List<Attributed<PolyLine>> filtredPolyLines = new ArrayList<>(
-                    map.polyLines());
-            filtredPolygons.removeIf(x -> !predicate.test(x));
-            filtredPolyLines.removeIf(x -> !predicate.test(x));
-            this.drawMap(new Map(filtredPolyLines, filtredPolygons), canvas);
-        };
+        return new FilteredPainter(this, predicate);
 
     }
 
@@ -165,10 +137,7 @@ public interface Painter {
      * @return un peintre qui superpose ce peintre et celui passé en paramètre
      */
     public default Painter above(Painter painter) {
-        return (map, canvas) -> {
-            painter.drawMap(map, canvas);
-            this.drawMap(map, canvas);
-        };
+        return new StackedPainter(this, painter);
     }
 
     /**
@@ -181,4 +150,17 @@ public interface Painter {
             painters.add(this.when(Filters.onLayer(i)));
         return painters.stream().reduce(Painter::above).get();
     }
+
+    /**
+     * Compile ce peintre : les entités de la carte sont classées une seule
+     * fois entre les peintres élémentaires qui le composent, au lieu d'être
+     * filtrées à nouveau par chaque {@link #when(Predicate) filtre}. Le
+     * temps de dessin devient ainsi proportionnel au nombre d'entités, et non
+     * plus au produit de ce nombre par celui des filtres.
+     * 
+     * @return un peintre dessinant la même carte que celui-ci
+     */
+    public default Painter compiled() {
+        return CompiledPainter.compile(this);
+    }
 }
@@ -0,0 +1,44 @@
+package ch.epfl.imhof.painting;
+
+import ch.epfl.imhof.Map;
+
+/**
+ * Peintre superposant deux peintres (voir {@link Painter#above(Painter)}).
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+final class StackedPainter implements Painter {
+    private final Painter top, bottom;
+
+    /**
+     * @param top
+     *            Peintre dessinant en dernier, par-dessus l'autre
+     * @param bottom
+     *            Peintre dessinant en premier
+     */
+    StackedPainter(Painter top, Painter bottom) {
+        this.top = top;
+        this.bottom = bottom;
+    }
+
+    /**
+     * @return Le peintre dessinant en dernier, par-dessus l'autre.
+     */
+    Painter top() {
+        return top;
+    }
+
+    /**
+     * @return Le peintre dessinant en premier.
+     */
+    Painter bottom() {
+        return bottom;
+    }
+
+    @Override
+    public void drawMap(Map map, Canvas canvas) {
+        bottom.drawMap(map, canvas);
+        top.drawMap(map, canvas);
+    }
+}
@@ -0,0 +1,294 @@
+package ch.epfl.imhof.painting;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.Parallel;
+import ch.epfl.imhof.geometry.BoundingBox;
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+/**
+ * Dessine une carte par tuiles carrées, en parallèle. Chaque tuile est
+ * dessinée par sa propre toile, directement dans la portion correspondante
+ * de l'image finale, avec les seules entités dont le rectangle englobant
+ * (augmenté de la portée de leurs traits) la recouvre. Les tuiles utilisent
+ * toutes le même changement de repère, si bien que l'image obtenue ne
+ * présente aucune couture.
+ *
+ * La portée des traits de chaque entité est déterminée au préalable, en
+ * faisant dessiner la carte entière par le peintre sur une toile qui ne fait
+ * que relever les styles utilisés pour chaque géométrie ; elle est calculée
+ * selon la même règle que celle dont {@link Java2DCanvas} se sert pour
+ * écarter les entités invisibles. Les entités que le peintre ne dessine pas
+ * ne sont attribuées à aucune tuile. Si le peintre dessine d'autres
+ * géométries que celles des entités de la carte, la plus grande portée
+ * relevée est utilisée pour toutes les entités.
+ *
+ * Les cartes des tuiles sont extraites de la carte par
+ * {@link Map#subMap(int[], int[]) subMap} : elles partagent ses index
+ * d'attributs, qui ne sont donc construits qu'une fois par carte, lors du
+ * relevé des portées pour un peintre {@link Painter#compiled() compilé}.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+public final class TiledRenderer {
+
+    /**
+     * Taille par défaut des tuiles, en pixels.
+     */
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    private final int tileSize;
+    private final ExecutorService executor;
+
+    /**
+     * Construit un dessinateur par tuiles.
+     *
+     * @param tileSize
+     *            Taille des tuiles, en pixels
+     * @param executor
+     *            Exécuteur sur lequel dessiner les tuiles
+     * @throws IllegalArgumentException
+     *             si la taille des tuiles n'est pas strictement positive
+     */
+    public TiledRenderer(int tileSize, ExecutorService executor) {
+        if (tileSize <= 0)
+            throw new IllegalArgumentException("invalid tile size: "
+                    + tileSize);
+        this.tileSize = tileSize;
+        this.executor = executor;
+    }
+
+    /**
+     * Dessine la carte donnée au moyen du peintre donné.
+     *
+     * @param painter
+     *            Peintre à utiliser
+     * @param map
+     *            Carte à dessiner
+     * @param bl
+     *            Point bas gauche en coordonnées du plan
+     * @param tr
+     *            Point haut droit en coordonnées du plan
+     * @param width
+     *            Largeur en pixels de l'image
+     * @param height
+     *            Hauteur en pixels de l'image
+     * @param resolution
+     *            résolution de l'image
+     * @param backgroundColor
+     *            Couleur du fond de l'image
+     * @return L'image de la carte, identique à celle d'une
+     *         {@link Java2DCanvas} de mêmes paramètres pour tout peintre
+     *         qui dessine chaque entité indépendamment des autres
+     */
+    public BufferedImage render(Painter painter, Map map, Point bl, Point tr,
+            int width, int height, int resolution, Color backgroundColor) {
+        BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_RGB);
+        int columns = (width + tileSize - 1) / tileSize;
+        int rows = (height + tileSize - 1) / tileSize;
+
+        // Portée des traits de chaque entité
+        Reaches reaches = new Reaches(map);
+        painter.drawMap(map, reaches);
+
+        // Répartition des positions des entités dessinées entre les tuiles
+        // qu'elles recouvrent, dans leur ordre d'origine
+        double unitsPerPixelX = (tr.x() - bl.x()) / width;
+        double unitsPerPixelY = (tr.y() - bl.y()) / height;
+        double pixelsPerPoint = resolution / 72d;
+        Positions[] polyLines = new Positions[columns * rows];
+        Positions[] polygons = new Positions[columns * rows];
+        for (int i = 0; i < columns * rows; i++) {
+            polyLines[i] = new Positions();
+            polygons[i] = new Positions();
+        }
+        for (int i = 0; i < map.polyLines().size(); i++) {
+            PolyLine polyLine = map.polyLines().get(i).value();
+            double reach = reaches.ofPolyLine(i);
+            if (reach < 0)
+                continue;
+            // Comme Java2DCanvas, un pixel est ajouté pour l'anti-crénelage
+            for (int tile : tilesCovered(polyLine.boundingBox(), bl,
+                    unitsPerPixelX, unitsPerPixelY, reach * pixelsPerPoint
+                            + 1, height, columns, rows))
+                polyLines[tile].add(i);
+        }
+        for (int i = 0; i < map.polygons().size(); i++) {
+            Polygon polygon = map.polygons().get(i).value();
+            double reach = reaches.ofPolygon(i);
+            if (reach < 0)
+                continue;
+            for (int tile : tilesCovered(polygon.shell().boundingBox(), bl,
+                    unitsPerPixelX, unitsPerPixelY, reach * pixelsPerPoint
+                            + 1, height, columns, rows))
+                polygons[tile].add(i);
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int x = column * tileSize, y = row * tileSize;
+                int tile = row * columns + column;
+                BufferedImage tileImage = image.getSubimage(x, y,
+                        Math.min(tileSize, width - x),
+                        Math.min(tileSize, height - y));
+                // Les cartes des tuiles partagent les index de la carte
+                Map tileMap = map.subMap(polyLines[tile].toArray(),
+                        polygons[tile].toArray());
+                tasks.add(() -> {
+                    painter.drawMap(tileMap, new Java2DCanvas(tileImage, x, y,
+                            bl, tr, width, height, resolution,
+                            backgroundColor));
+                    return null;
+                });
+            }
+        }
+        Parallel.invokeAll(executor, tasks);
+        return image;
+    }
+
+    /**
+     * @return Les index des tuiles recouvertes par le rectangle donné, en
+     *         coordonnées du plan, augmenté de la marge donnée en pixels.
+     */
+    private int[] tilesCovered(BoundingBox box, Point bl,
+            double unitsPerPixelX, double unitsPerPixelY, double marginPixels,
+            int height, int columns, int rows) {
+        // L'axe des ordonnées de l'image est dirigé vers le bas
+        int firstColumn = tileIndex((box.minX() - bl.x()) / unitsPerPixelX
+                - marginPixels, columns);
+        int lastColumn = tileIndex((box.maxX() - bl.x()) / unitsPerPixelX
+                + marginPixels, columns);
+        int firstRow = tileIndex(height - (box.maxY() - bl.y())
+                / unitsPerPixelY - marginPixels, rows);
+        int lastRow = tileIndex(height - (box.minY() - bl.y())
+                / unitsPerPixelY + marginPixels, rows);
+        if (firstColumn > lastColumn || firstRow > lastRow
+                || lastColumn < 0 || lastRow < 0 || firstColumn >= columns
+                || firstRow >= rows)
+            return new int[0];
+        firstColumn = Math.max(0, firstColumn);
+        firstRow = Math.max(0, firstRow);
+        lastColumn = Math.min(columns - 1, lastColumn);
+        lastRow = Math.min(rows - 1, lastRow);
+        int[] tiles = new int[(lastColumn - firstColumn + 1)
+                * (lastRow - firstRow + 1)];
+        int i = 0;
+        for (int row = firstRow; row <= lastRow; row++)
+            for (int column = firstColumn; column <= lastColumn; column++)
+                tiles[i++] = row * columns + column;
+        return tiles;
+    }
+
+    /**
+     * @return L'index, non borné, de la tuile contenant la coordonnée donnée
+     *         en pixels.
+     */
+    private int tileIndex(double pixel, int count) {
+        double index = Math.floor(pixel / tileSize);
+        return (int) Math.max(-1, Math.min(count, index));
+    }
+
+    /**
+     * Liste croissante de positions d'entités.
+     */
+    private static final class Positions {
+        private int[] positions = new int[16];
+        private int size = 0;
+
+        void add(int position) {
+            if (size == positions.length)
+                positions = Arrays.copyOf(positions, 2 * size);
+            positions[size++] = position;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(positions, size);
+        }
+    }
+
+    /**
+     * Toile qui ne dessine rien mais relève, pour chaque entité d'une carte,
+     * la portée maximale des traits avec lesquels ses géométries sont
+     * dessinées, en points.
+     */
+    private static final class Reaches implements Canvas {
+        // Entité de chaque géométrie : les polylignes, puis les polygones,
+        // dans l'ordre de la carte
+        private final IdentityHashMap<Object, Integer> features;
+        private final int polyLinesCount;
+        // Portée des traits de chaque entité, négative si elle n'est pas
+        // dessinée
+        private final double[] reaches;
+        private double maxReach = 0;
+        // Vrai si une géométrie n'appartenant à aucune entité a été dessinée
+        private boolean hasForeignShapes = false;
+
+        Reaches(Map map) {
+            polyLinesCount = map.polyLines().size();
+            reaches = new double[polyLinesCount + map.polygons().size()];
+            Arrays.fill(reaches, -1);
+            features = new IdentityHashMap<>(polyLinesCount + 2
+                    * map.polygons().size());
+            for (int i = 0; i < polyLinesCount; i++)
+                features.put(map.polyLines().get(i).value(), i);
+            for (int i = 0; i < map.polygons().size(); i++) {
+                Polygon polygon = map.polygons().get(i).value();
+                Integer feature = polyLinesCount + i;
+                features.put(polygon, feature);
+                features.put(polygon.shell(), feature);
+                for (ClosedPolyLine hole : polygon.holes())
+                    features.put(hole, feature);
+            }
+        }
+
+        @Override
+        public void drawPolyLine(LineStyle style, PolyLine polyline) {
+            record(polyline, Java2DCanvas.strokeReach(style));
+        }
+
+        @Override
+        public void drawPolygon(Color color, Polygon polygon) {
+            record(polygon, 0);
+        }
+
+        private void record(Object shape, double reach) {
+            Integer feature = features.get(shape);
+            if (feature == null)
+                hasForeignShapes = true;
+            else
+                reaches[feature] = Math.max(reaches[feature], reach);
+            maxReach = Math.max(maxReach, reach);
+        }
+
+        /**
+         * @return La portée des traits de la polyligne à la position donnée,
+         *         en points, ou un nombre négatif si elle n'est pas dessinée.
+         */
+        double ofPolyLine(int i) {
+            return hasForeignShapes ? maxReach : reaches[i];
+        }
+
+        /**
+         * @return La portée des traits du polygone à la position donnée, de
+         *         son enveloppe et de ses trous, en points, ou un nombre
+         *         négatif s'il n'est pas dessiné.
+         */
+        double ofPolygon(int i) {
+            return hasForeignShapes ? maxReach : reaches[polyLinesCount + i];
+        }
+    }
+}
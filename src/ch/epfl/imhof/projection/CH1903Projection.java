@@ -18,16 +18,9 @@ final public class CH1903Projection implements Projection {
      */
     @Override
     public Point project(PointGeo point) {
-        double lambda1 = (1 / 10000.0)
-                * (Math.toDegrees(point.longitude()) * 3600 - 26782.5);
-        double phi1 = (1 / 10000.0)
-                * (Math.toDegrees(point.latitude()) * 3600 - 169028.66);
-        double x = 600072.37 + 211455.93 * lambda1 - 10938.51 * lambda1 * phi1 - 0.36 * lambda1
-                * Math.pow(phi1, 2) - 44.54 * Math.pow(lambda1, 3);
-        double y = 200147.07 + 308807.95 * phi1 + 3745.25 * Math.pow(lambda1, 2)
-                + 76.63 * Math.pow(phi1, 2) - 194.56 * Math.pow(lambda1, 2) * phi1
-                + 119.79 * Math.pow(phi1, 3);
-        Point projectedPoint = new Point(x, y);
+        double lambda1 = lambda1(point.longitude());
+        double phi1 = phi1(point.latitude());
+        Point projectedPoint = new Point(x(lambda1, phi1), y(lambda1, phi1));
         return projectedPoint;
     }
     
@@ -38,17 +31,99 @@ final public class CH1903Projection implements Projection {
      */
     @Override
     public PointGeo inverse(Point point) {
-        double x1 = (point.x() - 600000.0) / 1000000.0;
-        double y1 = (point.y() - 200000.0) / 1000000.0;
-        double lambda0 = 2.6779094 + 4.728982 * x1 + 0.791484 * x1 * y1 + 0.1306
-                * x1 * Math.pow(y1, 2) - 0.0436 * Math.pow(x1, 3);
-        double phi0 = 16.9023892 + 3.238272 * y1 - 0.270978 * Math.pow(x1, 2)
-                - 0.002528 * Math.pow(y1, 2) - 0.0447 * Math.pow(x1, 2) * y1
-                - 0.0140 * Math.pow(y1, 3);
-        double lambda = lambda0 * (100.0 / 36.0);
-        double ph1 = phi0 * (100.0 / 36.0);
-        PointGeo unProjectedPoint = new PointGeo(Math.toRadians(lambda), Math.toRadians(ph1));
+        double x1 = x1(point.x());
+        double y1 = y1(point.y());
+        PointGeo unProjectedPoint = new PointGeo(longitude(x1, y1),
+                latitude(x1, y1));
         return unProjectedPoint;
     }
 
+    /**
+     * Projette les points par une boucle sans appel ni allocation, que le
+     * compilateur peut vectoriser. Le résultat est identique à celui de
+     * {@link #project(PointGeo)}.
+     */
+    @Override
+    public void project(double[] longitudes, double[] latitudes, double[] x,
+            double[] y) {
+        int count = longitudes.length;
+        if (latitudes.length != count || x.length != count
+                || y.length != count)
+            throw new IllegalArgumentException("arrays of different lengths");
+        for (int i = 0; i < count; i++) {
+            double lambda1 = lambda1(longitudes[i]);
+            double phi1 = phi1(latitudes[i]);
+            x[i] = x(lambda1, phi1);
+            y[i] = y(lambda1, phi1);
+        }
+    }
+
+    /**
+     * Dé-projette les points par une boucle sans appel ni allocation, que le
+     * compilateur peut vectoriser. Le résultat est identique à celui de
+     * {@link #inverse(Point)}, à ceci près que la validité des coordonnées
+     * obtenues n'est pas vérifiée.
+     */
+    @Override
+    public void inverse(double[] x, double[] y, double[] longitudes,
+            double[] latitudes) {
+        int count = x.length;
+        if (y.length != count || longitudes.length != count
+                || latitudes.length != count)
+            throw new IllegalArgumentException("arrays of different lengths");
+        for (int i = 0; i < count; i++) {
+            double x1 = x1(x[i]);
+            double y1 = y1(y[i]);
+            longitudes[i] = longitude(x1, y1);
+            latitudes[i] = latitude(x1, y1);
+        }
+    }
+
+    // Formules de projection, en fonction des coordonnées auxiliaires (en
+    // unités de 10000 secondes d'arc)
+
+    private static double lambda1(double longitude) {
+        return (1 / 10000.0) * (Math.toDegrees(longitude) * 3600 - 26782.5);
+    }
+
+    private static double phi1(double latitude) {
+        return (1 / 10000.0) * (Math.toDegrees(latitude) * 3600 - 169028.66);
+    }
+
+    private static double x(double lambda1, double phi1) {
+        double lambda2 = lambda1 * lambda1, phi2 = phi1 * phi1;
+        return 600072.37 + 211455.93 * lambda1 - 10938.51 * lambda1 * phi1
+                - 0.36 * lambda1 * phi2 - 44.54 * lambda2 * lambda1;
+    }
+
+    private static double y(double lambda1, double phi1) {
+        double lambda2 = lambda1 * lambda1, phi2 = phi1 * phi1;
+        return 200147.07 + 308807.95 * phi1 + 3745.25 * lambda2 + 76.63
+                * phi2 - 194.56 * lambda2 * phi1 + 119.79 * phi2 * phi1;
+    }
+
+    // Formules de dé-projection, en fonction des coordonnées auxiliaires (en
+    // unités de 1000 km)
+
+    private static double x1(double x) {
+        return (x - 600000.0) / 1000000.0;
+    }
+
+    private static double y1(double y) {
+        return (y - 200000.0) / 1000000.0;
+    }
+
+    private static double longitude(double x1, double y1) {
+        double x2 = x1 * x1, y2 = y1 * y1;
+        double lambda0 = 2.6779094 + 4.728982 * x1 + 0.791484 * x1 * y1
+                + 0.1306 * x1 * y2 - 0.0436 * x2 * x1;
+        return Math.toRadians(lambda0 * (100.0 / 36.0));
+    }
+
+    private static double latitude(double x1, double y1) {
+        double x2 = x1 * x1, y2 = y1 * y1;
+        double phi0 = 16.9023892 + 3.238272 * y1 - 0.270978 * x2 - 0.002528
+                * y2 - 0.0447 * x2 * y1 - 0.0140 * y2 * y1;
+        return Math.toRadians(phi0 * (100.0 / 36.0));
+    }
 }
@@ -33,4 +33,33 @@ final public class EquirectangularProjection implements Projection {
         return unprojectedPoint;
     }
 
+    /**
+     * Copie les coordonnées, la projection étant l'identité.
+     */
+    @Override
+    public void project(double[] longitudes, double[] latitudes, double[] x,
+            double[] y) {
+        int count = longitudes.length;
+        if (latitudes.length != count || x.length != count
+                || y.length != count)
+            throw new IllegalArgumentException("arrays of different lengths");
+        System.arraycopy(longitudes, 0, x, 0, count);
+        System.arraycopy(latitudes, 0, y, 0, count);
+    }
+
+    /**
+     * Copie les coordonnées, la projection étant l'identité. Contrairement
+     * à {@link #inverse(Point)}, la validité des coordonnées obtenues n'est
+     * pas vérifiée.
+     */
+    @Override
+    public void inverse(double[] x, double[] y, double[] longitudes,
+            double[] latitudes) {
+        int count = x.length;
+        if (y.length != count || longitudes.length != count
+                || latitudes.length != count)
+            throw new IllegalArgumentException("arrays of different lengths");
+        System.arraycopy(x, 0, longitudes, 0, count);
+        System.arraycopy(y, 0, latitudes, 0, count);
+    }
 }
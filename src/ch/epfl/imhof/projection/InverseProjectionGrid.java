@@ -0,0 +1,211 @@
+package ch.epfl.imhof.projection;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.geometry.Point;
+
+/**
+ * Projection dont l'inverse est approchée sur une zone rectangulaire du plan :
+ * l'inverse exacte n'est évaluée qu'aux nœuds d'un treillis régulier, puis
+ * interpolée bilinéairement entre eux. Le treillis est raffiné jusqu'à ce que
+ * l'erreur mesurée au centre de chaque cellule ne dépasse pas la tolérance
+ * donnée, exprimée en unités du plan.
+ *
+ * Hors de la zone, ainsi que pour la projection directe, la projection
+ * d'origine est utilisée telle quelle. Les instances sont non modifiables et
+ * peuvent être utilisées depuis plusieurs fils à la fois.
+ *
+ * @author Ben Lalah Ali
+ * @author Alami Idrissi Ali
+ */
+public final class InverseProjectionGrid implements Projection {
+    // Nombre de cellules par côté du premier treillis
+    private static final int INITIAL_CELLS = 4;
+    // Nombre maximal de cellules par côté
+    private static final int MAX_CELLS = 1024;
+
+    private final Projection projection;
+    private final double minX, minY, maxX, maxY, stepX, stepY;
+    // Nombre de nœuds par ligne, resp. par colonne
+    private final int columns, rows;
+    // Inverse exacte aux nœuds, ligne par ligne depuis le sud, en radians
+    private final double[] longitudes, latitudes;
+
+    /**
+     * Construit le treillis couvrant le rectangle donné.
+     *
+     * @param projection
+     *            Projection d'origine.
+     * @param bottomLeft
+     *            Coin bas gauche de la zone, dans le plan.
+     * @param topRight
+     *            Coin haut droit de la zone, dans le plan.
+     * @param tolerance
+     *            Erreur maximale tolérée, en unités du plan. Elle n'est pas
+     *            garantie si le treillis atteint sa taille maximale de
+     *            {@value #MAX_CELLS} cellules par côté.
+     * @throws IllegalArgumentException
+     *             si la zone est vide ou si la tolérance n'est pas
+     *             strictement positive.
+     */
+    public InverseProjectionGrid(Projection projection, Point bottomLeft,
+            Point topRight, double tolerance) {
+        if (!(bottomLeft.x() < topRight.x() && bottomLeft.y() < topRight.y()))
+            throw new IllegalArgumentException("empty area");
+        if (!(tolerance > 0))
+            throw new IllegalArgumentException("invalid tolerance: "
+                    + tolerance);
+        this.projection = projection;
+        this.minX = bottomLeft.x();
+        this.minY = bottomLeft.y();
+        this.maxX = topRight.x();
+        this.maxY = topRight.y();
+
+        // Etendue angulaire d'une unité du plan, pour exprimer l'erreur
+        // angulaire dans le plan
+        double middleX = 0.5 * (minX + maxX), middleY = 0.5 * (minY + maxY);
+        double longitudePerUnit = Math.abs(projection.inverse(
+                new Point(maxX, middleY)).longitude()
+                - projection.inverse(new Point(minX, middleY)).longitude())
+                / (maxX - minX);
+        double latitudePerUnit = Math.abs(projection.inverse(
+                new Point(middleX, maxY)).latitude()
+                - projection.inverse(new Point(middleX, minY)).latitude())
+                / (maxY - minY);
+
+        int cells = INITIAL_CELLS;
+        double[][] lattice = lattice(cells);
+        while (cells < MAX_CELLS
+                && error(cells, lattice, longitudePerUnit, latitudePerUnit) > tolerance) {
+            cells *= 2;
+            lattice = lattice(cells);
+        }
+        this.columns = this.rows = cells + 1;
+        this.stepX = (maxX - minX) / cells;
+        this.stepY = (maxY - minY) / cells;
+        this.longitudes = lattice[0];
+        this.latitudes = lattice[1];
+    }
+
+    /**
+     * @return Le nombre de cellules du treillis par côté.
+     */
+    public int cells() {
+        return columns - 1;
+    }
+
+    @Override
+    public Point project(PointGeo point) {
+        return projection.project(point);
+    }
+
+    @Override
+    public void project(double[] longitudes, double[] latitudes, double[] x,
+            double[] y) {
+        projection.project(longitudes, latitudes, x, y);
+    }
+
+    /**
+     * Dé-projette le point donné par interpolation dans le treillis s'il fait
+     * partie de la zone, exactement sinon.
+     */
+    @Override
+    public PointGeo inverse(Point point) {
+        double x = point.x(), y = point.y();
+        if (!contains(x, y))
+            return projection.inverse(point);
+
+        double u = (x - minX) / stepX, v = (y - minY) / stepY;
+        int column = Math.min((int) u, columns - 2);
+        int row = Math.min((int) v, rows - 2);
+        double fx = u - column, fy = v - row;
+        int south = row * columns + column, north = south + columns;
+        return new PointGeo(bilinear(longitudes, south, north, fx, fy),
+                bilinear(latitudes, south, north, fx, fy));
+    }
+
+    /**
+     * Dé-projette les points sans créer d'objet : ceux de la zone par
+     * interpolation dans le treillis, les autres un à un par la projection
+     * d'origine.
+     */
+    @Override
+    public void inverse(double[] x, double[] y, double[] longitudes,
+            double[] latitudes) {
+        int count = x.length;
+        if (y.length != count || longitudes.length != count
+                || latitudes.length != count)
+            throw new IllegalArgumentException("arrays of different lengths");
+        for (int i = 0; i < count; i++) {
+            if (!contains(x[i], y[i])) {
+                PointGeo point = projection.inverse(new Point(x[i], y[i]));
+                longitudes[i] = point.longitude();
+                latitudes[i] = point.latitude();
+                continue;
+            }
+            double u = (x[i] - minX) / stepX, v = (y[i] - minY) / stepY;
+            int column = Math.min((int) u, columns - 2);
+            int row = Math.min((int) v, rows - 2);
+            double fx = u - column, fy = v - row;
+            int south = row * columns + column, north = south + columns;
+            longitudes[i] = bilinear(this.longitudes, south, north, fx, fy);
+            latitudes[i] = bilinear(this.latitudes, south, north, fx, fy);
+        }
+    }
+
+    private boolean contains(double x, double y) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    /**
+     * @return Les longitudes et latitudes exactes aux nœuds d'un treillis du
+     *         nombre de cellules par côté donné.
+     */
+    private double[][] lattice(int cells) {
+        int count = cells + 1;
+        double[] longitudes = new double[count * count];
+        double[] latitudes = new double[count * count];
+        for (int row = 0; row < count; row++) {
+            double y = minY + (maxY - minY) * row / cells;
+            for (int column = 0; column < count; column++) {
+                PointGeo point = projection.inverse(new Point(minX
+                        + (maxX - minX) * column / cells, y));
+                longitudes[row * count + column] = point.longitude();
+                latitudes[row * count + column] = point.latitude();
+            }
+        }
+        return new double[][] { longitudes, latitudes };
+    }
+
+    /**
+     * @return L'erreur maximale de l'interpolation au centre des cellules du
+     *         treillis donné, en unités du plan.
+     */
+    private double error(int cells, double[][] lattice,
+            double longitudePerUnit, double latitudePerUnit) {
+        int count = cells + 1;
+        double maxError = 0;
+        for (int row = 0; row < cells; row++) {
+            double y = minY + (maxY - minY) * (row + 0.5) / cells;
+            for (int column = 0; column < cells; column++) {
+                PointGeo exact = projection.inverse(new Point(minX
+                        + (maxX - minX) * (column + 0.5) / cells, y));
+                int south = row * count + column, north = south + count;
+                double errorX = (bilinear(lattice[0], south, north, 0.5, 0.5) - exact
+                        .longitude()) / longitudePerUnit;
+                double errorY = (bilinear(lattice[1], south, north, 0.5, 0.5) - exact
+                        .latitude()) / latitudePerUnit;
+                maxError = Math.max(maxError, Math.hypot(errorX, errorY));
+            }
+        }
+        return maxError;
+    }
+
+    private static double bilinear(double[] values, int south, int north,
+            double fx, double fy) {
+        double southValue = values[south] + fx
+                * (values[south + 1] - values[south]);
+        double northValue = values[north] + fx
+                * (values[north + 1] - values[north]);
+        return southValue + fy * (northValue - southValue);
+    }
+}
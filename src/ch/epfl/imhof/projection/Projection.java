@@ -13,4 +13,60 @@ public interface Projection {
     
     abstract Point project(PointGeo point);
     abstract PointGeo inverse(Point point);
+
+    /**
+     * Projette sur le plan une série de points, sans créer d'objet par point.
+     * L'implémentation par défaut projette les points un à un.
+     * 
+     * @param longitudes
+     *            Longitudes des points, en radians
+     * @param latitudes
+     *            Latitudes des points, en radians
+     * @param x
+     *            Tableau recevant l'abscisse des points projetés
+     * @param y
+     *            Tableau recevant l'ordonnée des points projetés
+     * @throws IllegalArgumentException
+     *             si les tableaux n'ont pas tous la même longueur
+     */
+    public default void project(double[] longitudes, double[] latitudes,
+            double[] x, double[] y) {
+        int count = longitudes.length;
+        if (latitudes.length != count || x.length != count
+                || y.length != count)
+            throw new IllegalArgumentException("arrays of different lengths");
+        for (int i = 0; i < count; i++) {
+            Point point = project(new PointGeo(longitudes[i], latitudes[i]));
+            x[i] = point.x();
+            y[i] = point.y();
+        }
+    }
+
+    /**
+     * Dé-projette une série de points du plan, sans créer d'objet par point.
+     * L'implémentation par défaut dé-projette les points un à un.
+     * 
+     * @param x
+     *            Abscisses des points
+     * @param y
+     *            Ordonnées des points
+     * @param longitudes
+     *            Tableau recevant la longitude des points, en radians
+     * @param latitudes
+     *            Tableau recevant la latitude des points, en radians
+     * @throws IllegalArgumentException
+     *             si les tableaux n'ont pas tous la même longueur
+     */
+    public default void inverse(double[] x, double[] y, double[] longitudes,
+            double[] latitudes) {
+        int count = x.length;
+        if (y.length != count || longitudes.length != count
+                || latitudes.length != count)
+            throw new IllegalArgumentException("arrays of different lengths");
+        for (int i = 0; i < count; i++) {
+            PointGeo point = inverse(new Point(x[i], y[i]));
+            longitudes[i] = point.longitude();
+            latitudes[i] = point.latitude();
+        }
+    }
 }
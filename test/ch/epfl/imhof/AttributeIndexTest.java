@@ -0,0 +1,108 @@
+package ch.epfl.imhof;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+public class AttributeIndexTest {
+
+    private static Attributed<String> feature(String... keysAndValues) {
+        Attributes.Builder builder = new Attributes.Builder();
+        for (int i = 0; i < keysAndValues.length; i += 2)
+            builder.put(keysAndValues[i], keysAndValues[i + 1]);
+        return new Attributed<>("", builder.build());
+    }
+
+    private static List<Attributed<String>> features() {
+        List<Attributed<String>> features = new ArrayList<>();
+        features.add(feature("highway", "primary"));
+        features.add(feature("highway", "residential", "layer", "1"));
+        features.add(feature("building", "yes", "layer", "-2"));
+        features.add(feature("highway", "primary", "layer", "high"));
+        features.add(feature());
+        return features;
+    }
+
+    private static BitSet bits(int... indices) {
+        BitSet bits = new BitSet();
+        for (int index : indices)
+            bits.set(index);
+        return bits;
+    }
+
+    @Test
+    public void withKeyAndWithValueSelectMatchingFeatures() {
+        AttributeIndex index = new AttributeIndex(features());
+        assertEquals(5, index.size());
+        assertEquals(bits(0, 1, 3), index.withKey("highway"));
+        assertEquals(bits(0, 3), index.withValue("highway", "primary"));
+        assertEquals(bits(0, 1, 3),
+                index.withValue("highway", "primary", "residential", "x"));
+        assertEquals(bits(), index.withValue("waterway", "river"));
+        assertEquals(bits(), index.withKey("waterway"));
+    }
+
+    @Test
+    public void layersAreParsedOnce() {
+        AttributeIndex index = new AttributeIndex(features());
+        int[] expected = { 0, 1, -2, 0, 0 };
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i], index.layer(i));
+        assertEquals(bits(0, 3, 4), index.onLayer(0));
+    }
+
+    @Test
+    public void returnedSetsAreCopies() {
+        AttributeIndex index = new AttributeIndex(features());
+        index.withKey("highway").clear();
+        index.withValue("highway", "primary").clear();
+        assertTrue(index.withKey("highway").get(0));
+        assertTrue(index.withValue("highway", "primary").get(0));
+    }
+
+    @Test
+    public void mapBuildsIndexesOnce() {
+        Map map = new Map(Collections.<Attributed<PolyLine>> emptyList(),
+                Collections.<Attributed<Polygon>> emptyList());
+        assertSame(map.polyLineIndex(), map.polyLineIndex());
+        assertSame(map.polygonIndex(), map.polygonIndex());
+        assertEquals(0, map.polygonIndex().size());
+    }
+
+    @Test
+    public void subMapSharesIndexesOfOriginalMap() {
+        List<Attributed<PolyLine>> polyLines = new ArrayList<>();
+        for (Attributed<String> feature : features())
+            polyLines.add(new Attributed<PolyLine>(null, feature
+                    .attributes()));
+        Map map = new Map(polyLines,
+                Collections.<Attributed<Polygon>> emptyList());
+        Map subMap = map.subMap(new int[] { 1, 2, 3 }, new int[0]);
+        Map subSubMap = subMap.subMap(new int[] { 0, 2 }, new int[0]);
+
+        assertSame(map.polyLineIndex(), subMap.polyLineIndex());
+        assertSame(map.polyLineIndex(), subSubMap.polyLineIndex());
+        assertSame(polyLines.get(3), subSubMap.polyLines().get(1));
+        assertEquals(3, subSubMap.polyLinePosition(1));
+        assertEquals(-2, subMap.polyLineIndex().layer(
+                subMap.polyLinePosition(1)));
+        assertEquals(4, map.polyLinePosition(4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void subMapFailsOnPositionsNotIncreasing() {
+        Map map = new Map(Collections.<Attributed<PolyLine>> emptyList(),
+                Collections.<Attributed<Polygon>> emptyList());
+        map.subMap(new int[] { 1, 1 }, new int[0]);
+    }
+}
@@ -2,6 +2,7 @@ package ch.epfl.imhof;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.HashMap;
@@ -148,4 +149,58 @@ public class AttributesTest {
 		assertTrue(testResult.isEmpty());
 	}
 
+	@Test
+	public void keepingAllKeysReturnsSameInstance() {
+		Attributes testAttributes = new Attributes(sampleAttributesValues());
+		HashSet<String> keptKeys = new HashSet<>(sampleAttributesValues()
+				.keySet());
+		assertSame(testAttributes, testAttributes.keepOnlyKeys(keptKeys));
+	}
+
+	@Test
+	public void getIntRejectsOverflowAndMalformedNumbers() {
+		HashMap<String, String> testData = new HashMap<>();
+		testData.put("max", "2147483647");
+		testData.put("min", "-2147483648");
+		testData.put("over", "2147483648");
+		testData.put("plus", "+7");
+		testData.put("sign", "-");
+		testData.put("empty", "");
+		testData.put("decimal", "1.5");
+		Attributes testAttributes = new Attributes(testData);
+		assertEquals(Integer.MAX_VALUE, testAttributes.get("max", 0));
+		assertEquals(Integer.MIN_VALUE, testAttributes.get("min", 0));
+		assertEquals(-1, testAttributes.get("over", -1));
+		assertEquals(7, testAttributes.get("plus", 0));
+		assertEquals(-1, testAttributes.get("sign", -1));
+		assertEquals(-1, testAttributes.get("empty", -1));
+		assertEquals(-1, testAttributes.get("decimal", -1));
+	}
+
+	@Test
+	public void builderReplacesValueAndMatchesMap() {
+		Attributes.Builder testBuild = new Attributes.Builder();
+		testBuild.put("testKey 3", "old");
+		for (java.util.Map.Entry<String, String> entry : sampleAttributesValues()
+				.entrySet())
+			testBuild.put(entry.getKey(), entry.getValue());
+		Attributes test = testBuild.build();
+		assertEquals("testValue 3", test.get("testKey 3"));
+		assertEquals(sampleAttributesValues(), test.asMap());
+		assertEquals(new Attributes(sampleAttributesValues()).asMap(),
+				test.asMap());
+	}
+
+	@Test
+	public void valuesAreNotAddedToTheDictionary() {
+		String value = "unique value " + System.nanoTime();
+		Attributes.Builder testBuild = new Attributes.Builder();
+		testBuild.put("name", value);
+		Attributes test = testBuild.build();
+		assertEquals(value, test.get("name"));
+		assertEquals(value, new Attributes(test.asMap()).get("name"));
+		assertEquals(-1, AttributeDictionary.find(value));
+		assertTrue(AttributeDictionary.find("name") >= 0);
+	}
+
 }
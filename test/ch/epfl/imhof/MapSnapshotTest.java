@@ -0,0 +1,166 @@
+package ch.epfl.imhof;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.OpenPolyLine;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.osm.OSMMapReader;
+import ch.epfl.imhof.osm.OSMToGeoTransformer;
+import ch.epfl.imhof.projection.CH1903Projection;
+
+public class MapSnapshotTest {
+
+    private static Attributes attributes(String... keysAndValues) {
+        HashMap<String, String> map = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2)
+            map.put(keysAndValues[i], keysAndValues[i + 1]);
+        return new Attributes(map);
+    }
+
+    private static ClosedPolyLine square(double x, double y, double side) {
+        return new ClosedPolyLine(Arrays.asList(new Point(x, y), new Point(x
+                + side, y), new Point(x + side, y + side), new Point(x, y
+                + side)));
+    }
+
+    private static Map sampleMap() {
+        Map.Builder builder = new Map.Builder();
+        Attributes road = attributes("highway", "primary", "name", "Route é");
+        builder.addPolyLine(new Attributed<>(new OpenPolyLine(Arrays.asList(
+                new Point(0.5, -1.25), new Point(2, 3))), road));
+        builder.addPolyLine(new Attributed<>(square(1, 1, 1), attributes(
+                "highway", "primary", "name", "Route é")));
+        builder.addPolyLine(new Attributed<PolyLine>(new OpenPolyLine(
+                Collections.singletonList(new Point(Math.PI, -0.0))),
+                attributes()));
+        builder.addPolygon(new Attributed<>(new Polygon(square(0, 0, 10),
+                Arrays.asList(square(1, 1, 2), square(5, 5, 1))), attributes(
+                "building", "yes", "layer", "-1")));
+        builder.addPolygon(new Attributed<>(new Polygon(square(20, 20, 1)),
+                road));
+        return builder.build();
+    }
+
+    private static Path temporaryFile() throws IOException {
+        File file = File.createTempFile("snapshot", ".map");
+        file.deleteOnExit();
+        return file.toPath();
+    }
+
+    @Test
+    public void readReturnsWrittenMap() throws IOException {
+        Map map = sampleMap();
+        Path file = temporaryFile();
+        MapSnapshot.write(map, file, "key");
+        assertSameMap(map, MapSnapshot.read(file, "key"));
+    }
+
+    @Test
+    public void readSharesIdenticalAttributes() throws IOException {
+        Path file = temporaryFile();
+        MapSnapshot.write(sampleMap(), file, "key");
+        Map map = MapSnapshot.read(file, "key");
+        assertSame(map.polyLines().get(0).attributes(), map.polyLines().get(1)
+                .attributes());
+        assertSame(map.polyLines().get(0).attributes(), map.polygons().get(1)
+                .attributes());
+    }
+
+    @Test
+    public void readReturnsSameMapAsTransformer() throws Exception {
+        Map map = new OSMToGeoTransformer(new CH1903Projection())
+                .transform(OSMMapReader.readOSMFile(getClass().getResource(
+                        "/lc.osm.gz").getFile(), true));
+        Path file = temporaryFile();
+        MapSnapshot.write(map, file, "lc");
+        assertSameMap(map, MapSnapshot.read(file, "lc"));
+    }
+
+    @Test
+    public void readReturnsNullForOtherKeyOrMissingFile() throws IOException {
+        Path file = temporaryFile();
+        MapSnapshot.write(sampleMap(), file, "key");
+        assertNull(MapSnapshot.read(file, "other key"));
+        Files.delete(file);
+        assertNull(MapSnapshot.read(file, "key"));
+    }
+
+    @Test(expected = IOException.class)
+    public void readFailsOnTruncatedFile() throws IOException {
+        Path file = temporaryFile();
+        MapSnapshot.write(sampleMap(), file, "key");
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 12));
+        MapSnapshot.read(file, "key");
+    }
+
+    @Test
+    public void cacheFileDependsOnKeyAndProperty() {
+        String previous = System.getProperty(MapSnapshot.CACHE_DIRECTORY_PROPERTY);
+        System.setProperty(MapSnapshot.CACHE_DIRECTORY_PROPERTY, "/some/cache");
+        try {
+            Path file = MapSnapshot.cacheFile("key");
+            assertEquals(new File("/some/cache").toPath(), file.getParent());
+            assertEquals(file, MapSnapshot.cacheFile("key"));
+            assertEquals(false, file.equals(MapSnapshot.cacheFile("other key")));
+        } finally {
+            if (previous == null)
+                System.clearProperty(MapSnapshot.CACHE_DIRECTORY_PROPERTY);
+            else
+                System.setProperty(MapSnapshot.CACHE_DIRECTORY_PROPERTY, previous);
+        }
+    }
+
+    private static void assertSameMap(Map expected, Map actual) {
+        assertEquals(expected.polyLines().size(), actual.polyLines().size());
+        for (int i = 0; i < expected.polyLines().size(); i++) {
+            Attributed<PolyLine> e = expected.polyLines().get(i);
+            Attributed<PolyLine> a = actual.polyLines().get(i);
+            assertEquals(e.value().isClosed(), a.value().isClosed());
+            assertSamePoints(e.value().points(), a.value().points());
+            assertSameAttributes(e.attributes(), a.attributes());
+        }
+        assertEquals(expected.polygons().size(), actual.polygons().size());
+        for (int i = 0; i < expected.polygons().size(); i++) {
+            Polygon e = expected.polygons().get(i).value();
+            Polygon a = actual.polygons().get(i).value();
+            assertSamePoints(e.shell().points(), a.shell().points());
+            assertEquals(e.holes().size(), a.holes().size());
+            for (int j = 0; j < e.holes().size(); j++)
+                assertSamePoints(e.holes().get(j).points(), a.holes().get(j)
+                        .points());
+            assertSameAttributes(expected.polygons().get(i).attributes(),
+                    actual.polygons().get(i).attributes());
+        }
+    }
+
+    private static void assertSamePoints(List<Point> expected, List<Point> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(Double.doubleToLongBits(expected.get(i).x()),
+                    Double.doubleToLongBits(actual.get(i).x()));
+            assertEquals(Double.doubleToLongBits(expected.get(i).y()),
+                    Double.doubleToLongBits(actual.get(i).y()));
+        }
+    }
+
+    private static void assertSameAttributes(Attributes expected, Attributes actual) {
+        assertEquals(expected.asMap(), actual.asMap());
+    }
+}
@@ -0,0 +1,74 @@
+package ch.epfl.imhof;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+public class ParallelTest {
+
+    @Test
+    public void stripesCoverEachRowOnce() {
+        for (int height : new int[] { 0, 1, 15, 16, 100, 1001 }) {
+            AtomicIntegerArray visits = new AtomicIntegerArray(height);
+            Parallel.inStripes(ForkJoinPool.commonPool(), height,
+                    (firstRow, lastRow) -> {
+                        for (int y = firstRow; y < lastRow; y++)
+                            visits.incrementAndGet(y);
+                    });
+            for (int y = 0; y < height; y++)
+                assertEquals(1, visits.get(y));
+        }
+    }
+
+    @Test
+    public void stripeCountFollowsExecutorParallelism() {
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            assertEquals(1, Parallel.parallelism(executor));
+            AtomicInteger stripes = new AtomicInteger();
+            Parallel.inStripes(executor, 1000,
+                    (firstRow, lastRow) -> stripes.incrementAndGet());
+            assertEquals(4, stripes.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void invokeAllReturnsResultsInOrder() {
+        List<Callable<Integer>> tasks = Arrays.asList(() -> 1, () -> 2,
+                () -> 3);
+        assertEquals(Arrays.asList(1, 2, 3),
+                Parallel.invokeAll(ForkJoinPool.commonPool(), tasks));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void runtimeExceptionIsRethrown() {
+        Parallel.inStripes(ForkJoinPool.commonPool(), 100,
+                (firstRow, lastRow) -> {
+                    throw new ArithmeticException();
+                });
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void checkedExceptionIsWrapped() {
+        List<Callable<Void>> tasks = Arrays.asList(() -> {
+            throw new Exception();
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            Parallel.invokeAll(executor, tasks);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package ch.epfl.imhof.dem;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class GaussianBlurTest {
+    private static final int WIDTH = 97, HEIGHT = 83;
+
+    // Plan avec un bord franc et des variations régulières
+    private static float[] plane() {
+        float[] plane = new float[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++)
+            for (int x = 0; x < WIDTH; x++)
+                plane[y * WIDTH + x] = (float) ((x > 45 ? 0.8 : -0.3) + 0.2 * Math
+                        .sin(x * 0.3 + y * 0.2));
+        return plane;
+    }
+
+    @Test
+    public void gaussianBlurMatchesDirectConvolution() {
+        double radius = 4.5;
+        float[] plane = plane();
+        float[] blurred = new GaussianBlur(radius, ForkJoinPool.commonPool())
+                .apply(plane, WIDTH, HEIGHT);
+        float[] kernel = GaussianBlur.kernel(radius);
+        int half = kernel.length / 2;
+        int margin = GaussianBlur.margin(radius);
+        for (int y = margin; y < HEIGHT - margin; y++) {
+            for (int x = margin; x < WIDTH - margin; x++) {
+                double expected = 0;
+                for (int i = 0; i < kernel.length; i++)
+                    for (int j = 0; j < kernel.length; j++)
+                        expected += kernel[i] * kernel[j]
+                                * plane[(y + i - half) * WIDTH + x + j - half];
+                assertEquals(expected, blurred[y * WIDTH + x], 1e-5);
+            }
+        }
+    }
+
+    @Test
+    public void boxBlurApproximatesGaussianBlur() {
+        double radius = 18;
+        float[] plane = plane();
+        float[] box = new GaussianBlur(radius, ForkJoinPool.commonPool())
+                .apply(plane, WIDTH, HEIGHT);
+        float[] kernel = GaussianBlur.kernel(radius);
+        int half = kernel.length / 2;
+        int margin = GaussianBlur.margin(radius);
+        for (int y = margin; y < HEIGHT - margin; y++) {
+            for (int x = margin; x < WIDTH - margin; x++) {
+                double expected = 0;
+                for (int i = 0; i < kernel.length; i++)
+                    for (int j = 0; j < kernel.length; j++)
+                        expected += kernel[i]
+                                * kernel[j]
+                                * plane[clamp(y + i - half, HEIGHT) * WIDTH
+                                        + clamp(x + j - half, WIDTH)];
+                assertEquals(expected, box[y * WIDTH + x], 0.02);
+            }
+        }
+    }
+
+    @Test
+    public void blurKeepsConstantPlane() {
+        float[] plane = new float[WIDTH * HEIGHT];
+        java.util.Arrays.fill(plane, 0.375f);
+        for (double radius : new double[] { 0, 1.7, 11, 25 }) {
+            float[] blurred = new GaussianBlur(radius,
+                    ForkJoinPool.commonPool()).apply(plane, WIDTH, HEIGHT);
+            for (float value : blurred)
+                assertEquals(0.375, value, 1e-5);
+        }
+    }
+
+    @Test
+    public void blurDoesNotDependOnExecutor() {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            for (double radius : new double[] { 3, 30 }) {
+                float[] parallel = new GaussianBlur(radius,
+                        ForkJoinPool.commonPool()).apply(plane(), WIDTH,
+                        HEIGHT);
+                float[] sequential = new GaussianBlur(radius, single).apply(
+                        plane(), WIDTH, HEIGHT);
+                assertArrayEquals(sequential, parallel, 0);
+            }
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsOnNegativeRadius() {
+        new GaussianBlur(-1, ForkJoinPool.commonPool());
+    }
+
+    private static int clamp(int index, int length) {
+        return Math.max(0, Math.min(length - 1, index));
+    }
+}
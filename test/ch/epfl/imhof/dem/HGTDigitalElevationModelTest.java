@@ -0,0 +1,183 @@
+package ch.epfl.imhof.dem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.Vector3;
+
+public class HGTDigitalElevationModelTest {
+    private static final double SPACING = Math.toRadians(0.01);
+
+    // Grille d'altitudes données ligne par ligne, du nord au sud
+    private static File grid(String name, short[][] rows) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * rows.length
+                * rows[0].length);
+        for (short[] row : rows)
+            for (short altitude : row)
+                buffer.putShort(altitude);
+        File directory = Files.createTempDirectory("hgt").toFile();
+        directory.deleteOnExit();
+        File file = new File(directory, name);
+        Files.write(file.toPath(), buffer.array());
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static short[][] ramp(int columns, int rows) {
+        short[][] altitudes = new short[rows][columns];
+        for (int row = 0; row < rows; row++)
+            for (int column = 0; column < columns; column++)
+                altitudes[row][column] = (short) (column * 10 + (rows - row)
+                        * 3 + column * row);
+        return altitudes;
+    }
+
+    private static Vector3 expectedNormal(int southWest, int southEast,
+            int northWest, int northEast) {
+        double s = Earth.RADIUS * SPACING;
+        return new Vector3(0.5 * s
+                * (southWest - southEast + northWest - northEast), 0.5 * s
+                * (southWest + southEast - northWest - northEast), s * s);
+    }
+
+    @Test
+    public void customGridOfAnySize() throws IOException {
+        short[][] altitudes = ramp(7, 4);
+        PointGeo bottomLeft = new PointGeo(Math.toRadians(7.5),
+                Math.toRadians(46.2));
+        try (HGTDigitalElevationModel model = new HGTDigitalElevationModel(
+                grid("custom.dem", altitudes), bottomLeft, 7, 4, SPACING)) {
+            for (int x = 0; x < 6; x++) {
+                for (int y = 0; y < 3; y++) {
+                    PointGeo point = new PointGeo(bottomLeft.longitude()
+                            + (x + 0.4) * SPACING, bottomLeft.latitude()
+                            + (y + 0.7) * SPACING);
+                    // La ligne 0 du fichier est au nord
+                    assertSameVector(expectedNormal(altitudes[3 - y][x],
+                            altitudes[3 - y][x + 1], altitudes[2 - y][x],
+                            altitudes[2 - y][x + 1]), model.normalAt(point));
+                }
+            }
+            // Le bord nord-est appartient encore à la zone
+            model.normalAt(new PointGeo(bottomLeft.longitude() + 6 * SPACING,
+                    bottomLeft.latitude() + 3 * SPACING));
+        }
+    }
+
+    @Test
+    public void voidsAreReplacedByMeanOfCell() throws IOException {
+        short v = MappedHeights.VOID;
+        short[][] altitudes = { { 10, v, v }, { 20, 40, v }, { 30, 30, v } };
+        PointGeo bottomLeft = new PointGeo(0, 0);
+        try (HGTDigitalElevationModel model = new HGTDigitalElevationModel(
+                grid("voids.dem", altitudes), bottomLeft, 3, 3, SPACING)) {
+            // Nord-est manquant : remplacé par la moyenne (20 + 40 + 10) / 3
+            assertSameVector(expectedNormal(20, 40, 10, 23),
+                    model.normalAt(new PointGeo(0.5 * SPACING, 1.5 * SPACING)));
+            // Cellule sans aucune altitude connue : normale verticale
+            short[][] empty = { { v, v }, { v, v } };
+            try (HGTDigitalElevationModel voidModel = new HGTDigitalElevationModel(
+                    grid("empty.dem", empty), bottomLeft, 2, 2, SPACING)) {
+                assertSameVector(expectedNormal(0, 0, 0, 0),
+                        voidModel.normalAt(new PointGeo(0.5 * SPACING,
+                                0.5 * SPACING)));
+            }
+            double[] longitudes = { 1.5 * SPACING, 0.5 * SPACING }, latitudes = {
+                    0.5 * SPACING, 1.5 * SPACING };
+            double[] x = new double[2], y = new double[2], z = new double[2];
+            model.normalsAt(longitudes, latitudes, x, y, z);
+            for (int i = 0; i < 2; i++) {
+                Vector3 expected = model.normalAt(new PointGeo(longitudes[i],
+                        latitudes[i]));
+                assertSameVector(expected, new Vector3(x[i], y[i], z[i]));
+            }
+        }
+    }
+
+    @Test
+    public void elevationsAtInterpolatesSamples() throws IOException {
+        short v = MappedHeights.VOID;
+        short[][] altitudes = { { 10, v, v }, { 20, 40, v }, { 30, 30, v } };
+        try (HGTDigitalElevationModel model = new HGTDigitalElevationModel(
+                grid("elevations.dem", altitudes), new PointGeo(0, 0), 3, 3,
+                SPACING)) {
+            double[] longitudes = { 0, 0.5 * SPACING, 0.25 * SPACING,
+                    2 * SPACING }, latitudes = { 0, 0, 1.5 * SPACING,
+                    2 * SPACING };
+            double[] elevations = new double[4];
+            model.elevationsAt(longitudes, latitudes, elevations);
+            assertEquals(30, elevations[0], 1e-9);
+            assertEquals(30, elevations[1], 1e-9);
+            // Cellule (20, 40, 10, 23 pour le nord-est manquant)
+            double south = 20 + 0.25 * 20, north = 10 + 0.25 * 13;
+            assertEquals(0.5 * (south + north), elevations[2], 1e-9);
+            // Coin nord-est : seul l'échantillon sud-ouest de la cellule est
+            // connu
+            assertEquals(40, elevations[3], 1e-9);
+        }
+    }
+
+    @Test
+    public void chunkedMappingReadsSameSamples() throws IOException {
+        short[][] altitudes = ramp(5, 9);
+        File file = grid("chunks.dem", altitudes);
+        // Tranches de deux lignes (la taille est arrondie à une ligne)
+        MappedHeights heights = new MappedHeights(file, 5, 9, 25);
+        for (int row = 0; row < 9; row++)
+            for (int column = 0; column < 5; column++)
+                assertEquals(altitudes[row][column], heights.get(column, row));
+    }
+
+    @Test
+    public void srtm1SizedTileIsAccepted() throws IOException {
+        File file = grid("N46E007.hgt", new short[3601][3601]);
+        try (HGTDigitalElevationModel model = new HGTDigitalElevationModel(
+                file)) {
+            assertEquals(Math.toRadians(1d / 3600), model.angularResolution(),
+                    0);
+            model.normalAt(new PointGeo(Math.toRadians(7.9999),
+                    Math.toRadians(46.9999)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void customGridFailsOnWrongFileSize() throws IOException {
+        new HGTDigitalElevationModel(grid("wrong.dem", ramp(4, 4)),
+                new PointGeo(0, 0), 5, 4, SPACING).close();
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void missingTileFailsWithFileNotFound() throws IOException {
+        File directory = Files.createTempDirectory("hgt").toFile();
+        directory.deleteOnExit();
+        new HGTDigitalElevationModel(new File(directory, "N46E007.hgt"))
+                .close();
+    }
+
+    @Test
+    public void tileOfWrongSizeFailsOnSize() throws IOException {
+        try {
+            new HGTDigitalElevationModel(grid("N46E007.hgt", ramp(4, 3)))
+                    .close();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("invalid file size"));
+        }
+    }
+
+    private static void assertSameVector(Vector3 expected, Vector3 actual) {
+        assertEquals(expected.x(), actual.x(), 1e-6);
+        assertEquals(expected.y(), actual.y(), 1e-6);
+        assertEquals(expected.z(), actual.z(), 1e-6);
+    }
+}
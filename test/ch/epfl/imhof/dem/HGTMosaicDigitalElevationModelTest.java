@@ -0,0 +1,176 @@
+package ch.epfl.imhof.dem;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.Vector3;
+
+public class HGTMosaicDigitalElevationModelTest {
+    private static final int INTERVALS = 4;
+
+    // Altitude continue d'un échantillon, en coordonnées globales
+    private static short altitude(int x, int y) {
+        return (short) (x * x * 3 + y * 7 - x * y);
+    }
+
+    private static File writeTile(File directory, int latitude, int longitude)
+            throws IOException {
+        String name = String.format("%s%02d%s%03d.hgt", latitude >= 0 ? "N"
+                : "S", Math.abs(latitude), longitude >= 0 ? "E" : "W",
+                Math.abs(longitude));
+        ByteBuffer buffer = ByteBuffer.allocate(2 * (INTERVALS + 1)
+                * (INTERVALS + 1));
+        for (int row = INTERVALS; row >= 0; row--)
+            for (int column = 0; column <= INTERVALS; column++)
+                buffer.putShort(altitude(longitude * INTERVALS + column,
+                        latitude * INTERVALS + row));
+        File file = new File(directory, name);
+        Files.write(file.toPath(), buffer.array());
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static File directory() throws IOException {
+        File directory = Files.createTempDirectory("hgt").toFile();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    private static PointGeo point(double longitude, double latitude) {
+        return new PointGeo(Math.toRadians(longitude),
+                Math.toRadians(latitude));
+    }
+
+    @Test
+    public void normalAtMatchesSingleTileModel() throws IOException {
+        File directory = directory();
+        File tile = writeTile(directory, 46, 6);
+        writeTile(directory, 46, 7);
+        try (HGTDigitalElevationModel single = new HGTDigitalElevationModel(
+                tile);
+                HGTMosaicDigitalElevationModel mosaic = new HGTMosaicDigitalElevationModel(
+                        directory, 1)) {
+            // Points éloignés des bords des cellules, où les deux modèles
+            // peuvent arrondir différemment
+            for (int i = 0; i < INTERVALS; i++) {
+                for (int j = 0; j < INTERVALS; j++) {
+                    PointGeo point = point(6 + (i + 0.3) / INTERVALS, 46
+                            + (j + 0.6) / INTERVALS);
+                    assertSameVector(single.normalAt(point),
+                            mosaic.normalAt(point));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void normalAtIsContinuousAcrossSeams() throws IOException {
+        File directory = directory();
+        for (int latitude = 46; latitude <= 47; latitude++)
+            for (int longitude = 6; longitude <= 7; longitude++)
+                writeTile(directory, latitude, longitude);
+        double step = 1d / INTERVALS;
+        try (HGTMosaicDigitalElevationModel mosaic = new HGTMosaicDigitalElevationModel(
+                directory, 2)) {
+            // Cellules de part et d'autre des lignes de degré, comparées à
+            // un calcul direct sur la grille globale
+            for (double longitude = 7 - 1.5 * step; longitude < 7 + 2 * step; longitude += step)
+                for (double latitude = 47 - 1.5 * step; latitude < 47 + 2 * step; latitude += step)
+                    assertSameVector(expectedNormal(longitude, latitude),
+                            mosaic.normalAt(point(longitude, latitude)));
+        }
+    }
+
+    @Test
+    public void missingTilesAreFlat() throws IOException {
+        File directory = directory();
+        writeTile(directory, 46, 6);
+        try (HGTMosaicDigitalElevationModel mosaic = new HGTMosaicDigitalElevationModel(
+                directory)) {
+            Vector3 normal = mosaic.normalAt(point(-12.3, -33.3));
+            double s = Earth.RADIUS * Math.toRadians(1d / INTERVALS);
+            assertSameVector(new Vector3(0, 0, s * s), normal);
+        }
+    }
+
+    @Test
+    public void normalsAtMatchesNormalAt() throws IOException {
+        File directory = directory();
+        File tile = writeTile(directory, 46, 6);
+        writeTile(directory, 46, 7);
+        // Une ligne traversant plusieurs cellules, plusieurs points par
+        // cellule, puis un retour en arrière
+        int count = 40;
+        double[] longitudes = new double[count], latitudes = new double[count];
+        for (int i = 0; i < count; i++) {
+            longitudes[i] = Math.toRadians(6.05 + (i < 30 ? i : 60 - i) * 0.031);
+            latitudes[i] = Math.toRadians(46.4 + i * 0.004);
+        }
+        double[] x = new double[count], y = new double[count], z = new double[count];
+        try (HGTDigitalElevationModel single = new HGTDigitalElevationModel(
+                tile);
+                HGTMosaicDigitalElevationModel mosaic = new HGTMosaicDigitalElevationModel(
+                        directory, 1)) {
+            for (DigitalElevationModel model : new DigitalElevationModel[] {
+                    single, mosaic }) {
+                model.normalsAt(longitudes, latitudes, x, y, z);
+                for (int i = 0; i < count; i++) {
+                    Vector3 expected = model.normalAt(new PointGeo(
+                            longitudes[i], latitudes[i]));
+                    assertEquals(expected.x(), x[i], 0);
+                    assertEquals(expected.y(), y[i], 0);
+                    assertEquals(expected.z(), z[i], 0);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void normalsAtFailsOnArraysOfDifferentLengths() throws IOException {
+        File directory = directory();
+        try (HGTDigitalElevationModel single = new HGTDigitalElevationModel(
+                writeTile(directory, 46, 6))) {
+            single.normalsAt(new double[2], new double[2], new double[2],
+                    new double[1], new double[2]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsOnEmptyDirectory() throws IOException {
+        new HGTMosaicDigitalElevationModel(directory()).close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsOnInvalidMaxOpenTiles() throws IOException {
+        File directory = directory();
+        writeTile(directory, 46, 6);
+        new HGTMosaicDigitalElevationModel(directory, 0).close();
+    }
+
+    private static Vector3 expectedNormal(double longitude, double latitude) {
+        int x = (int) Math.floor(longitude * INTERVALS);
+        int y = (int) Math.floor(latitude * INTERVALS);
+        double s = Earth.RADIUS * Math.toRadians(1d / INTERVALS);
+        return new Vector3(0.5 * s
+                * (altitude(x, y) - altitude(x + 1, y) + altitude(x, y + 1) - altitude(
+                        x + 1, y + 1)), 0.5 * s
+                * (altitude(x, y) + altitude(x + 1, y) - altitude(x, y + 1) - altitude(
+                        x + 1, y + 1)), s * s);
+    }
+
+    private static void assertSameVector(Vector3 expected, Vector3 actual) {
+        Vector3 unit = new Vector3(1, 0, 0), vertical = new Vector3(0, 1, 0);
+        assertEquals(expected.scalarProduct(unit), actual.scalarProduct(unit),
+                1e-6);
+        assertEquals(expected.scalarProduct(vertical),
+                actual.scalarProduct(vertical), 1e-6);
+        assertEquals(expected.norm(), actual.norm(), 1e-6);
+    }
+}
@@ -0,0 +1,48 @@
+package ch.epfl.imhof.dem;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.painting.Color;
+
+public class HypsometricTintTest {
+    private static HypsometricTint tint() {
+        HypsometricTint.Builder builder = new HypsometricTint.Builder();
+        builder.addStop(1000, Color.rgb(1, 1, 1));
+        builder.addStop(0, Color.rgb(0, 0.5, 0));
+        builder.addStop(500, Color.rgb(0.5, 0.5, 0.5));
+        return builder.build();
+    }
+
+    @Test
+    public void colorAtInterpolatesBetweenStops() {
+        HypsometricTint tint = tint();
+        assertSameColor(Color.rgb(0.25, 0.5, 0.25), tint.colorAt(250));
+        assertSameColor(Color.rgb(0.5, 0.5, 0.5), tint.colorAt(500));
+        assertSameColor(Color.rgb(0.75, 0.75, 0.75), tint.colorAt(750));
+    }
+
+    @Test
+    public void colorAtIsClampedOutsideStops() {
+        HypsometricTint tint = tint();
+        assertSameColor(Color.rgb(0, 0.5, 0), tint.colorAt(-400));
+        assertSameColor(Color.WHITE, tint.colorAt(8848));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void builderFailsWithoutStops() {
+        new HypsometricTint.Builder().build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addStopFailsOnNaN() {
+        new HypsometricTint.Builder().addStop(Double.NaN, Color.BLACK);
+    }
+
+    private static void assertSameColor(Color expected, Color actual) {
+        assertEquals(expected.getRed(), actual.getRed(), 1e-9);
+        assertEquals(expected.getGreen(), actual.getGreen(), 1e-9);
+        assertEquals(expected.getBlue(), actual.getBlue(), 1e-9);
+    }
+}
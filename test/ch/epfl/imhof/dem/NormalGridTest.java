@@ -0,0 +1,161 @@
+package ch.epfl.imhof.dem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.Vector3;
+
+public class NormalGridTest {
+    private static final double SPACING = Math.toRadians(1d / 1200);
+    private static final PointGeo BL = point(7.1, 46.1);
+    private static final PointGeo TR = point(7.12, 46.11);
+
+    // Terrain dont la normale varie lentement et continûment
+    private static final DigitalElevationModel SMOOTH = new DigitalElevationModel() {
+        @Override
+        public Vector3 normalAt(PointGeo point) {
+            return new Vector3(Math.sin(point.longitude() * 2000), Math
+                    .cos(point.latitude() * 3000), 2);
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private static PointGeo point(double longitude, double latitude) {
+        return new PointGeo(Math.toRadians(longitude),
+                Math.toRadians(latitude));
+    }
+
+    private static Vector3 unit(Vector3 vector) {
+        return vector.normalized();
+    }
+
+    @Test
+    public void normalAtCellCentersMatchesModel() {
+        NormalGrid grid = new NormalGrid(SMOOTH, BL, TR, SPACING);
+        for (int i = 3; i < 20; i += 4) {
+            for (int j = 2; j < 10; j += 3) {
+                long column = (long) Math.floor(BL.longitude() / SPACING) + i;
+                long row = (long) Math.floor(BL.latitude() / SPACING) + j;
+                PointGeo center = new PointGeo((column + 0.5) * SPACING,
+                        (row + 0.5) * SPACING);
+                assertSameDirection(unit(SMOOTH.normalAt(center)),
+                        grid.normalAt(center), 1e-4);
+            }
+        }
+    }
+
+    @Test
+    public void normalAtInterpolatesBetweenCenters() {
+        NormalGrid grid = new NormalGrid(SMOOTH, BL, TR, SPACING);
+        for (double longitude = 7.101; longitude < 7.119; longitude += 0.00037)
+            for (double latitude = 46.101; latitude < 46.109; latitude += 0.00041)
+                assertSameDirection(unit(SMOOTH.normalAt(point(longitude,
+                        latitude))), grid.normalAt(point(longitude, latitude)),
+                        1e-3);
+    }
+
+    @Test
+    public void normalAtIsContinuousWithinCell() {
+        // Modèle constant par cellule, comme un fichier HGT
+        DigitalElevationModel blocky = new DigitalElevationModel() {
+            @Override
+            public Vector3 normalAt(PointGeo point) {
+                long column = (long) Math.floor(point.longitude() / SPACING);
+                return new Vector3(column % 2 == 0 ? 1 : -1, 0, 1);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        NormalGrid grid = new NormalGrid(blocky, BL, TR, SPACING);
+        double step = SPACING / 50;
+        Vector3 previous = grid.normalAt(new PointGeo(BL.longitude()
+                + 5 * SPACING, BL.latitude() + 5 * SPACING));
+        for (int i = 1; i < 200; i++) {
+            Vector3 normal = grid.normalAt(new PointGeo(BL.longitude() + 5
+                    * SPACING + i * step, BL.latitude() + 5 * SPACING));
+            assertTrue(Math.abs(normal.x() - previous.x()) < 0.03);
+            previous = normal;
+        }
+    }
+
+    @Test
+    public void normalsAtMatchesNormalAtAndClampsOutside() {
+        NormalGrid grid = new NormalGrid(SMOOTH, BL, TR, SPACING);
+        double[] longitudes = { BL.longitude(), Math.toRadians(7.11),
+                Math.toRadians(6), Math.toRadians(8) };
+        double[] latitudes = { BL.latitude(), Math.toRadians(46.105),
+                Math.toRadians(46), Math.toRadians(47) };
+        double[] x = new double[4], y = new double[4], z = new double[4];
+        grid.normalsAt(longitudes, latitudes, x, y, z);
+        for (int i = 0; i < 4; i++) {
+            Vector3 expected = grid.normalAt(new PointGeo(longitudes[i],
+                    latitudes[i]));
+            assertEquals(expected.x(), x[i], 0);
+            assertEquals(expected.y(), y[i], 0);
+            assertEquals(expected.z(), z[i], 0);
+        }
+        // Hors de la zone, normale du centre de la cellule de coin
+        PointGeo corner = new PointGeo((Math.floor(BL.longitude() / SPACING)
+                + 0.5) * SPACING, (Math.floor(BL.latitude() / SPACING) + 0.5)
+                * SPACING);
+        assertSameDirection(grid.normalAt(corner).normalized(),
+                grid.normalAt(point(6, 46)), 1e-12);
+    }
+
+    @Test
+    public void elevationsAtInterpolatesModelElevations() {
+        // Altitude linéaire, que l'interpolation reproduit au mètre près
+        DigitalElevationModel ramp = new DigitalElevationModel() {
+            @Override
+            public Vector3 normalAt(PointGeo point) {
+                return new Vector3(0, 0, 1);
+            }
+
+            @Override
+            public void elevationsAt(double[] longitudes, double[] latitudes,
+                    double[] elevations) {
+                for (int i = 0; i < longitudes.length; i++)
+                    elevations[i] = 1e5 * longitudes[i] - 5e4 * latitudes[i];
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        NormalGrid grid = new NormalGrid(ramp, BL, TR, SPACING);
+        double[] longitudes = { Math.toRadians(7.105), Math.toRadians(7.113) };
+        double[] latitudes = { Math.toRadians(46.102), Math.toRadians(46.108) };
+        double[] expected = new double[2], actual = new double[2];
+        ramp.elevationsAt(longitudes, latitudes, expected);
+        grid.elevationsAt(longitudes, latitudes, actual);
+        for (int i = 0; i < 2; i++)
+            assertEquals(expected[i], actual[i], 1);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void elevationsAtFailsWithoutModelElevations() {
+        new NormalGrid(SMOOTH, BL, TR, SPACING).elevationsAt(new double[1],
+                new double[1], new double[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsOnEmptyArea() {
+        new NormalGrid(SMOOTH, TR, BL, SPACING);
+    }
+
+    private static void assertSameDirection(Vector3 expected, Vector3 actual,
+            double delta) {
+        Vector3 unit = actual.normalized();
+        assertEquals(expected.x(), unit.x(), delta);
+        assertEquals(expected.y(), unit.y(), delta);
+        assertEquals(expected.z(), unit.z(), delta);
+    }
+}
@@ -0,0 +1,184 @@
+package ch.epfl.imhof.dem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.Vector3;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.painting.Color;
+import ch.epfl.imhof.projection.CH1903Projection;
+
+public class ReliefCacheTest {
+    private static final Point BL = new Point(532000, 150000);
+    private static final Point TR = new Point(534000, 152000);
+    private static final int SIZE = 80;
+    // Taille d'un pixel, en mètres
+    private static final double PIXEL = 2000d / SIZE;
+
+    private static BufferedImage relief() {
+        DigitalElevationModel model = new DigitalElevationModel() {
+            @Override
+            public Vector3 normalAt(PointGeo point) {
+                return new Vector3(Math.sin(point.longitude() * 5000),
+                        Math.cos(point.latitude() * 3000), 1.5);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        return new ReliefShader(new CH1903Projection(), model, new Vector3(
+                -1, 1, 1)).shadedRelief(BL, TR, SIZE, SIZE, 2);
+    }
+
+    private static Path directory() throws IOException {
+        File directory = Files.createTempDirectory("relief").toFile();
+        directory.deleteOnExit();
+        return directory.toPath().resolve("cache");
+    }
+
+    @Test
+    public void readReturnsWrittenRelief() throws IOException {
+        ReliefCache cache = new ReliefCache(directory());
+        BufferedImage relief = relief();
+        cache.write("key", BL, TR, relief);
+        BufferedImage read = cache.read("key", BL, TR, SIZE, SIZE);
+        assertSamePixels(relief, 0, 0, read);
+    }
+
+    @Test
+    public void readCropsLargerRelief() throws IOException {
+        ReliefCache cache = new ReliefCache(directory());
+        BufferedImage relief = relief();
+        cache.write("key", BL, TR, relief);
+        // Zone de 30 x 20 pixels, à 10 pixels du bord gauche et 25 du haut
+        Point bl = new Point(BL.x() + 10 * PIXEL, TR.y() - 45 * PIXEL);
+        Point tr = new Point(BL.x() + 40 * PIXEL, TR.y() - 25 * PIXEL);
+        BufferedImage read = cache.read("key", bl, tr, 30, 20);
+        assertSamePixels(relief, 10, 25, read);
+    }
+
+    @Test
+    public void readReturnsNullWhenNoReliefMatches() throws IOException {
+        ReliefCache cache = new ReliefCache(directory());
+        assertNull(cache.read("key", BL, TR, SIZE, SIZE));
+        cache.write("key", BL, TR, relief());
+        // Autre clef, autre taille de pixel, grille décalée, zone débordante
+        assertNull(cache.read("other key", BL, TR, SIZE, SIZE));
+        assertNull(cache.read("key", BL, TR, SIZE / 2, SIZE / 2));
+        assertNull(cache.read("key", new Point(BL.x() + PIXEL / 2, BL.y()),
+                new Point(BL.x() + PIXEL * 10.5, BL.y() + PIXEL * 10), 10, 10));
+        assertNull(cache.read("key", new Point(BL.x() - PIXEL, BL.y()),
+                new Point(BL.x() + PIXEL * 9, BL.y() + PIXEL * 10), 10, 10));
+    }
+
+    @Test
+    public void invalidEntryIsDiscardedAndTreatedAsMissing() throws IOException {
+        Path directory = directory();
+        ReliefCache cache = new ReliefCache(directory);
+        cache.write("key", BL, TR, relief());
+        List<Path> grids = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(
+                directory, "*.properties")) {
+            entries.forEach(grids::add);
+        }
+        assertEquals(1, grids.size());
+        // Grille à laquelle il manque une propriété
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(grids.get(0),
+                StandardCharsets.ISO_8859_1))
+            if (!line.startsWith("top="))
+                lines.add(line);
+        Files.write(grids.get(0), lines, StandardCharsets.ISO_8859_1);
+        assertNull(cache.read("key", BL, TR, SIZE, SIZE));
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            assertFalse(entries.iterator().hasNext());
+        }
+
+        // Image illisible
+        cache.write("key", BL, TR, relief());
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(
+                directory, "*.png")) {
+            for (Path image : entries)
+                Files.write(image, new byte[] { 1, 2, 3 });
+        }
+        assertNull(cache.read("key", BL, TR, SIZE, SIZE));
+        BufferedImage relief = relief();
+        cache.write("key", BL, TR, relief);
+        assertSamePixels(relief, 0, 0, cache.read("key", BL, TR, SIZE, SIZE));
+    }
+
+    @Test
+    public void keyDependsOnAllParameters() throws IOException {
+        File file = File.createTempFile("N46E007", ".hgt");
+        file.deleteOnExit();
+        CH1903Projection projection = new CH1903Projection();
+        Vector3 light = new Vector3(-1, 1, 1);
+        String key = ReliefCache.key(file, projection, light, 2);
+        assertEquals(key, ReliefCache.key(file, projection, new Vector3(-2,
+                2, 2), 2));
+        assertNotEquals(key, ReliefCache.key(file, projection, new Vector3(
+                -1, 1, 2), 2));
+        assertNotEquals(key, ReliefCache.key(file, projection, light, 3));
+        assertNotEquals(key, ReliefCache.key(file.getParentFile(),
+                projection, light, 2));
+        Files.write(file.toPath(), new byte[8]);
+        assertNotEquals(key, ReliefCache.key(file, projection, light, 2));
+    }
+
+    @Test
+    public void keyDependsOnLightsWeightsAndTint() throws IOException {
+        File file = File.createTempFile("N46E007", ".hgt");
+        file.deleteOnExit();
+        CH1903Projection projection = new CH1903Projection();
+        Vector3 light1 = new Vector3(-1, 1, 1), light2 = new Vector3(1, 1, 1);
+        List<Vector3> lights = Arrays.asList(light1, light2);
+        String key = ReliefCache.key(file, projection, lights,
+                Arrays.asList(1d, 1d), null, 2);
+        // Seuls comptent les poids relatifs
+        assertEquals(key, ReliefCache.key(file, projection, lights,
+                Arrays.asList(2d, 2d), null, 2));
+        assertNotEquals(key, ReliefCache.key(file, projection, lights,
+                Arrays.asList(1d, 2d), null, 2));
+        assertNotEquals(key, ReliefCache.key(file, projection, light1, 2));
+        assertEquals(ReliefCache.key(file, projection, light1, 2),
+                ReliefCache.key(file, projection,
+                        Collections.singletonList(light1),
+                        Collections.singletonList(3d), null, 2));
+
+        HypsometricTint.Builder tintBuilder = new HypsometricTint.Builder();
+        tintBuilder.addStop(0, Color.BLACK);
+        tintBuilder.addStop(1000, Color.WHITE);
+        String tinted = ReliefCache.key(file, projection, lights,
+                Arrays.asList(1d, 1d), tintBuilder.build(), 2);
+        assertNotEquals(key, tinted);
+        tintBuilder.addStop(2000, Color.RED);
+        assertNotEquals(tinted, ReliefCache.key(file, projection, lights,
+                Arrays.asList(1d, 1d), tintBuilder.build(), 2));
+    }
+
+    private static void assertSamePixels(BufferedImage expected, int x,
+            int y, BufferedImage actual) {
+        for (int i = 0; i < actual.getWidth(); i++)
+            for (int j = 0; j < actual.getHeight(); j++)
+                assertEquals(expected.getRGB(x + i, y + j),
+                        actual.getRGB(i, j));
+    }
+}
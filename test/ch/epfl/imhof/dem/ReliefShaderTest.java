@@ -0,0 +1,210 @@
+package ch.epfl.imhof.dem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.Vector3;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.painting.Color;
+import ch.epfl.imhof.projection.CH1903Projection;
+import ch.epfl.imhof.projection.Projection;
+
+public class ReliefShaderTest {
+    private static final Point BL = new Point(532000, 150000);
+    private static final Point TR = new Point(534000, 152000);
+    private static final Vector3 LIGHT = new Vector3(-1, 1, 1);
+
+    // Terrain ondulé, sans fichier HGT
+    private static final DigitalElevationModel WAVES = new DigitalElevationModel() {
+        @Override
+        public Vector3 normalAt(PointGeo point) {
+            return new Vector3(Math.sin(point.longitude() * 5000),
+                    Math.cos(point.latitude() * 3000), 1.5);
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Test
+    public void shadedReliefMatchesPerPixelFormula() {
+        Projection projection = new CH1903Projection();
+        int width = 90, height = 70;
+        BufferedImage relief = new ReliefShader(projection, WAVES, LIGHT)
+                .shadedRelief(BL, TR, width, height, 0);
+        Function<Point, Point> rebasing = Point.alignedCoordinateChange(
+                new Point(0, height), BL, new Point(width, 0), TR);
+        Vector3 light = LIGHT.normalized();
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                Vector3 normal = WAVES.normalAt(projection.inverse(rebasing
+                        .apply(new Point(x, y))));
+                double cos = light.scalarProduct(normal.normalized());
+                double r = 0.5 * (cos + 1), b = 0.5 * (0.7 * cos + 1);
+                int expected = Color.toJavaColor(Color.rgb(r, r, b)).getRGB();
+                assertSameColor(expected, relief.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void shadedReliefDoesNotDependOnExecutor() {
+        Projection projection = new CH1903Projection();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            BufferedImage parallel = new ReliefShader(projection, WAVES,
+                    LIGHT, executor).shadedRelief(BL, TR, 60, 130, 4);
+            BufferedImage sequential = new ReliefShader(projection, WAVES,
+                    LIGHT, single).shadedRelief(BL, TR, 60, 130, 4);
+            for (int x = 0; x < 60; x++)
+                for (int y = 0; y < 130; y++)
+                    assertEquals(sequential.getRGB(x, y),
+                            parallel.getRGB(x, y));
+        } finally {
+            executor.shutdown();
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void multiDirectionalReliefMatchesWeightedFormula() {
+        Projection projection = new CH1903Projection();
+        Vector3[] lights = { new Vector3(-1, 1, 1), new Vector3(1, 1, 1),
+                new Vector3(0, -1, 2) };
+        double[] weights = { 2, 1, 1 };
+        ReliefShader.Builder builder = new ReliefShader.Builder(projection,
+                WAVES);
+        for (int i = 0; i < lights.length; i++)
+            builder.addLight(lights[i], weights[i]);
+        int width = 40, height = 30;
+        BufferedImage relief = builder.build().shadedRelief(BL, TR, width,
+                height, 0);
+        Function<Point, Point> rebasing = Point.alignedCoordinateChange(
+                new Point(0, height), BL, new Point(width, 0), TR);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                Vector3 normal = WAVES.normalAt(
+                        projection.inverse(rebasing.apply(new Point(x, y))))
+                        .normalized();
+                double illumination = 0;
+                for (int i = 0; i < lights.length; i++)
+                    illumination += weights[i] / 4
+                            * Math.max(0, lights[i].normalized()
+                                    .scalarProduct(normal));
+                double cos = 2 * illumination - 1;
+                double r = 0.5 * (cos + 1), b = 0.5 * (0.7 * cos + 1);
+                int expected = Color.toJavaColor(Color.rgb(r, r, b)).getRGB();
+                assertSameColor(expected, relief.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void builderWithOneLightAndWhiteTintMatchesConstructor() {
+        Projection projection = new CH1903Projection();
+        DigitalElevationModel model = withElevations(WAVES);
+        ReliefShader.Builder builder = new ReliefShader.Builder(projection,
+                model);
+        builder.addLight(LIGHT, 3);
+        HypsometricTint.Builder white = new HypsometricTint.Builder();
+        white.addStop(0, Color.WHITE);
+        builder.setTint(white.build());
+        BufferedImage expected = new ReliefShader(projection, model, LIGHT)
+                .shadedRelief(BL, TR, 50, 40, 3);
+        BufferedImage actual = builder.build().shadedRelief(BL, TR, 50, 40, 3);
+        for (int x = 0; x < 50; x++)
+            for (int y = 0; y < 40; y++)
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+    }
+
+    @Test
+    public void tintedReliefScalesTintByShading() {
+        Projection projection = new CH1903Projection();
+        DigitalElevationModel model = withElevations(WAVES);
+        HypsometricTint.Builder tintBuilder = new HypsometricTint.Builder();
+        tintBuilder.addStop(0, Color.rgb(0.2, 0.6, 0.2));
+        tintBuilder.addStop(2000, Color.rgb(1, 0.9, 0.8));
+        HypsometricTint tint = tintBuilder.build();
+        ReliefShader.Builder builder = new ReliefShader.Builder(projection,
+                model);
+        builder.addLight(LIGHT, 1);
+        builder.setTint(tint);
+        int width = 30, height = 20;
+        BufferedImage relief = builder.build().shadedRelief(BL, TR, width,
+                height, 0);
+        Function<Point, Point> rebasing = Point.alignedCoordinateChange(
+                new Point(0, height), BL, new Point(width, 0), TR);
+        Vector3 light = LIGHT.normalized();
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                PointGeo point = projection.inverse(rebasing.apply(new Point(
+                        x, y)));
+                double cos = light.scalarProduct(WAVES.normalAt(point)
+                        .normalized());
+                double r = 0.5 * (cos + 1), b = 0.5 * (0.7 * cos + 1);
+                Color color = tint.colorAt(elevation(point));
+                int expected = Color.toJavaColor(
+                        Color.rgb(color.getRed() * r, color.getGreen() * r,
+                                color.getBlue() * b)).getRGB();
+                assertSameColor(expected, relief.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void builderFailsWithoutLight() {
+        new ReliefShader.Builder(new CH1903Projection(), WAVES).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addLightFailsOnNonPositiveWeight() {
+        new ReliefShader.Builder(new CH1903Projection(), WAVES).addLight(
+                LIGHT, 0);
+    }
+
+    private static double elevation(PointGeo point) {
+        return 1000 + 900 * Math.sin(point.longitude() * 700);
+    }
+
+    // Ajoute des altitudes synthétiques au modèle donné
+    private static DigitalElevationModel withElevations(
+            DigitalElevationModel model) {
+        return new DigitalElevationModel() {
+            @Override
+            public Vector3 normalAt(PointGeo point) {
+                return model.normalAt(point);
+            }
+
+            @Override
+            public void elevationsAt(double[] longitudes, double[] latitudes,
+                    double[] elevations) {
+                for (int i = 0; i < longitudes.length; i++)
+                    elevations[i] = elevation(new PointGeo(longitudes[i],
+                            latitudes[i]));
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    // Les composantes peuvent différer d'une unité, le produit scalaire
+    // étant normalisé après coup plutôt qu'avant
+    private static void assertSameColor(int expected, int actual) {
+        for (int shift = 0; shift <= 24; shift += 8) {
+            int e = expected >> shift & 0xFF, a = actual >> shift & 0xFF;
+            assertTrue(expected + " != " + actual, Math.abs(e - a) <= 1);
+        }
+    }
+}
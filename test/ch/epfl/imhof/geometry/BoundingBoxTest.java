@@ -0,0 +1,66 @@
+package ch.epfl.imhof.geometry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class BoundingBoxTest {
+    private static final double DELTA = 0.000001;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsOnInvertedCorners() {
+        new BoundingBox(1, 0, 0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ofFailsOnEmptyList() {
+        BoundingBox.of(Collections.<Point> emptyList());
+    }
+
+    @Test
+    public void ofComputesExtremeCoordinates() {
+        BoundingBox box = BoundingBox.of(Arrays.asList(new Point(1, -2),
+                new Point(-3, 4), new Point(0.5, 0.5)));
+        assertEquals(-3, box.minX(), DELTA);
+        assertEquals(-2, box.minY(), DELTA);
+        assertEquals(1, box.maxX(), DELTA);
+        assertEquals(4, box.maxY(), DELTA);
+    }
+
+    @Test
+    public void containsIncludesBorders() {
+        BoundingBox box = new BoundingBox(0, 0, 2, 2);
+        assertTrue(box.contains(new Point(0, 2)));
+        assertTrue(box.contains(new Point(1, 1)));
+        assertFalse(box.contains(new Point(2.1, 1)));
+        assertTrue(box.contains(new BoundingBox(0, 0, 1, 2)));
+        assertFalse(box.contains(new BoundingBox(-1, 0, 1, 2)));
+    }
+
+    @Test
+    public void intersectsAndUnion() {
+        BoundingBox a = new BoundingBox(0, 0, 2, 2);
+        BoundingBox b = new BoundingBox(2, 1, 3, 5);
+        assertTrue(a.intersects(b));
+        assertFalse(a.intersects(new BoundingBox(3, 3, 4, 4)));
+        BoundingBox union = a.union(b);
+        assertEquals(0, union.minX(), DELTA);
+        assertEquals(0, union.minY(), DELTA);
+        assertEquals(3, union.maxX(), DELTA);
+        assertEquals(5, union.maxY(), DELTA);
+    }
+
+    @Test
+    public void polyLineBoundingBoxIsComputedOnce() {
+        ClosedPolyLine line = new ClosedPolyLine(Arrays.asList(new Point(0, 0),
+                new Point(1, 0), new Point(0, 1)));
+        assertSame(line.boundingBox(), line.boundingBox());
+        assertEquals(1, line.boundingBox().maxX(), DELTA);
+    }
+}
@@ -0,0 +1,49 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongIndexMapTest {
+
+    @Test
+    public void getReturnsMinusOneForAbsentKey() {
+        LongIndexMap map = new LongIndexMap();
+        assertEquals(-1, map.get(0));
+        map.put(1, 0);
+        assertEquals(-1, map.get(0));
+        assertEquals(-1, map.get(-1));
+    }
+
+    @Test
+    public void putReplacesExistingIndex() {
+        LongIndexMap map = new LongIndexMap();
+        map.put(-42, 3);
+        map.put(-42, 7);
+        assertEquals(7, map.get(-42));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void behavesLikeHashMapWhileGrowing() {
+        LongIndexMap map = new LongIndexMap();
+        HashMap<Long, Integer> reference = new HashMap<>();
+        Random random = new Random(2015);
+        for (int i = 0; i < 100000; i++) {
+            long key = random.nextLong() % 1000000L;
+            map.put(key, i);
+            reference.put(key, i);
+        }
+        assertEquals(reference.size(), map.size());
+        for (java.util.Map.Entry<Long, Integer> entry : reference.entrySet())
+            assertEquals(entry.getValue().intValue(), map.get(entry.getKey()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void putFailsOnNegativeIndex() {
+        new LongIndexMap().put(1, -1);
+    }
+}
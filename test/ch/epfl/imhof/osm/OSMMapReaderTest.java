@@ -8,8 +8,13 @@ import static org.junit.Assert.fail;
 import java.io.FileNotFoundException;
 
 import org.junit.Test;
+import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.projection.EquirectangularProjection;
+
 public class OSMMapReaderTest {
 
     @Test
@@ -84,11 +89,11 @@ public class OSMMapReaderTest {
         boolean landUseFound = false;
         for(int i = 0; i < 2; ++i){
             if (testMapReadResult.ways().get(i).attributes().contains("building")) {
-                assertEquals("yes", testMapReadResult.ways().get(0).attributes().get("building"));
+                assertEquals("yes", testMapReadResult.ways().get(i).attributes().get("building"));
                 buildingFound = true;
             }
             if (testMapReadResult.ways().get(i).attributes().contains("landuse")) {
-                assertEquals("residential", testMapReadResult.ways().get(1).attributes().get("landuse"));
+                assertEquals("residential", testMapReadResult.ways().get(i).attributes().get("landuse"));
                 landUseFound = true;
             }
         }
@@ -229,6 +234,174 @@ public class OSMMapReaderTest {
 		}
     }
 
+    @Test
+    public void boundingBoxKeepsWholeWaysCrossingIt() throws Exception {
+        OSMMap testMapReadResult = OSMMapReader.readOSMFile(
+                getClass().getResource("/testRoads.osm").getFile(), false,
+                new PointGeo(Math.toRadians(0.005), Math.toRadians(-0.03)),
+                new PointGeo(Math.toRadians(0.03), Math.toRadians(0.035)));
+        assertEquals(4, testMapReadResult.ways().size());
+        for (OSMWay way : testMapReadResult.ways())
+            assertEquals(3, way.nodesCount());
+    }
+
+    @Test
+    public void boundingBoxKeepsWayLeavingAndReenteringIt() throws Exception {
+        OSMMap testMapReadResult = readBoundingBoxFile();
+        OSMWay way = testMapReadResult.ways().get(0);
+        assertEquals(-21, way.id());
+        assertEquals(4, way.nodesCount());
+        long[] ids = { -1, -2, -3, -4 };
+        for (int i = 0; i < ids.length; i++)
+            assertEquals(ids[i], way.nodes().get(i).id());
+    }
+
+    @Test
+    public void boundingBoxKeepsPolygonEnclosingIt() throws Exception {
+        OSMMap testMapReadResult = readBoundingBoxFile();
+        OSMWay way = testMapReadResult.ways().get(1);
+        assertEquals(-22, way.id());
+        assertTrue(way.isClosed());
+        assertEquals(5, way.nodesCount());
+    }
+
+    @Test
+    public void boundingBoxKeepsMultipolygonAroundIt() throws Exception {
+        OSMMap testMapReadResult = readBoundingBoxFile();
+        // Seuls les chemins -21 et -22 rencontrent la zone
+        assertEquals(2, testMapReadResult.ways().size());
+        assertEquals(1, testMapReadResult.relations().size());
+        OSMRelation relation = testMapReadResult.relations().get(0);
+        assertEquals(-31, relation.id());
+        assertEquals(4, relation.members().size());
+        Map map = new OSMToGeoTransformer(new EquirectangularProjection())
+                .transform(testMapReadResult);
+        assertEquals(2, map.polygons().size());
+        assertEquals(1, map.polyLines().size());
+    }
+
+    private OSMMap readBoundingBoxFile() throws Exception {
+        return OSMMapReader.readOSMFile(
+                getClass().getResource("/testBoundingBox.osm").getFile(), false,
+                new PointGeo(0, 0),
+                new PointGeo(Math.toRadians(0.01), Math.toRadians(0.01)));
+    }
+
+    @Test
+    public void boundingBoxCoveringEverythingKeepsEverything() throws Exception {
+        OSMMap testMapReadResult = OSMMapReader.readOSMFile(
+                getClass().getResource("/testMultipolygons.osm").getFile(), false,
+                new PointGeo(-Math.PI / 2, -Math.PI / 4),
+                new PointGeo(Math.PI / 2, Math.PI / 4));
+        assertEquals(12, testMapReadResult.ways().size());
+        assertEquals(3, testMapReadResult.relations().size());
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void emptyBoundingBoxThrows() throws Exception {
+        OSMMapReader.readOSMFile(
+                getClass().getResource("/testRoads.osm").getFile(), false,
+                new PointGeo(0, 0), new PointGeo(0, 0));
+    }
+
+    @Test
+    public void pullParserReadsSameMapAsSax() throws Exception {
+        String[] files = { "/testSimpleBuilding.osm", "/testSeveralWalls.osm",
+                "/testRoads.osm", "/testMultipolygons.osm",
+                "/testTypelessRelations.osm", "/testUndefinedAtts.osm",
+                "/testDataCorrupted.osm", "/testBuildingMultipleHoles.osm",
+                "/testJoinedBuildingsTaggedRelation.osm" };
+        for (String file : files) {
+            String fileName = getClass().getResource(file).getFile();
+            assertSameMap(
+                    OSMMapReader.readOSMFile(fileName, false, OSMMapReader.Parser.SAX),
+                    OSMMapReader.readOSMFile(fileName, false, OSMMapReader.Parser.PULL));
+        }
+        String fileName = getClass().getResource("/lc.osm.gz").getFile();
+        assertSameMap(
+                OSMMapReader.readOSMFile(fileName, true, OSMMapReader.Parser.SAX),
+                OSMMapReader.readOSMFile(fileName, true, OSMMapReader.Parser.PULL));
+    }
+
+    @Test (expected = SAXParseException.class)
+    public void pullParserErrorInFile() throws Exception {
+        OSMMapReader.readOSMFile(getClass().getResource("/testSimpleBuildingError.osm").getFile(),
+                false, OSMMapReader.Parser.PULL);
+    }
+
+    @Test
+    public void pbfReaderReadsSameMapAsXml() throws Exception {
+        assertSameMap(
+                OSMMapReader.readOSMFile(getClass().getResource("/lc.osm.gz").getFile(), true),
+                OSMMapReader.readOSMFile(getClass().getResource("/lc.osm.pbf").getFile(), false));
+        // Les coordonnées de ce fichier sont plus précises que celles du format PBF
+        assertSameMap(
+                OSMMapReader.readOSMFile(getClass().getResource("/testMultipolygons.osm").getFile(), false),
+                OSMMapReader.readOSMFile(getClass().getResource("/testMultipolygons.osm.pbf").getFile(), false),
+                Math.toRadians(1e-7));
+    }
+
+    @Test
+    public void pbfReaderSupportsBoundingBox() throws Exception {
+        PointGeo bottomLeft = new PointGeo(Math.toRadians(6.5685), Math.toRadians(46.5180));
+        PointGeo topRight = new PointGeo(Math.toRadians(6.5700), Math.toRadians(46.5190));
+        assertSameMap(
+                OSMMapReader.readOSMFile(getClass().getResource("/lc.osm.gz").getFile(), true, bottomLeft, topRight),
+                OSMMapReader.readOSMFile(getClass().getResource("/lc.osm.pbf").getFile(), false, bottomLeft, topRight));
+    }
+
+    @Test (expected = SAXException.class)
+    public void pbfReaderErrorInFile() throws Exception {
+        OSMMapReader.readOSMFile(getClass().getResource("/testCorrupted.osm.pbf").getFile(), false);
+    }
+
+    @Test (timeout = 10000, expected = SAXException.class)
+    public void pbfReaderRejectsBlobWithPresetDictionary() throws Exception {
+        OSMMapReader.readOSMFile(getClass().getResource("/testPresetDictionary.osm.pbf").getFile(), false);
+    }
+
+    private static void assertSameMap(OSMMap expected, OSMMap actual) {
+        assertSameMap(expected, actual, 0);
+    }
+
+    private static void assertSameMap(OSMMap expected, OSMMap actual, double delta) {
+        assertEquals(expected.ways().size(), actual.ways().size());
+        for (int i = 0; i < expected.ways().size(); i++) {
+            OSMWay expectedWay = expected.ways().get(i);
+            OSMWay actualWay = actual.ways().get(i);
+            assertSameEntity(expectedWay, actualWay);
+            assertEquals(expectedWay.nodesCount(), actualWay.nodesCount());
+            for (int j = 0; j < expectedWay.nodesCount(); j++) {
+                OSMNode expectedNode = expectedWay.nodes().get(j);
+                OSMNode actualNode = actualWay.nodes().get(j);
+                assertSameEntity(expectedNode, actualNode);
+                assertEquals(expectedNode.position().longitude(), actualNode.position().longitude(), delta);
+                assertEquals(expectedNode.position().latitude(), actualNode.position().latitude(), delta);
+            }
+        }
+        assertEquals(expected.relations().size(), actual.relations().size());
+        for (int i = 0; i < expected.relations().size(); i++) {
+            OSMRelation expectedRelation = expected.relations().get(i);
+            OSMRelation actualRelation = actual.relations().get(i);
+            assertSameEntity(expectedRelation, actualRelation);
+            assertEquals(expectedRelation.members().size(), actualRelation.members().size());
+            for (int j = 0; j < expectedRelation.members().size(); j++) {
+                OSMRelation.Member expectedMember = expectedRelation.members().get(j);
+                OSMRelation.Member actualMember = actualRelation.members().get(j);
+                assertEquals(expectedMember.type(), actualMember.type());
+                assertEquals(expectedMember.role(), actualMember.role());
+                assertEquals(expectedMember.member().id(), actualMember.member().id());
+            }
+        }
+    }
+
+    private static void assertSameEntity(OSMEntity expected, OSMEntity actual) {
+        assertEquals(expected.id(), actual.id());
+        for (String key : new String[] { "building", "highway", "landuse", "type", "", "name", "layer", "action" })
+            assertEquals(expected.attributeValue(key), actual.attributeValue(key));
+        assertEquals(expected.attributes().isEmpty(), actual.attributes().isEmpty());
+    }
+
     @Test (expected = FileNotFoundException.class)
     public void errorNameFile() throws Exception{
         OSMMapReader.readOSMFile("     ", true);
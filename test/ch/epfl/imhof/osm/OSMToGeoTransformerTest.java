@@ -6,6 +6,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 
@@ -414,4 +415,90 @@ public class OSMToGeoTransformerTest {
         assertEquals(0, testMap.polygons().size());
     }
 
+    @Test
+    public void parallelTransformGivesSameMapAsSequential() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            OSMToGeoTransformer parallelTransformer = new OSMToGeoTransformer(new CH1903Projection(), pool);
+            for (String file : new String[] { "/lc.osm.gz", "/testPolygonRelationsToKeep.osm", "/testMultipolygons.osm" }) {
+                OSMMap osmMap = OSMMapReader.readOSMFile(getClass().getResource(file).getFile(), file.endsWith(".gz"));
+                Map expected = testTransformer.transform(osmMap);
+                Map actual = parallelTransformer.transform(osmMap);
+                assertEquals(expected.polyLines().size(), actual.polyLines().size());
+                for (int i = 0; i < expected.polyLines().size(); i++) {
+                    assertEquals(expected.polyLines().get(i).attributes().get("highway"), actual.polyLines().get(i).attributes().get("highway"));
+                    assertSamePoints(expected.polyLines().get(i).value(), actual.polyLines().get(i).value());
+                }
+                assertEquals(expected.polygons().size(), actual.polygons().size());
+                for (int i = 0; i < expected.polygons().size(); i++) {
+                    Polygon expectedPolygon = expected.polygons().get(i).value();
+                    Polygon actualPolygon = actual.polygons().get(i).value();
+                    assertSamePoints(expectedPolygon.shell(), actualPolygon.shell());
+                    assertEquals(expectedPolygon.holes().size(), actualPolygon.holes().size());
+                    for (int j = 0; j < expectedPolygon.holes().size(); j++)
+                        assertSamePoints(expectedPolygon.holes().get(j), actualPolygon.holes().get(j));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void manyHolesAreAssignedToSmallestContainingOuter() {
+        // Grille de 20 x 20 forêts, chacune percée de 4 trous, plus une
+        // forêt englobant toutes les autres
+        OSMMap.Builder mapBuilder = new OSMMap.Builder();
+        OSMRelation.Builder relationBuilder = new OSMRelation.Builder(1);
+        relationBuilder.setAttribute("type", "multipolygon");
+        relationBuilder.setAttribute("landuse", "forest");
+        long[] nextId = { 1 };
+        relationBuilder.addMember(OSMRelation.Member.Type.WAY, "outer",
+                squareWay(mapBuilder, nextId, -0.5, -0.5, 21));
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < 20; j++) {
+                relationBuilder.addMember(OSMRelation.Member.Type.WAY, "outer",
+                        squareWay(mapBuilder, nextId, i, j, 0.9));
+                for (int k = 0; k < 4; k++)
+                    relationBuilder.addMember(OSMRelation.Member.Type.WAY, "inner",
+                            squareWay(mapBuilder, nextId, i + 0.1 + 0.2 * k, j + 0.1, 0.1));
+            }
+        }
+        mapBuilder.addRelation(relationBuilder.build());
+        Map map = new OSMToGeoTransformer(new ch.epfl.imhof.projection.EquirectangularProjection())
+                .transform(mapBuilder.build());
+        assertEquals(401, map.polygons().size());
+        // Polygones triés par aire croissante : la forêt englobante est la dernière
+        for (int i = 0; i < 400; i++)
+            assertEquals(4, map.polygons().get(i).value().holes().size());
+        assertEquals(0, map.polygons().get(400).value().holes().size());
+    }
+
+    private static OSMWay squareWay(OSMMap.Builder mapBuilder, long[] nextId,
+            double x, double y, double side) {
+        OSMWay.Builder wayBuilder = new OSMWay.Builder(nextId[0]++);
+        double[][] corners = { { x, y }, { x + side, y }, { x + side, y + side }, { x, y + side } };
+        OSMNode first = null;
+        for (double[] corner : corners) {
+            OSMNode node = new OSMNode(nextId[0]++, new ch.epfl.imhof.PointGeo(
+                    Math.toRadians(corner[0] / 100), Math.toRadians(corner[1] / 100)),
+                    new ch.epfl.imhof.Attributes(new HashMap<String, String>()));
+            mapBuilder.addNode(node);
+            wayBuilder.addNode(node);
+            if (first == null)
+                first = node;
+        }
+        wayBuilder.addNode(first);
+        OSMWay way = wayBuilder.build();
+        mapBuilder.addWay(way);
+        return way;
+    }
+
+    private static void assertSamePoints(PolyLine expected, PolyLine actual) {
+        assertEquals(expected.points().size(), actual.points().size());
+        for (int i = 0; i < expected.points().size(); i++) {
+            assertEquals(expected.points().get(i).x(), actual.points().get(i).x(), 0);
+            assertEquals(expected.points().get(i).y(), actual.points().get(i).y(), 0);
+        }
+    }
 }
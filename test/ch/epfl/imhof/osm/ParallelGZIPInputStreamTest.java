@@ -0,0 +1,144 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class ParallelGZIPInputStreamTest {
+
+    private static byte[] randomText(int size) {
+        Random random = new Random(size);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++)
+            data[i] = (byte) ('a' + random.nextInt(8));
+        return data;
+    }
+
+    private static byte[] gzip(byte[] data, int from, int to) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(data, from, to - from);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] bgzf(byte[] data, int memberSize) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int from = 0; from < data.length; from += memberSize) {
+            int length = Math.min(memberSize, data.length - from);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            deflater.setInput(data, from, length);
+            deflater.finish();
+            byte[] compressed = new byte[length + 1024];
+            int compressedLength = deflater.deflate(compressed);
+            deflater.end();
+            int blockSize = 18 + compressedLength + 8;
+            CRC32 crc = new CRC32();
+            crc.update(data, from, length);
+            bytes.write(new byte[] { 31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255,
+                    6, 0, 'B', 'C', 2, 0,
+                    (byte) (blockSize - 1), (byte) ((blockSize - 1) >> 8) }, 0, 18);
+            bytes.write(compressed, 0, compressedLength);
+            writeInt(bytes, crc.getValue());
+            writeInt(bytes, length);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeInt(ByteArrayOutputStream bytes, long value) {
+        for (int i = 0; i < 4; i++)
+            bytes.write((int) (value >> (8 * i)));
+    }
+
+    private static byte[] readAll(InputStream stream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int count;
+        while ((count = stream.read(buffer)) >= 0)
+            bytes.write(buffer, 0, count);
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void readsPlainGZip() throws IOException {
+        byte[] data = randomText(500000);
+        try (InputStream stream = new ParallelGZIPInputStream(
+                new ByteArrayInputStream(gzip(data, 0, data.length)))) {
+            assertArrayEquals(data, readAll(stream));
+        }
+    }
+
+    @Test
+    public void readsConcatenatedGZipMembers() throws IOException {
+        byte[] data = randomText(300000);
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        members.write(gzip(data, 0, 100000));
+        members.write(gzip(data, 100000, data.length));
+        try (InputStream stream = new ParallelGZIPInputStream(
+                new ByteArrayInputStream(members.toByteArray()))) {
+            assertArrayEquals(data, readAll(stream));
+        }
+    }
+
+    @Test
+    public void readsBGZFMembersInOrder() throws IOException {
+        byte[] data = randomText(1000000);
+        try (InputStream stream = new ParallelGZIPInputStream(
+                new ByteArrayInputStream(bgzf(data, 60000)), 4)) {
+            assertArrayEquals(data, readAll(stream));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void failsOnCorruptBGZFMember() throws IOException {
+        byte[] data = randomText(200000);
+        byte[] compressed = bgzf(data, 60000);
+        compressed[compressed.length - 5] ^= 1;
+        try (InputStream stream = new ParallelGZIPInputStream(
+                new ByteArrayInputStream(compressed), 2)) {
+            readAll(stream);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void failureIsRethrownOnEveryLaterRead() throws IOException {
+        byte[] data = randomText(200000);
+        byte[] compressed = bgzf(data, 60000);
+        compressed[compressed.length - 5] ^= 1;
+        try (InputStream stream = new ParallelGZIPInputStream(
+                new ByteArrayInputStream(compressed), 2)) {
+            IOException first = null;
+            try {
+                readAll(stream);
+            } catch (IOException e) {
+                first = e;
+            }
+            assertNotNull(first);
+            for (int i = 0; i < 3; i++) {
+                try {
+                    stream.read();
+                    fail();
+                } catch (IOException e) {
+                    assertSame(first, e);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void failsOnInvalidHeader() throws IOException {
+        new ParallelGZIPInputStream(new ByteArrayInputStream(randomText(100)));
+    }
+}
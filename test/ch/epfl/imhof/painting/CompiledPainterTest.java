@@ -0,0 +1,170 @@
+package ch.epfl.imhof.painting;
+
+import static ch.epfl.imhof.painting.Filters.tagged;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.OpenPolyLine;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.osm.OSMMapReader;
+import ch.epfl.imhof.osm.OSMToGeoTransformer;
+import ch.epfl.imhof.painting.RoadPainterGenerator.RoadSpec;
+import ch.epfl.imhof.projection.CH1903Projection;
+
+public class CompiledPainterTest {
+
+    // Toile mémorisant les dessins demandés, dans l'ordre
+    private static final class RecordingCanvas implements Canvas {
+        private final List<Object> calls = new ArrayList<>();
+
+        @Override
+        public void drawPolyLine(LineStyle style, PolyLine polyline) {
+            calls.add(style);
+            calls.add(polyline);
+        }
+
+        @Override
+        public void drawPolygon(Color color, Polygon polygon) {
+            calls.add(color);
+            calls.add(polygon);
+        }
+    }
+
+    private static Painter painter() {
+        Painter roads = RoadPainterGenerator.painterForRoads(new RoadSpec(
+                tagged("highway", "primary", "secondary"), 1.7f, Color.RED,
+                0.35f, Color.BLACK), new RoadSpec(tagged("highway",
+                "residential", "service"), 1.2f, Color.WHITE, 0.15f,
+                Color.BLACK));
+        LineStyle opaqueStyle = new LineStyle(3, Color.GREEN);
+        // Peintre quelconque, qui ne dessine que la première polyligne reçue
+        Painter opaque = (map, canvas) -> {
+            if (!map.polyLines().isEmpty())
+                canvas.drawPolyLine(opaqueStyle, map.polyLines().get(0)
+                        .value());
+        };
+        Painter foreground = roads
+                .above(Painter.polygon(Color.gray(0.2)).when(
+                        tagged("building")))
+                .above(opaque.when(tagged("railway")))
+                .above(Painter.line(1, Color.BLUE).when(
+                        tagged("waterway").negate())).layered();
+        Painter background = Painter
+                .outline(1, Color.BLUE)
+                .above(Painter.polygon(Color.rgb(0.8, 0.9, 0.95)))
+                .when(tagged("natural", "water").or(
+                        tagged("landuse", "grass")))
+                .above(Painter.polygon(Color.gray(0.9)).when(
+                        tagged("landuse", "residential"))).layered();
+        return foreground.above(background);
+    }
+
+    @Test
+    public void compiledPainterDrawsSameFeaturesInSameOrder() throws Exception {
+        Map osmMap = new OSMToGeoTransformer(new CH1903Projection())
+                .transform(OSMMapReader.readOSMFile(getClass().getResource(
+                        "/lc.osm.gz").getFile(), true));
+        Map.Builder builder = new Map.Builder();
+        osmMap.polyLines().forEach(builder::addPolyLine);
+        osmMap.polygons().forEach(builder::addPolygon);
+        addSyntheticFeatures(builder);
+        Map map = builder.build();
+        Painter painter = painter();
+        Painter compiled = painter.compiled();
+
+        RecordingCanvas expected = new RecordingCanvas();
+        painter.drawMap(map, expected);
+        RecordingCanvas actual = new RecordingCanvas();
+        compiled.drawMap(map, actual);
+
+        assertTrue(expected.calls.size() > 200);
+        assertEquals(expected.calls.size(), actual.calls.size());
+        for (int i = 0; i < expected.calls.size(); i++)
+            assertSame(expected.calls.get(i), actual.calls.get(i));
+    }
+
+    @Test
+    public void subMapIsDrawnLikeStandaloneMap() throws Exception {
+        Map.Builder builder = new Map.Builder();
+        addSyntheticFeatures(builder);
+        Map map = builder.build();
+        int[] polyLinePositions = new int[map.polyLines().size() / 3];
+        for (int i = 0; i < polyLinePositions.length; i++)
+            polyLinePositions[i] = 3 * i + 1;
+        int[] polygonPositions = new int[map.polygons().size() / 2];
+        for (int i = 0; i < polygonPositions.length; i++)
+            polygonPositions[i] = 2 * i;
+        Map subMap = map.subMap(polyLinePositions, polygonPositions);
+        Map standalone = new Map(subMap.polyLines(), subMap.polygons());
+        Painter painter = painter();
+        Painter compiled = painter.compiled();
+
+        RecordingCanvas expected = new RecordingCanvas();
+        painter.drawMap(standalone, expected);
+        RecordingCanvas actual = new RecordingCanvas();
+        compiled.drawMap(subMap, actual);
+
+        assertTrue(expected.calls.size() > 20);
+        assertEquals(expected.calls.size(), actual.calls.size());
+        for (int i = 0; i < expected.calls.size(); i++)
+            assertSame(expected.calls.get(i), actual.calls.get(i));
+    }
+
+    // Entités combinant attributs et couches, y compris hors des couches
+    // dessinées
+    private static void addSyntheticFeatures(Map.Builder builder) {
+        String[][] tags = { { "highway", "primary" },
+                { "highway", "residential" }, { "railway", "rail" },
+                { "waterway", "river" }, { "building", "yes" },
+                { "natural", "water" }, { "landuse", "grass" },
+                { "landuse", "residential" }, { "highway", "service" } };
+        String[] extras = { null, "bridge", "tunnel" };
+        String[] layers = { null, "-1", "2", "5", "7", "x" };
+        int i = 0;
+        for (String[] tag : tags) {
+            for (String extra : extras) {
+                for (String layer : layers) {
+                    Attributes.Builder attributes = new Attributes.Builder();
+                    attributes.put(tag[0], tag[1]);
+                    if (extra != null)
+                        attributes.put(extra, "yes");
+                    if (layer != null)
+                        attributes.put("layer", layer);
+                    List<Point> points = Arrays.asList(new Point(i, 0),
+                            new Point(i + 1, 0), new Point(i + 1, 1));
+                    builder.addPolyLine(new Attributed<PolyLine>(
+                            new OpenPolyLine(points), attributes.build()));
+                    builder.addPolygon(new Attributed<>(new Polygon(
+                            new ClosedPolyLine(points)), attributes.build()));
+                    i++;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void compilingTwiceReturnsSamePainter() {
+        Painter compiled = painter().compiled();
+        assertSame(compiled, compiled.compiled());
+    }
+
+    @Test
+    public void layeredPainterHasOneRulePerLayer() {
+        Painter painter = Painter.line(1, Color.RED)
+                .above(Painter.polygon(Color.BLUE)).layered();
+        assertEquals(22, CompiledPainter.compile(painter).rulesCount());
+    }
+}
@@ -0,0 +1,69 @@
+package ch.epfl.imhof.painting;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class CompositorTest {
+
+    private static BufferedImage randomImage(int width, int height, int type,
+            long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                image.setRGB(x, y, 0xFF000000 | random.nextInt(0x1000000));
+        return image;
+    }
+
+    @Test
+    public void multiplyMatchesColorMultiply() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            BufferedImage map = randomImage(123, 77, BufferedImage.TYPE_INT_RGB, 1);
+            // Portion d'une image plus grande, comme le relief flouté
+            BufferedImage relief = randomImage(140, 90, BufferedImage.TYPE_INT_ARGB, 2)
+                    .getSubimage(9, 5, 123, 77);
+            BufferedImage result = Compositor.multiply(map, relief, executor);
+            for (int y = 0; y < 77; y++) {
+                for (int x = 0; x < 123; x++) {
+                    Color expected = Color.multiply(Color.rgb(map.getRGB(x, y)),
+                            Color.rgb(relief.getRGB(x, y)));
+                    assertEquals(Color.toJavaColor(expected).getRGB(),
+                            result.getRGB(x, y));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void multiplyByWhiteKeepsImage() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            BufferedImage image = randomImage(40, 40, BufferedImage.TYPE_3BYTE_BGR, 3);
+            BufferedImage white = new BufferedImage(40, 40, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < 40; y++)
+                for (int x = 0; x < 40; x++)
+                    white.setRGB(x, y, 0xFFFFFF);
+            BufferedImage result = Compositor.multiply(image, white, executor);
+            for (int y = 0; y < 40; y++)
+                for (int x = 0; x < 40; x++)
+                    assertEquals(image.getRGB(x, y), result.getRGB(x, y));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void multiplyFailsOnDifferentSizes() {
+        Compositor.multiply(new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB),
+                new BufferedImage(2, 3, BufferedImage.TYPE_INT_RGB), null);
+    }
+}
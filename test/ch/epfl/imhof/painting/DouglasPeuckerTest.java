@@ -0,0 +1,71 @@
+package ch.epfl.imhof.painting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DouglasPeuckerTest {
+
+    @Test
+    public void collinearPointsAreRemovedAndEndsKept() {
+        double[] xs = { 0, 1, 2, 3, 4 };
+        double[] ys = { 0, 0.01, -0.01, 0, 0 };
+        assertEquals(2, DouglasPeucker.simplify(xs, ys, 5, false, 0.1));
+        assertEquals(0, xs[0], 0);
+        assertEquals(4, xs[1], 0);
+    }
+
+    @Test
+    public void significantPointsAreKeptInOrder() {
+        double[] xs = { 0, 1, 2, 3, 4 };
+        double[] ys = { 0, 0, 5, 0, 0 };
+        assertEquals(5, DouglasPeucker.simplify(xs, ys, 5, false, 0.1));
+        assertEquals(3, DouglasPeucker.simplify(xs, ys, 5, false, 3));
+        assertEquals(2, xs[1], 0);
+        assertEquals(5, ys[1], 0);
+    }
+
+    @Test
+    public void tinyRingIsLeftIntact() {
+        double[] xs = { 0, 0.01, 0.02, 0.01 };
+        double[] ys = { 0, 0.01, 0, -0.01 };
+        assertEquals(4, DouglasPeucker.simplify(xs, ys, 4, true, 1));
+        assertEquals(0.01, xs[3], 0);
+    }
+
+    @Test
+    public void simplifiedLineStaysWithinTolerance() {
+        Random random = new Random(1);
+        int count = 500;
+        double[] xs = new double[count], ys = new double[count];
+        double heading = 0;
+        for (int i = 1; i < count; i++) {
+            heading += 0.3 * random.nextGaussian();
+            xs[i] = xs[i - 1] + Math.cos(heading);
+            ys[i] = ys[i - 1] + Math.sin(heading);
+        }
+        double[] simplifiedXs = xs.clone(), simplifiedYs = ys.clone();
+        int kept = DouglasPeucker.simplify(simplifiedXs, simplifiedYs,
+                count, false, 0.5);
+        assertTrue(kept < count);
+        for (int i = 0; i < count; i++) {
+            double distance = Double.POSITIVE_INFINITY;
+            for (int j = 0; j + 1 < kept; j++)
+                distance = Math.min(distance, distance(xs[i], ys[i],
+                        simplifiedXs[j], simplifiedYs[j],
+                        simplifiedXs[j + 1], simplifiedYs[j + 1]));
+            assertTrue(distance <= 0.5 + 1e-9);
+        }
+    }
+
+    private static double distance(double x, double y, double x1, double y1,
+            double x2, double y2) {
+        double dx = x2 - x1, dy = y2 - y1;
+        double t = Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy)
+                / (dx * dx + dy * dy)));
+        return Math.hypot(x1 + t * dx - x, y1 + t * dy - y);
+    }
+}
@@ -0,0 +1,77 @@
+package ch.epfl.imhof.painting;
+
+import static ch.epfl.imhof.painting.Filters.onLayer;
+import static ch.epfl.imhof.painting.Filters.tagged;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.AttributeIndex;
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Attributes;
+
+public class FiltersTest {
+
+    private static List<Attributed<String>> features() {
+        String[][] tags = { { "highway", "primary" }, { "highway", "service" },
+                { "building", "yes" }, { "waterway", "river" } };
+        String[] extras = { null, "bridge", "tunnel" };
+        String[] layers = { null, "-1", "2", "x" };
+        List<Attributed<String>> features = new ArrayList<>();
+        for (String[] tag : tags) {
+            for (String extra : extras) {
+                for (String layer : layers) {
+                    Attributes.Builder builder = new Attributes.Builder();
+                    builder.put(tag[0], tag[1]);
+                    if (extra != null)
+                        builder.put(extra, "yes");
+                    if (layer != null)
+                        builder.put("layer", layer);
+                    features.add(new Attributed<>("", builder.build()));
+                }
+            }
+        }
+        return features;
+    }
+
+    @Test
+    public void combinedFiltersSelectSameFeaturesAsTheyTest() {
+        Predicate<Attributed<?>> road = tagged("bridge").or(tagged("tunnel"))
+                .negate();
+        List<Predicate<Attributed<?>>> predicates = new ArrayList<>();
+        predicates.add(tagged("highway", "primary", "service").and(road));
+        predicates.add(tagged("highway").and(tagged("bridge")));
+        predicates.add(tagged("building").or(onLayer(2)));
+        predicates.add(onLayer(0).negate());
+        predicates.add(tagged("waterway", "river", "canal").and(
+                onLayer(-1).or(onLayer(0))));
+
+        List<Attributed<String>> features = features();
+        AttributeIndex index = new AttributeIndex(features);
+        for (Predicate<Attributed<?>> predicate : predicates) {
+            assertTrue(predicate instanceof AttributePredicate);
+            BitSet expected = new BitSet();
+            for (int i = 0; i < features.size(); i++)
+                if (predicate.test(features.get(i)))
+                    expected.set(i);
+            assertTrue(!expected.isEmpty());
+            assertEquals(expected,
+                    ((AttributePredicate) predicate).select(index));
+        }
+    }
+
+    @Test
+    public void combinationWithOtherPredicateStillTests() {
+        Predicate<Attributed<?>> predicate = tagged("highway").and(
+                attributed -> attributed.attributes().contains("bridge"));
+        List<Attributed<String>> features = features();
+        assertTrue(predicate.test(features.get(4)));
+        assertTrue(!predicate.test(features.get(0)));
+    }
+}
@@ -0,0 +1,60 @@
+package ch.epfl.imhof.painting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.geometry.OpenPolyLine;
+import ch.epfl.imhof.geometry.Point;
+
+public class Java2DCanvasTest {
+
+    private static boolean isBlank(BufferedImage image) {
+        for (int x = 0; x < image.getWidth(); x++)
+            for (int y = 0; y < image.getHeight(); y++)
+                if (image.getRGB(x, y) != java.awt.Color.WHITE.getRGB())
+                    return false;
+        return true;
+    }
+
+    private static Java2DCanvas canvas() {
+        return new Java2DCanvas(new Point(0, 0), new Point(100, 100), 100,
+                100, 72, Color.WHITE);
+    }
+
+    @Test
+    public void lineOutsideCanvasIsNotDrawn() {
+        Java2DCanvas canvas = canvas();
+        canvas.drawPolyLine(new LineStyle(1, Color.BLACK), new OpenPolyLine(
+                Arrays.asList(new Point(200, 200), new Point(300, 250))));
+        assertTrue(isBlank(canvas.image()));
+    }
+
+    @Test
+    public void strokeReachingIntoCanvasIsDrawn() {
+        Java2DCanvas canvas = canvas();
+        // La ligne est hors de la toile, mais son trait la recoupe
+        canvas.drawPolyLine(new LineStyle(10, Color.BLACK), new OpenPolyLine(
+                Arrays.asList(new Point(-3, 10), new Point(-3, 90))));
+        assertFalse(isBlank(canvas.image()));
+    }
+
+    @Test
+    public void geometryDrawnTwiceUsesEachStyle() {
+        Java2DCanvas canvas = canvas();
+        OpenPolyLine line = new OpenPolyLine(Arrays.asList(new Point(10, 50),
+                new Point(90, 50)));
+        canvas.drawPolyLine(new LineStyle(10, Color.BLACK), line);
+        canvas.drawPolyLine(new LineStyle(2, Color.WHITE), line);
+        // L'ordonnée 50 du plan correspond à la ligne de pixels 50
+        assertEquals(java.awt.Color.WHITE.getRGB(), canvas.image()
+                .getRGB(50, 50));
+        assertEquals(java.awt.Color.BLACK.getRGB(), canvas.image()
+                .getRGB(50, 53));
+    }
+}
@@ -0,0 +1,89 @@
+package ch.epfl.imhof.painting;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.SwissPainter;
+import ch.epfl.imhof.geometry.OpenPolyLine;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.osm.OSMMapReader;
+import ch.epfl.imhof.osm.OSMToGeoTransformer;
+import ch.epfl.imhof.painting.LineStyle.LineCap;
+import ch.epfl.imhof.painting.LineStyle.LineJoin;
+import ch.epfl.imhof.projection.CH1903Projection;
+
+public class TiledRendererTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsOnInvalidTileSize() {
+        new TiledRenderer(0, null);
+    }
+
+    @Test
+    public void tiledImageIsIdenticalToSingleCanvasImage() throws Exception {
+        Map map = new OSMToGeoTransformer(new CH1903Projection())
+                .transform(OSMMapReader.readOSMFile(getClass().getResource(
+                        "/lc.osm.gz").getFile(), true));
+        Point bl = new Point(533100, 152180);
+        Point tr = new Point(533330, 152350);
+        int width = 300, height = 222, resolution = 150;
+        Painter painter = SwissPainter.painter();
+
+        Java2DCanvas canvas = new Java2DCanvas(bl, tr, width, height,
+                resolution, Color.WHITE);
+        painter.drawMap(map, canvas);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            BufferedImage tiled = new TiledRenderer(37, executor).render(
+                    painter, map, bl, tr, width, height, resolution,
+                    Color.WHITE);
+            assertEquals(width, tiled.getWidth());
+            assertEquals(height, tiled.getHeight());
+            for (int x = 0; x < width; x++)
+                for (int y = 0; y < height; y++)
+                    assertEquals("pixel " + x + "," + y, canvas.image()
+                            .getRGB(x, y), tiled.getRGB(x, y));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void wideMiterSpikeReachesNeighbouringTiles() {
+        // Angle d'environ 14° : la pointe s'étend à plus de 8 demi-épaisseurs
+        // du sommet, soit bien au-delà de la tuile de celui-ci
+        PolyLine polyLine = new OpenPolyLine(Arrays.asList(new Point(-30, 84),
+                new Point(100, 100), new Point(-30, 116)));
+        Map map = new Map(Arrays.asList(new Attributed<>(polyLine,
+                new Attributes(Collections.<String, String> emptyMap()))),
+                Collections.<Attributed<Polygon>> emptyList());
+        Point bl = new Point(0, 0), tr = new Point(200, 200);
+        Painter painter = Painter.line(20, Color.BLACK, LineCap.Butt,
+                LineJoin.Miter);
+
+        Java2DCanvas canvas = new Java2DCanvas(bl, tr, 200, 200, 72,
+                Color.WHITE);
+        painter.drawMap(map, canvas);
+        BufferedImage tiled = new TiledRenderer(37,
+                ForkJoinPool.commonPool()).render(painter, map, bl, tr, 200,
+                200, 72, Color.WHITE);
+        for (int x = 0; x < 200; x++)
+            for (int y = 0; y < 200; y++)
+                assertEquals("pixel " + x + "," + y,
+                        canvas.image().getRGB(x, y), tiled.getRGB(x, y));
+    }
+}
@@ -61,4 +61,29 @@ public class CH1903ProjectionTest {
         assertEquals( 0.1524, p.inverse(projectionD).longitude(), DELTA );
         assertEquals( 0.8036, p.inverse(projectionD).latitude(), DELTA );
     }
+
+    @Test
+    public void bulkProjectionMatchesPointByPoint() {
+        Projection p = new CH1903Projection();
+        double[] longitudes = { 0.115786678, 0.13020167, 0.156086779, 0.1524 };
+        double[] latitudes = { 0.811730504, 0.819396706, 0.801882765, 0.8036 };
+        double[] x = new double[4], y = new double[4];
+        p.project(longitudes, latitudes, x, y);
+        double[] inverseLongitudes = new double[4], inverseLatitudes = new double[4];
+        p.inverse(x, y, inverseLongitudes, inverseLatitudes);
+        for (int i = 0; i < 4; i++) {
+            Point point = p.project(new PointGeo(longitudes[i], latitudes[i]));
+            assertEquals(point.x(), x[i], 0);
+            assertEquals(point.y(), y[i], 0);
+            PointGeo inverse = p.inverse(point);
+            assertEquals(inverse.longitude(), inverseLongitudes[i], 0);
+            assertEquals(inverse.latitude(), inverseLatitudes[i], 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bulkProjectionFailsOnDifferentLengths() {
+        new CH1903Projection().project(new double[2], new double[2],
+                new double[2], new double[1]);
+    }
 }
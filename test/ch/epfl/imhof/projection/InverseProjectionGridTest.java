@@ -0,0 +1,87 @@
+package ch.epfl.imhof.projection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.geometry.Point;
+
+public class InverseProjectionGridTest {
+    private static final Point BL = new Point(532000, 150000);
+    private static final Point TR = new Point(540000, 155000);
+
+    @Test
+    public void inverseIsWithinToleranceInsideArea() {
+        Projection exact = new CH1903Projection();
+        double tolerance = 0.05;
+        InverseProjectionGrid grid = new InverseProjectionGrid(exact, BL, TR,
+                tolerance);
+        // Taille angulaire approximative d'un mètre dans la zone
+        double longitudePerMeter = Math.toRadians(1 / 76000d);
+        double latitudePerMeter = Math.toRadians(1 / 111000d);
+        for (double x = BL.x(); x <= TR.x(); x += 77.7) {
+            for (double y = BL.y(); y <= TR.y(); y += 53.3) {
+                Point point = new Point(x, y);
+                PointGeo expected = exact.inverse(point);
+                PointGeo actual = grid.inverse(point);
+                double errorX = (actual.longitude() - expected.longitude())
+                        / longitudePerMeter;
+                double errorY = (actual.latitude() - expected.latitude())
+                        / latitudePerMeter;
+                assertTrue(Math.hypot(errorX, errorY) < 2 * tolerance);
+            }
+        }
+        assertTrue(grid.cells() > 4);
+    }
+
+    @Test
+    public void inverseIsExactAtCornersAndOutsideArea() {
+        Projection exact = new CH1903Projection();
+        InverseProjectionGrid grid = new InverseProjectionGrid(exact, BL, TR,
+                0.1);
+        for (Point point : new Point[] { BL, TR, new Point(600000, 200000),
+                new Point(531999, 152000) }) {
+            assertEquals(exact.inverse(point).longitude(), grid.inverse(point)
+                    .longitude(), 1e-15);
+            assertEquals(exact.inverse(point).latitude(), grid.inverse(point)
+                    .latitude(), 1e-15);
+        }
+        PointGeo point = new PointGeo(0.12, 0.81);
+        assertEquals(exact.project(point).x(), grid.project(point).x(), 0);
+    }
+
+    @Test
+    public void bulkInverseMatchesPointByPoint() {
+        InverseProjectionGrid grid = new InverseProjectionGrid(
+                new CH1903Projection(), BL, TR, 0.1);
+        double[] x = { 532000, 533333.3, 539999, 600000 };
+        double[] y = { 150000, 154321.1, 155000, 200000 };
+        double[] longitudes = new double[4], latitudes = new double[4];
+        grid.inverse(x, y, longitudes, latitudes);
+        for (int i = 0; i < 4; i++) {
+            PointGeo expected = grid.inverse(new Point(x[i], y[i]));
+            assertEquals(expected.longitude(), longitudes[i], 0);
+            assertEquals(expected.latitude(), latitudes[i], 0);
+        }
+    }
+
+    @Test
+    public void linearProjectionNeedsNoRefinement() {
+        InverseProjectionGrid grid = new InverseProjectionGrid(
+                new EquirectangularProjection(), new Point(0.1, 0.7),
+                new Point(0.2, 0.8), 1e-9);
+        assertEquals(4, grid.cells());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsOnEmptyArea() {
+        new InverseProjectionGrid(new CH1903Projection(), TR, BL, 0.1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsOnNonPositiveTolerance() {
+        new InverseProjectionGrid(new CH1903Projection(), BL, TR, 0);
+    }
+}